@@ -0,0 +1,54 @@
+// Remote-control key delivery from the Android TV app
+var KEY_MAP = {
+    4: { key: 'GoBack', keyCode: 4 },
+    19: { key: 'ArrowUp', keyCode: 38 },
+    20: { key: 'ArrowDown', keyCode: 40 },
+    21: { key: 'ArrowLeft', keyCode: 37 },
+    22: { key: 'ArrowRight', keyCode: 39 },
+    23: { key: 'Enter', keyCode: 13 }
+};
+
+// Dispatch at the focused element so card-level handlers see it, bubbling up to document.
+// One keydown per press; repeatCount is Android's (0 for the first press of a held key)
+window.__majinDispatchKey = function(androidKeyCode, repeatCount) {
+    var mapped = KEY_MAP[androidKeyCode] || { key: '', keyCode: androidKeyCode };
+    var event = new KeyboardEvent('keydown', {
+        key: mapped.key,
+        keyCode: mapped.keyCode,
+        which: mapped.keyCode,
+        repeat: repeatCount > 0,
+        bubbles: true,
+        cancelable: true
+    });
+    (document.activeElement || document.body || document).dispatchEvent(event);
+};
+
+// Page state (page_state.js) goes back over the same port once the app has sent it
+var statePort = null;
+window.__majinPostState = function(message) {
+    if (statePort) {
+        statePort.postMessage('s:' + message);
+    } else if (typeof Android !== 'undefined' && Android.reportPageState) {
+        Android.reportPageState(message);
+    }
+};
+
+window.addEventListener('message', function(e) {
+    // Only the app posts with no source; a frame could otherwise take over the state port
+    if (e.source !== null || e.data !== 'majin-input-port' || !e.ports || !e.ports.length) return;
+    var port = e.ports[0];
+    statePort = port;
+    port.onmessage = function(message) {
+        var parts = String(message.data).split(':');
+        if (parts[0] !== 'k') return;
+        window.__majinDispatchKey(parseInt(parts[1], 10), parseInt(parts[2], 10));
+        // Acknowledge after the frame that shows the new focus
+        requestAnimationFrame(function() {
+            port.postMessage('a:' + parts[3]);
+        });
+    };
+});
+
+if (typeof Android !== 'undefined' && Android.requestInputChannel) {
+    Android.requestInputChannel();
+}
@@ -0,0 +1,60 @@
+// Pushes playback, fullscreen and modal state to the Android TV app whenever it changes,
+// so native idle and BACK decisions never have to query the page
+(function() {
+    var OVERLAYS = '.modal, .search-results';
+    var state = { video: false, paused: true, ended: false, seeking: false, fullscreen: false, modal: '' };
+    var lastSent = '';
+    var scheduled = false;
+
+    function topOverlay() {
+        var overlays = document.querySelectorAll(OVERLAYS);
+        // Later in the document stacks on top
+        for (var i = overlays.length - 1; i >= 0; i--) {
+            var display = overlays[i].style.display;
+            if (display === 'block' || display === 'flex') return overlays[i].id || overlays[i].className;
+        }
+        return '';
+    }
+
+    function send() {
+        scheduled = false;
+        state.fullscreen = !!(document.fullscreenElement || document.webkitFullscreenElement);
+        state.modal = topOverlay();
+        var message = JSON.stringify(state);
+        if (message === lastSent) return;
+        lastSent = message;
+        window.__majinPostState(message);
+    }
+
+    // Several events usually fire together (pause + seeking, modal + play); report once
+    function changed() {
+        if (scheduled || !window.__majinPostState) return;
+        scheduled = true;
+        Promise.resolve().then(send);
+    }
+
+    // Media events do not bubble, but they do pass through document in the capture phase
+    function onMedia(e) {
+        var video = e.target;
+        if (!video || video.tagName !== 'VIDEO') return;
+        // Closing the player clears src, which fires emptied
+        state.video = !!video.getAttribute('src');
+        state.paused = video.paused;
+        state.ended = video.ended;
+        state.seeking = video.seeking;
+        changed();
+    }
+    ['play', 'playing', 'pause', 'ended', 'seeking', 'seeked', 'emptied'].forEach(function(type) {
+        document.addEventListener(type, onMedia, true);
+    });
+    document.addEventListener('fullscreenchange', changed);
+    document.addEventListener('webkitfullscreenchange', changed);
+
+    // Only overlay style flips matter; the grid itself is never observed
+    var observer = new MutationObserver(changed);
+    Array.prototype.forEach.call(document.querySelectorAll(OVERLAYS), function(overlay) {
+        observer.observe(overlay, { attributes: true, attributeFilter: ['style', 'class'] });
+    });
+
+    changed();
+})();
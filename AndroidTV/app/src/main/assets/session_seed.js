@@ -0,0 +1,39 @@
+// Session hand-off from the Android TV app; runs before the page's own scripts read localStorage
+function tokenExpiry(token) {
+    try {
+        var payload = token.split('.')[1].replace(/-/g, '+').replace(/_/g, '/');
+        return JSON.parse(atob(payload)).exp * 1000;
+    } catch (e) {
+        return 0;
+    }
+}
+
+// Returns true when the native session became the page's
+function applyNativeSession(raw) {
+    if (!raw) return false;
+    var session = JSON.parse(raw);
+    var existing = localStorage.getItem('authToken');
+    var adopted = false;
+
+    // A page login that is still current wins; otherwise the native session replaces it
+    if (!existing || tokenExpiry(existing) <= Date.now()) {
+        localStorage.setItem('authToken', session.token);
+        localStorage.setItem('currentUser', JSON.stringify({ username: session.username }));
+        existing = session.token;
+        adopted = true;
+    }
+    window.__majinSessionValidated = session.validated && existing === session.token;
+    return adopted;
+}
+
+// The app's native login finished after this document started; script.js picks it up
+window.__majinSeedSession = function(raw) {
+    if (applyNativeSession(raw)) {
+        window.dispatchEvent(new Event('majin-session'));
+    }
+};
+
+if (typeof Android !== 'undefined' && Android.takeSession) {
+    // Never blocks: "" while the native login is still running
+    applyNativeSession(Android.takeSession());
+}
@@ -0,0 +1,21 @@
+// TV remote navigation handlers for Android TV
+document.addEventListener('keydown', function(e) {
+    if (e.keyCode === 4 || e.key === 'GoBack') {
+        var seriesModal = document.getElementById('seriesModal');
+        if (seriesModal && seriesModal.style.display === 'block') {
+            e.preventDefault();
+            closeSeries();
+        }
+    }
+    // Handle scrolling in video modal
+    var videoModal = document.getElementById('videoModal');
+    if (videoModal && videoModal.style.display === 'block') {
+        if (e.keyCode === 38) { // Up arrow
+            e.preventDefault();
+            videoModal.scrollBy(0, -100);
+        } else if (e.keyCode === 40) { // Down arrow
+            e.preventDefault();
+            videoModal.scrollBy(0, 100);
+        }
+    }
+});
@@ -2,7 +2,8 @@
 console.log('Video optimization script loaded');
 
 // Force video player visibility and sizing
-var style = document.createElement('style');
+var style = document.getElementById('majinVideoOptimization') || document.createElement('style');
+style.id = 'majinVideoOptimization';
 style.textContent = '#videoPlayer { width: 100% !important; height: 400px !important; background: black !important; } .video-container { height: 400px !important; background: black !important; } #videoLoading { display: none !important; }';
 document.head.appendChild(style);
 
@@ -0,0 +1,46 @@
+package com.majin.videostreams;
+
+import android.content.Intent;
+import android.os.Bundle;
+import androidx.fragment.app.FragmentActivity;
+
+// Native catalog browsing on top of the already-loaded web page. Choosing a series
+// hands its id back so the page shows details and plays it as before.
+public class BrowseActivity extends FragmentActivity {
+    public static final String EXTRA_AUTH_TOKEN = "auth_token";
+    // The site MainActivity is showing; BuildConfig.SITE_URL when absent
+    public static final String EXTRA_SITE_URL = "site_url";
+
+    // Result extras
+    public static final String EXTRA_SERIES_ID = "series_id";
+    public static final String EXTRA_CLOSED_REASON = "closed_reason";
+
+    public static final String CLOSED_SEARCH = "search";
+    public static final String CLOSED_EXPIRED = "expired";
+    public static final String CLOSED_FAILED = "failed";
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_browse);
+    }
+
+    void onSeriesChosen(String seriesId) {
+        Intent result = new Intent();
+        result.putExtra(EXTRA_SERIES_ID, seriesId);
+        setResult(RESULT_OK, result);
+        finish();
+    }
+
+    void onSearchChosen() {
+        close(CLOSED_SEARCH);
+    }
+
+    // Back with no reason means the user is leaving the app
+    void close(String reason) {
+        Intent result = new Intent();
+        result.putExtra(EXTRA_CLOSED_REASON, reason);
+        setResult(RESULT_OK, result);
+        finish();
+    }
+}
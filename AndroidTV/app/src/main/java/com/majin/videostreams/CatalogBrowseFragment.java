@@ -0,0 +1,181 @@
+package com.majin.videostreams;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.webkit.WebSettings;
+import androidx.leanback.app.BrowseSupportFragment;
+import androidx.leanback.widget.ArrayObjectAdapter;
+import androidx.leanback.widget.HeaderItem;
+import androidx.leanback.widget.ListRow;
+import androidx.leanback.widget.ListRowPresenter;
+import androidx.leanback.widget.Row;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// One Leanback row per genre. Rows start empty and fetch their first page when the
+// selection gets within a few rows of them; each row then pages further as the
+// selection nears its loaded end, so a large library never has to be loaded at once.
+public class CatalogBrowseFragment extends BrowseSupportFragment {
+    private static final String TAG = "CatalogBrowse";
+    private static final int ROW_LOOKAHEAD = 3;
+    private static final int ITEM_PREFETCH_DISTANCE = 10;
+
+    private static class RowState {
+        final CatalogPager.Genre genre;
+        final ArrayObjectAdapter adapter;
+        int total;
+        boolean loading = false;
+
+        RowState(CatalogPager.Genre genre, ArrayObjectAdapter adapter) {
+            this.genre = genre;
+            this.adapter = adapter;
+            this.total = genre.count;
+        }
+
+        boolean hasMore() {
+            return adapter.size() < total;
+        }
+    }
+
+    private final List<RowState> rows = new ArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService pageExecutor = Executors.newFixedThreadPool(2);
+    private CatalogPager pager;
+    private SeriesCardPresenter cardPresenter;
+    private PosterPipeline posterPipeline;
+    private MemoryManager memoryManager;
+    private final MemoryManager.Listener memoryListener = keepPercent -> posterPipeline.trimMemory(keepPercent);
+    private ArrayObjectAdapter rowsAdapter;
+    private int pageSize;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        BrowseActivity activity = (BrowseActivity) requireActivity();
+        String siteUrl = activity.getIntent().getStringExtra(BrowseActivity.EXTRA_SITE_URL);
+        if (siteUrl == null) {
+            siteUrl = BuildConfig.SITE_URL;
+        }
+        HttpStack httpStack = HttpStack.getShared(activity);
+        pager = new CatalogPager(siteUrl, httpStack, activity.getIntent().getStringExtra(BrowseActivity.EXTRA_AUTH_TOKEN));
+        pageSize = getResources().getInteger(R.integer.browse_page_size);
+
+        memoryManager = MemoryManager.getShared(activity);
+        // The pipeline the WebView grid fills, so posters seen there are not fetched again
+        posterPipeline = PosterPipeline.getShared(activity);
+        memoryManager.addListener(memoryListener);
+        float density = getResources().getDisplayMetrics().density;
+        cardPresenter = new SeriesCardPresenter(posterPipeline, siteUrl, WebSettings.getDefaultUserAgent(activity),
+            (int) (getResources().getInteger(R.integer.browse_card_width) * density),
+            (int) (getResources().getInteger(R.integer.browse_card_height) * density));
+
+        setTitle(getString(R.string.app_name));
+        setHeadersState(HEADERS_ENABLED);
+        setHeadersTransitionOnBackEnabled(true);
+
+        rowsAdapter = new ArrayObjectAdapter(new ListRowPresenter());
+        setAdapter(rowsAdapter);
+
+        setOnItemViewClickedListener((itemViewHolder, item, rowViewHolder, row) -> {
+            if (item instanceof CatalogPager.SeriesItem) {
+                activity.onSeriesChosen(((CatalogPager.SeriesItem) item).id);
+            }
+        });
+        // Fires with a null item when an empty row is selected, e.g. from the headers
+        setOnItemViewSelectedListener((itemViewHolder, item, rowViewHolder, row) -> onSelected(item, row));
+        setOnSearchClickedListener(view -> activity.onSearchChosen());
+
+        loadGenres();
+    }
+
+    private void loadGenres() {
+        pageExecutor.execute(() -> {
+            try {
+                List<CatalogPager.Genre> genres = pager.fetchGenres();
+                handler.post(() -> showGenres(genres));
+            } catch (CatalogPager.UnauthorizedException e) {
+                handler.post(() -> closeWith(BrowseActivity.CLOSED_EXPIRED));
+            } catch (IOException e) {
+                android.util.Log.w(TAG, "Genre list failed: " + e.getMessage());
+                handler.post(() -> closeWith(BrowseActivity.CLOSED_FAILED));
+            }
+        });
+    }
+
+    private void showGenres(List<CatalogPager.Genre> genres) {
+        if (!isAdded()) return;
+        if (genres.isEmpty()) {
+            closeWith(BrowseActivity.CLOSED_FAILED);
+            return;
+        }
+        for (int i = 0; i < genres.size(); i++) {
+            CatalogPager.Genre genre = genres.get(i);
+            RowState state = new RowState(genre, new ArrayObjectAdapter(cardPresenter));
+            rows.add(state);
+            rowsAdapter.add(new ListRow(new HeaderItem(i, genre.name), state.adapter));
+        }
+        loadRowsNear(0);
+    }
+
+    private void onSelected(Object item, Row row) {
+        if (row == null || row.getId() < 0 || row.getId() >= rows.size()) return;
+        int rowIndex = (int) row.getId();
+        loadRowsNear(rowIndex);
+
+        RowState state = rows.get(rowIndex);
+        if (item != null && state.adapter.indexOf(item) >= state.adapter.size() - ITEM_PREFETCH_DISTANCE) {
+            loadNextPage(state);
+        }
+    }
+
+    private void loadRowsNear(int rowIndex) {
+        for (int i = rowIndex; i < Math.min(rows.size(), rowIndex + ROW_LOOKAHEAD + 1); i++) {
+            RowState state = rows.get(i);
+            if (state.adapter.size() == 0) {
+                loadNextPage(state);
+            }
+        }
+    }
+
+    private void loadNextPage(RowState state) {
+        if (state.loading || (state.adapter.size() > 0 && !state.hasMore())) return;
+        state.loading = true;
+        int offset = state.adapter.size();
+        pageExecutor.execute(() -> {
+            try {
+                CatalogPager.Page page = pager.fetchPage(state.genre.name, offset, pageSize);
+                handler.post(() -> {
+                    state.loading = false;
+                    // A failed earlier page may have been retried meanwhile
+                    if (!isAdded() || state.adapter.size() != offset) return;
+                    state.total = page.total;
+                    state.adapter.addAll(offset, page.items);
+                });
+            } catch (CatalogPager.UnauthorizedException e) {
+                handler.post(() -> closeWith(BrowseActivity.CLOSED_EXPIRED));
+            } catch (IOException e) {
+                // Left for the next selection in this row to retry
+                android.util.Log.w(TAG, "Page failed for " + state.genre.name + ": " + e.getMessage());
+                handler.post(() -> state.loading = false);
+            }
+        });
+    }
+
+    private void closeWith(String reason) {
+        if (isAdded()) {
+            ((BrowseActivity) requireActivity()).close(reason);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        pageExecutor.shutdownNow();
+        cardPresenter.shutdown();
+        memoryManager.removeListener(memoryListener);
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,302 @@
+package com.majin.videostreams;
+
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Stale-while-revalidate cache for the catalog API and the static page bundle.
+// Cached copies are served immediately; a background request with If-None-Match
+// refreshes them and reports changes so the page can re-render.
+public class CatalogCache {
+    public interface Listener {
+        void onCatalogUpdated(String path);
+    }
+
+    private static final Set<String> API_PATHS = new HashSet<>(Arrays.asList("/api/series", "/api/genres"));
+    private static final Set<String> STATIC_PATHS = new HashSet<>(Arrays.asList("/script.js", "/styles.css"));
+    // Origin headers that describe the transfer or the session rather than the body; not replayed
+    private static final Set<String> DROPPED_HEADERS = new HashSet<>(Arrays.asList(
+        "content-type", "content-length", "content-encoding", "transfer-encoding", "connection",
+        "keep-alive", "set-cookie"));
+
+    private static class Entry {
+        final byte[] body;
+        final String etag;
+        final String contentType;
+        final Map<String, String> headers;
+        final long storedAt;
+
+        Entry(byte[] body, String etag, String contentType, Map<String, String> headers, long storedAt) {
+            this.body = body;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final File directory;
+    private final long revalidateIntervalMs;
+    private final Listener listener;
+    private final OkHttpClient client;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastRevalidated = new ConcurrentHashMap<>();
+    private final Set<String> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ExecutorService revalidator = Executors.newSingleThreadExecutor();
+
+    public CatalogCache(File directory, HttpStack httpStack, long revalidateIntervalMs, Listener listener) {
+        this.directory = directory;
+        this.revalidateIntervalMs = revalidateIntervalMs;
+        this.listener = listener;
+        this.client = httpStack.client();
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+    }
+
+    public static boolean isCacheable(WebResourceRequest request) {
+        if (!"GET".equals(request.getMethod()) || request.getUrl().getQuery() != null) return false;
+        String path = request.getUrl().getPath();
+        return API_PATHS.contains(path) || STATIC_PATHS.contains(path);
+    }
+
+    // Returns null to let the WebView load the request itself
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if (!isCacheable(request)) return null;
+
+        String path = request.getUrl().getPath();
+        String url = request.getUrl().toString();
+        Map<String, String> headers = request.getRequestHeaders();
+        String authorization = VideoRequestInterceptor.header(headers, "Authorization");
+        boolean isApi = API_PATHS.contains(path);
+
+        // Never answer an unauthenticated catalog request from the cache
+        if (isApi && authorization == null) return null;
+
+        Entry entry = load(path);
+        if (entry != null) {
+            scheduleRevalidate(path, url, headers);
+            return toResponse(200, "OK", entry.contentType, entry.headers, entry.body);
+        }
+
+        // Cold miss: fetch now, store on success and hand whatever came back to the page
+        try (Response response = client.newCall(request(url, headers, null)).execute()) {
+            int status = response.code();
+            if (status >= 300 && status < 400) return null; // WebResourceResponse cannot carry redirects
+            byte[] body = response.body().bytes();
+            String contentType = response.header("Content-Type");
+            Map<String, String> responseHeaders = headersOf(response);
+            if (status == 200) {
+                store(path, new Entry(body, response.header("ETag"), contentType, responseHeaders, System.currentTimeMillis()));
+                lastRevalidated.put(path, System.currentTimeMillis());
+            }
+            return toResponse(status, response.message(), contentType, responseHeaders, body);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void scheduleRevalidate(String path, String url, Map<String, String> headers) {
+        Long last = lastRevalidated.get(path);
+        if (last != null && System.currentTimeMillis() - last < revalidateIntervalMs) return;
+        if (!inFlight.add(path)) return;
+
+        // Copy the headers; the request object is not ours once intercept() returns
+        final Map<String, String> requestHeaders = headers != null ? new HashMap<>(headers) : new HashMap<String, String>();
+        revalidator.execute(() -> {
+            try {
+                revalidate(path, url, requestHeaders);
+            } finally {
+                inFlight.remove(path);
+            }
+        });
+    }
+
+    private void revalidate(String path, String url, Map<String, String> headers) {
+        Entry current = entries.get(path);
+        try (Response response = client.newCall(request(url, headers, current != null ? current.etag : null)).execute()) {
+            int status = response.code();
+            lastRevalidated.put(path, System.currentTimeMillis());
+            if (status == 304) return;
+
+            if (status == 401 || status == 403) {
+                // Token no longer valid - stop serving the catalog without the server's say-so
+                remove(path);
+                return;
+            }
+            if (status != 200) return;
+
+            byte[] body = response.body().bytes();
+            if (current != null && Arrays.equals(current.body, body)) return;
+
+            store(path, new Entry(body, response.header("ETag"), response.header("Content-Type"),
+                headersOf(response), System.currentTimeMillis()));
+            if (listener != null) {
+                listener.onCatalogUpdated(path);
+            }
+        } catch (IOException e) {
+            // Offline or tunnel down - keep serving the stale copy
+        }
+    }
+
+    private static Request request(String url, Map<String, String> headers, String etag) {
+        Request.Builder builder = new Request.Builder().url(url);
+        VideoRequestInterceptor.forwardHeaders(headers, builder);
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        return builder.build();
+    }
+
+    // The origin's own response headers, repeated values joined the way HTTP allows
+    private static Map<String, String> headersOf(Response response) {
+        Map<String, String> headers = new HashMap<>();
+        for (String name : response.headers().names()) {
+            if (DROPPED_HEADERS.contains(name.toLowerCase())) continue;
+            StringBuilder value = new StringBuilder();
+            for (String part : response.headers(name)) {
+                if (value.length() > 0) value.append(", ");
+                value.append(part);
+            }
+            headers.put(name, value.toString());
+        }
+        return headers;
+    }
+
+    private Entry load(String path) {
+        Entry entry = entries.get(path);
+        if (entry != null) return entry;
+
+        File bodyFile = bodyFile(path);
+        File metaFile = metaFile(path);
+        if (!bodyFile.exists() || !metaFile.exists()) return null;
+        try {
+            JSONObject meta = new JSONObject(new String(readFully(new FileInputStream(metaFile)), "UTF-8"));
+            Map<String, String> headers = new HashMap<>();
+            JSONObject storedHeaders = meta.optJSONObject("headers");
+            if (storedHeaders != null) {
+                Iterator<String> names = storedHeaders.keys();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    headers.put(name, storedHeaders.getString(name));
+                }
+            }
+            entry = new Entry(readFully(new FileInputStream(bodyFile)),
+                meta.optString("etag", null), meta.optString("contentType", null), headers, meta.optLong("storedAt"));
+            entries.put(path, entry);
+            return entry;
+        } catch (IOException | JSONException e) {
+            bodyFile.delete();
+            metaFile.delete();
+            return null;
+        }
+    }
+
+    private void store(String path, Entry entry) {
+        entries.put(path, entry);
+        try {
+            JSONObject meta = new JSONObject();
+            meta.put("etag", entry.etag);
+            meta.put("contentType", entry.contentType);
+            meta.put("headers", new JSONObject(entry.headers));
+            meta.put("storedAt", entry.storedAt);
+            writeAtomically(bodyFile(path), entry.body);
+            writeAtomically(metaFile(path), meta.toString().getBytes("UTF-8"));
+        } catch (IOException | JSONException e) {
+            android.util.Log.w("CatalogCache", "Failed to persist " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void remove(String path) {
+        entries.remove(path);
+        bodyFile(path).delete();
+        metaFile(path).delete();
+    }
+
+    public void clear() {
+        for (String path : API_PATHS) remove(path);
+        for (String path : STATIC_PATHS) remove(path);
+        lastRevalidated.clear();
+    }
+
+    // Latest cached body for a path, for native consumers of the catalog
+    public byte[] getCachedBody(String path) {
+        Entry entry = load(path);
+        return entry != null ? entry.body : null;
+    }
+
+    private File bodyFile(String path) {
+        return new File(directory, path.replaceAll("[^a-zA-Z0-9.]", "_") + ".body");
+    }
+
+    private File metaFile(String path) {
+        return new File(directory, path.replaceAll("[^a-zA-Z0-9.]", "_") + ".meta");
+    }
+
+    private static void writeAtomically(File target, byte[] data) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Rename failed for " + target.getName());
+        }
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        if (in == null) return new byte[0];
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static WebResourceResponse toResponse(int status, String reason, String contentType,
+                                                  Map<String, String> originHeaders, byte[] body) {
+        String mimeType = "application/octet-stream";
+        String encoding = null;
+        if (contentType != null) {
+            String[] parts = contentType.split(";");
+            mimeType = parts[0].trim();
+            for (int i = 1; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.toLowerCase().startsWith("charset=")) {
+                    encoding = part.substring("charset=".length());
+                }
+            }
+        }
+        // Exactly what the origin sent; in particular no CORS headers it did not set
+        Map<String, String> headers = new HashMap<>(originHeaders);
+        return new WebResourceResponse(mimeType, encoding, status,
+            reason != null && !reason.isEmpty() ? reason : "OK", headers, new ByteArrayInputStream(body));
+    }
+}
@@ -0,0 +1,126 @@
+package com.majin.videostreams;
+
+import android.net.Uri;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Fetches the catalog a page at a time for the native browse rows: genre headers from
+// /api/genres?summary=1, then lean series summaries per genre from /api/series. Calls
+// block, so run them off the main thread.
+public class CatalogPager {
+    public static class Genre {
+        public final String name;
+        public final int count;
+
+        Genre(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    public static class SeriesItem {
+        public final String id;
+        public final String title;
+        public final String thumbnail;
+        public final int videoCount;
+
+        SeriesItem(String id, String title, String thumbnail, int videoCount) {
+            this.id = id;
+            this.title = title;
+            this.thumbnail = thumbnail;
+            this.videoCount = videoCount;
+        }
+    }
+
+    public static class Page {
+        public final List<SeriesItem> items;
+        public final int total;
+
+        Page(List<SeriesItem> items, int total) {
+            this.items = items;
+            this.total = total;
+        }
+    }
+
+    // The token was rejected; the page has to log in again
+    public static class UnauthorizedException extends IOException {
+        UnauthorizedException() {
+            super("Session expired");
+        }
+    }
+
+    private final String siteUrl;
+    private final String authToken;
+    private final OkHttpClient client;
+
+    public CatalogPager(String siteUrl, HttpStack httpStack, String authToken) {
+        this.siteUrl = siteUrl;
+        this.authToken = authToken;
+        this.client = httpStack.client();
+    }
+
+    public List<Genre> fetchGenres() throws IOException {
+        try {
+            JSONArray array = new JSONArray(get(siteUrl + "/api/genres?summary=1", null));
+            List<Genre> genres = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject genre = array.getJSONObject(i);
+                genres.add(new Genre(genre.getString("name"), genre.optInt("count")));
+            }
+            return genres;
+        } catch (JSONException e) {
+            throw new IOException("Malformed genre list", e);
+        }
+    }
+
+    public Page fetchPage(String genre, int offset, int limit) throws IOException {
+        String url = Uri.parse(siteUrl + "/api/series").buildUpon()
+            .appendQueryParameter("genre", genre)
+            .appendQueryParameter("offset", String.valueOf(offset))
+            .appendQueryParameter("limit", String.valueOf(limit))
+            .build().toString();
+        int[] total = new int[1];
+        try {
+            JSONArray array = new JSONArray(get(url, total));
+            List<SeriesItem> items = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject series = array.getJSONObject(i);
+                items.add(new SeriesItem(series.getString("id"), series.optString("title"),
+                    series.isNull("thumbnail") ? null : series.optString("thumbnail", null),
+                    series.optInt("videoCount")));
+            }
+            return new Page(items, total[0] > 0 ? total[0] : offset + items.size());
+        } catch (JSONException e) {
+            throw new IOException("Malformed series page", e);
+        }
+    }
+
+    private String get(String url, int[] totalOut) throws IOException {
+        Request request = new Request.Builder()
+            .url(url)
+            .header("Authorization", "Bearer " + authToken)
+            .build();
+        try (Response response = client.newCall(request).execute()) {
+            int status = response.code();
+            if (status == 401 || status == 403) throw new UnauthorizedException();
+            if (status != 200) throw new IOException("HTTP " + status + " for " + url);
+
+            if (totalOut != null) {
+                try {
+                    totalOut[0] = Integer.parseInt(response.header("X-Total-Count"));
+                } catch (NumberFormatException e) {
+                    totalOut[0] = 0;
+                }
+            }
+            return new String(response.body().bytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.majin.videostreams;
+
+import android.os.SystemClock;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// In-memory search over the cached /api/series list, so typing on the remote never waits
+// on the tunnel or re-filters the grid. Words from titles, genres, descriptions and
+// episode names are indexed for prefix lookups, with trigrams for matches inside a word
+// ("man" finds "Spiderman"). A changed catalog only re-indexes the series that changed.
+public class CatalogSearchIndex {
+    public static final String SERIES_PATH = "/api/series";
+    private static final int MAX_RESULTS = 50;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern EXTENSION = Pattern.compile("\\.[^./]+$");
+
+    // Field weights; a title hit outranks any number of episode-name hits
+    private static final int WEIGHT_TITLE = 8;
+    private static final int WEIGHT_GENRE = 4;
+    private static final int WEIGHT_DESCRIPTION = 2;
+    private static final int WEIGHT_EPISODE = 1;
+
+    // Match quality per query word
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int INFIX = 1;
+
+    private static class Doc {
+        final String id;
+        final JSONObject summary;
+        final String normalizedTitle;
+        final String signature;
+        // Best field weight per word in this series
+        final Map<String, Integer> words;
+
+        Doc(String id, JSONObject summary, String normalizedTitle, String signature, Map<String, Integer> words) {
+            this.id = id;
+            this.summary = summary;
+            this.normalizedTitle = normalizedTitle;
+            this.signature = signature;
+            this.words = words;
+        }
+    }
+
+    private final CatalogCache catalogCache;
+
+    // All guarded by this
+    private final Map<String, Doc> docs = new HashMap<>();
+    // Sorted, so every word with a given prefix is one sub-map
+    private final TreeMap<String, Map<Doc, Integer>> postings = new TreeMap<>();
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+    private byte[] indexedBody;
+
+    private long updates;
+    private long lastUpdateMs;
+    private int lastIndexed;
+    private int lastRemoved;
+    private long queries;
+    private long queryMicros;
+    private long maxQueryMicros;
+
+    public CatalogSearchIndex(CatalogCache catalogCache) {
+        this.catalogCache = catalogCache;
+    }
+
+    // Picks up the latest cached catalog; cheap when it has not changed. Call it off the
+    // main thread after the cache stores /api/series.
+    public void refresh() {
+        byte[] body = catalogCache.getCachedBody(SERIES_PATH);
+        synchronized (this) {
+            if (body == indexedBody) return;
+        }
+        if (body == null) {
+            // The cache dropped the catalog (e.g. the token was rejected) - no local answers either
+            synchronized (this) {
+                docs.clear();
+                postings.clear();
+                trigrams.clear();
+                indexedBody = null;
+            }
+            return;
+        }
+        try {
+            update(new JSONArray(new String(body, StandardCharsets.UTF_8)), body);
+        } catch (JSONException e) {
+            android.util.Log.w("CatalogSearch", "Unreadable catalog: " + e.getMessage());
+        }
+    }
+
+    private synchronized void update(JSONArray series, byte[] body) throws JSONException {
+        long start = SystemClock.elapsedRealtime();
+        Map<String, Doc> seen = new HashMap<>();
+        int indexed = 0;
+        for (int i = 0; i < series.length(); i++) {
+            JSONObject item = series.optJSONObject(i);
+            if (item == null || item.optString("id").isEmpty()) continue;
+            String id = item.getString("id");
+            String signature = signatureOf(item);
+            Doc current = docs.get(id);
+            if (current != null && current.signature.equals(signature)) {
+                seen.put(id, current);
+                continue;
+            }
+            if (current != null) {
+                unindex(current);
+            }
+            Doc doc = build(id, item, signature);
+            index(doc);
+            seen.put(id, doc);
+            indexed++;
+        }
+        int removed = 0;
+        for (Doc doc : docs.values()) {
+            if (!seen.containsKey(doc.id)) {
+                unindex(doc);
+                removed++;
+            }
+        }
+        docs.clear();
+        docs.putAll(seen);
+        indexedBody = body;
+
+        updates++;
+        lastIndexed = indexed;
+        lastRemoved = removed;
+        lastUpdateMs = SystemClock.elapsedRealtime() - start;
+    }
+
+    // Everything that feeds the index or the result; an unchanged series keeps its postings
+    private static String signatureOf(JSONObject item) {
+        StringBuilder signature = new StringBuilder()
+            .append(item.optString("title")).append('\u0000')
+            .append(item.optString("genre")).append('\u0000')
+            .append(item.optString("description")).append('\u0000')
+            .append(item.optString("thumbnail")).append('\u0000')
+            .append(item.optInt("videoCount"));
+        JSONArray videos = item.optJSONArray("videos");
+        if (videos != null) {
+            for (int i = 0; i < videos.length(); i++) {
+                JSONObject video = videos.optJSONObject(i);
+                if (video != null) {
+                    signature.append('\u0000').append(video.optString("filename"));
+                }
+            }
+        }
+        return signature.toString();
+    }
+
+    private static Doc build(String id, JSONObject item, String signature) throws JSONException {
+        Map<String, Integer> words = new HashMap<>();
+        addWords(words, item.optString("title"), WEIGHT_TITLE);
+        addWords(words, item.optString("genre"), WEIGHT_GENRE);
+        addWords(words, item.optString("description"), WEIGHT_DESCRIPTION);
+        JSONArray videos = item.optJSONArray("videos");
+        if (videos != null) {
+            for (int i = 0; i < videos.length(); i++) {
+                JSONObject video = videos.optJSONObject(i);
+                if (video != null) {
+                    addWords(words, EXTENSION.matcher(video.optString("filename")).replaceFirst(""), WEIGHT_EPISODE);
+                }
+            }
+        }
+
+        // What the page needs to draw a card; the full episode list stays on the server
+        JSONObject summary = new JSONObject();
+        summary.put("id", id);
+        summary.put("title", item.optString("title"));
+        summary.put("genre", item.optString("genre"));
+        summary.put("thumbnail", item.isNull("thumbnail") ? JSONObject.NULL : item.optString("thumbnail"));
+        summary.put("videoCount", item.optInt("videoCount"));
+        return new Doc(id, summary, normalize(item.optString("title")).trim(), signature, words);
+    }
+
+    private static void addWords(Map<String, Integer> words, String text, int weight) {
+        for (String word : tokenize(text)) {
+            Integer current = words.get(word);
+            if (current == null || current < weight) {
+                words.put(word, weight);
+            }
+        }
+    }
+
+    private void index(Doc doc) {
+        for (Map.Entry<String, Integer> entry : doc.words.entrySet()) {
+            String word = entry.getKey();
+            Map<Doc, Integer> docsForWord = postings.get(word);
+            if (docsForWord == null) {
+                docsForWord = new HashMap<>();
+                postings.put(word, docsForWord);
+                for (String gram : trigramsOf(word)) {
+                    Set<String> wordsForGram = trigrams.get(gram);
+                    if (wordsForGram == null) {
+                        wordsForGram = new HashSet<>();
+                        trigrams.put(gram, wordsForGram);
+                    }
+                    wordsForGram.add(word);
+                }
+            }
+            docsForWord.put(doc, entry.getValue());
+        }
+    }
+
+    private void unindex(Doc doc) {
+        for (String word : doc.words.keySet()) {
+            Map<Doc, Integer> docsForWord = postings.get(word);
+            if (docsForWord == null) continue;
+            docsForWord.remove(doc);
+            if (!docsForWord.isEmpty()) continue;
+            postings.remove(word);
+            for (String gram : trigramsOf(word)) {
+                Set<String> wordsForGram = trigrams.get(gram);
+                if (wordsForGram != null && wordsForGram.remove(word) && wordsForGram.isEmpty()) {
+                    trigrams.remove(gram);
+                }
+            }
+        }
+    }
+
+    // Ranked card summaries as a JSON array, every query word matching somewhere; null
+    // while no catalog has been cached, so the page can ask the server instead
+    public String query(String text, int limit) {
+        refresh();
+        long start = System.nanoTime();
+        List<String> terms = tokenize(text);
+        JSONArray results = new JSONArray();
+        synchronized (this) {
+            if (docs.isEmpty()) return null;
+            if (!terms.isEmpty()) {
+                for (Doc doc : rank(terms, normalize(text).trim(), Math.max(1, Math.min(limit, MAX_RESULTS)))) {
+                    results.put(doc.summary);
+                }
+            }
+            long micros = (System.nanoTime() - start) / 1000;
+            queries++;
+            queryMicros += micros;
+            maxQueryMicros = Math.max(maxQueryMicros, micros);
+        }
+        return results.toString();
+    }
+
+    private List<Doc> rank(List<String> terms, String phrase, int limit) {
+        Map<Doc, Integer> scores = null;
+        for (String term : terms) {
+            Map<Doc, Integer> termScores = match(term);
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                // Keep only series that matched every earlier word too
+                Map<Doc, Integer> both = new HashMap<>();
+                for (Map.Entry<Doc, Integer> entry : termScores.entrySet()) {
+                    Integer previous = scores.get(entry.getKey());
+                    if (previous != null) {
+                        both.put(entry.getKey(), previous + entry.getValue());
+                    }
+                }
+                scores = both;
+            }
+            if (scores.isEmpty()) return Collections.emptyList();
+        }
+
+        List<Map.Entry<Doc, Integer>> ranked = new ArrayList<>(scores.entrySet());
+        for (Map.Entry<Doc, Integer> entry : ranked) {
+            // What the viewer is typing is usually the start of the title
+            if (entry.getKey().normalizedTitle.startsWith(phrase)) {
+                entry.setValue(entry.getValue() + WEIGHT_TITLE * EXACT);
+            }
+        }
+        Collections.sort(ranked, (a, b) -> {
+            if (!a.getValue().equals(b.getValue())) return b.getValue() - a.getValue();
+            // Shorter titles are the closer match among equals
+            int byLength = a.getKey().normalizedTitle.length() - b.getKey().normalizedTitle.length();
+            return byLength != 0 ? byLength : a.getKey().normalizedTitle.compareTo(b.getKey().normalizedTitle);
+        });
+        List<Doc> top = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            top.add(ranked.get(i).getKey());
+        }
+        return top;
+    }
+
+    // Best score each series gets for one query word
+    private Map<Doc, Integer> match(String term) {
+        Map<Doc, Integer> scores = new HashMap<>();
+        // The last word is usually half typed, so every word counts as a prefix
+        for (Map.Entry<String, Map<Doc, Integer>> entry : postings.subMap(term, true, term + Character.MAX_VALUE, false).entrySet()) {
+            addScores(scores, entry.getValue(), entry.getKey().equals(term) ? EXACT : PREFIX);
+        }
+        if (term.length() < 3) return scores;
+
+        Set<String> candidates = null;
+        for (String gram : trigramsOf(term)) {
+            Set<String> wordsForGram = trigrams.get(gram);
+            if (wordsForGram == null) return scores;
+            if (candidates == null) {
+                candidates = new HashSet<>(wordsForGram);
+            } else {
+                candidates.retainAll(wordsForGram);
+            }
+            if (candidates.isEmpty()) return scores;
+        }
+        for (String word : candidates) {
+            if (!word.startsWith(term) && word.contains(term)) {
+                addScores(scores, postings.get(word), INFIX);
+            }
+        }
+        return scores;
+    }
+
+    private static void addScores(Map<Doc, Integer> scores, Map<Doc, Integer> docsForWord, int quality) {
+        for (Map.Entry<Doc, Integer> entry : docsForWord.entrySet()) {
+            int score = entry.getValue() * quality;
+            Integer current = scores.get(entry.getKey());
+            if (current == null || current < score) {
+                scores.put(entry.getKey(), score);
+            }
+        }
+    }
+
+    // Lower case, accents dropped, punctuation and separators ("_", ".", "-") as spaces
+    static String normalize(String text) {
+        if (text == null) return "";
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return NON_WORD.matcher(folded.toLowerCase()).replaceAll(" ");
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : normalize(text).split(" ")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static List<String> trigramsOf(String word) {
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + 3 <= word.length(); i++) {
+            grams.add(word.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    public synchronized String getStatsJson() {
+        return "{\"series\":" + docs.size() +
+            ",\"words\":" + postings.size() +
+            ",\"trigrams\":" + trigrams.size() +
+            ",\"updates\":" + updates +
+            ",\"lastUpdateMs\":" + lastUpdateMs +
+            ",\"lastIndexed\":" + lastIndexed +
+            ",\"lastRemoved\":" + lastRemoved +
+            ",\"queries\":" + queries +
+            ",\"avgQueryMicros\":" + (queries == 0 ? 0 : queryMicros / queries) +
+            ",\"maxQueryMicros\":" + maxQueryMicros + "}";
+    }
+}
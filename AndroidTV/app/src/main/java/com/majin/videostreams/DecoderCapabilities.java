@@ -0,0 +1,231 @@
+package com.majin.videostreams;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// What this device can decode, probed once from MediaCodecList and kept until the OS
+// build changes. The server gets it as X-Device-Codecs on our own /videos requests and
+// as a cookie on the WebView's, so it can pick a rendition (e.g. the AAC _fixed copy)
+// before a playback silently fails; native playback is skipped for files the hardware
+// cannot decode.
+public class DecoderCapabilities {
+    public static final String HEADER = "X-Device-Codecs";
+    private static final String PREFS = "DecoderCapabilities";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_DECODERS = "decoders";
+
+    // Short names shared with the server
+    private static final Map<String, String> NAMES = new LinkedHashMap<>();
+    static {
+        NAMES.put("video/avc", "avc");
+        NAMES.put("video/hevc", "hevc");
+        NAMES.put("video/x-vnd.on2.vp9", "vp9");
+        NAMES.put("video/av01", "av1");
+        NAMES.put("audio/mp4a-latm", "aac");
+        NAMES.put("audio/ac3", "ac3");
+        NAMES.put("audio/eac3", "eac3");
+        NAMES.put("audio/opus", "opus");
+        NAMES.put("audio/mpeg", "mp3");
+        NAMES.put("audio/flac", "flac");
+    }
+
+    // Best decoder for one MIME type; hardware wins over software
+    static class Decoder {
+        final boolean hardware;
+        final int maxWidth;
+        final int maxHeight;
+        final boolean tenBit;
+
+        Decoder(boolean hardware, int maxWidth, int maxHeight, boolean tenBit) {
+            this.hardware = hardware;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.tenBit = tenBit;
+        }
+
+        boolean betterThan(Decoder other) {
+            if (other == null || hardware != other.hardware) return other == null || hardware;
+            return (long) maxWidth * maxHeight > (long) other.maxWidth * other.maxHeight || (tenBit && !other.tenBit);
+        }
+    }
+
+    private static DecoderCapabilities shared;
+
+    private final Map<String, Decoder> decoders;
+    private final String headerValue;
+
+    public static synchronized DecoderCapabilities getShared(Context context) {
+        if (shared == null) {
+            SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+            Map<String, Decoder> decoders = null;
+            if (Build.FINGERPRINT.equals(prefs.getString(KEY_FINGERPRINT, null))) {
+                decoders = fromJson(prefs.getString(KEY_DECODERS, null));
+            }
+            if (decoders == null) {
+                decoders = probe();
+                prefs.edit()
+                    .putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+                    .putString(KEY_DECODERS, toJson(decoders))
+                    .apply();
+            }
+            shared = new DecoderCapabilities(decoders);
+        }
+        return shared;
+    }
+
+    // For request code without a Context; null until startup has probed
+    static synchronized String currentHeaderValue() {
+        return shared != null ? shared.headerValue : null;
+    }
+
+    DecoderCapabilities(Map<String, Decoder> decoders) {
+        this.decoders = decoders;
+        StringBuilder value = new StringBuilder();
+        for (Map.Entry<String, Decoder> entry : decoders.entrySet()) {
+            Decoder decoder = entry.getValue();
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(NAMES.get(entry.getKey()));
+            if (decoder.hardware) {
+                value.append(":hw");
+            }
+            if (decoder.maxWidth > 0) {
+                value.append(':').append(decoder.maxWidth).append('x').append(decoder.maxHeight);
+            }
+            if (decoder.tenBit) {
+                value.append(":10bit");
+            }
+        }
+        this.headerValue = value.toString();
+    }
+
+    public String getHeaderValue() {
+        return headerValue;
+    }
+
+    // Formats outside the probed set are left to the player to judge
+    static boolean isProbed(String mime) {
+        return mime != null && NAMES.containsKey(mime);
+    }
+
+    public boolean canDecode(String mime) {
+        return decoders.containsKey(mime);
+    }
+
+    // A video stream the device plays without falling back to a software decoder
+    public boolean canHardwareDecode(String mime, int width, int height, boolean tenBit) {
+        Decoder decoder = decoders.get(mime);
+        if (decoder == null || !decoder.hardware || (tenBit && !decoder.tenBit)) return false;
+        // Either orientation; unknown sizes pass
+        return width <= 0 || height <= 0 ||
+            (Math.max(width, height) <= Math.max(decoder.maxWidth, decoder.maxHeight) &&
+                Math.min(width, height) <= Math.min(decoder.maxWidth, decoder.maxHeight));
+    }
+
+    // Whether the native player should take a file with these formats; unknown formats pass
+    public boolean canPlayNatively(Mp4SeekIndex.Codecs codecs) {
+        if (!codecs.videoMime.isEmpty() &&
+            !canHardwareDecode(codecs.videoMime, codecs.width, codecs.height, codecs.tenBit)) return false;
+        return codecs.audioMime.isEmpty() || canDecode(codecs.audioMime);
+    }
+
+    private static Map<String, Decoder> probe() {
+        Map<String, Decoder> found = new LinkedHashMap<>();
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (info.isEncoder()) continue;
+            for (String type : info.getSupportedTypes()) {
+                String mime = type.toLowerCase();
+                if (!NAMES.containsKey(mime)) continue;
+                Decoder decoder = describe(info, type);
+                if (decoder != null && decoder.betterThan(found.get(mime))) {
+                    found.put(mime, decoder);
+                }
+            }
+        }
+        // Keep the NAMES order so the header value is stable
+        Map<String, Decoder> ordered = new LinkedHashMap<>();
+        for (String mime : NAMES.keySet()) {
+            if (found.containsKey(mime)) {
+                ordered.put(mime, found.get(mime));
+            }
+        }
+        return ordered;
+    }
+
+    private static Decoder describe(MediaCodecInfo info, String type) {
+        try {
+            MediaCodecInfo.CodecCapabilities capabilities = info.getCapabilitiesForType(type);
+            MediaCodecInfo.VideoCapabilities video = capabilities.getVideoCapabilities();
+            boolean tenBit = false;
+            for (MediaCodecInfo.CodecProfileLevel level : capabilities.profileLevels) {
+                tenBit |= level.profile == MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10 && type.equalsIgnoreCase("video/hevc");
+                tenBit |= level.profile == MediaCodecInfo.CodecProfileLevel.AVCProfileHigh10 && type.equalsIgnoreCase("video/avc");
+            }
+            return new Decoder(isHardware(info),
+                video != null ? video.getSupportedWidths().getUpper() : 0,
+                video != null ? video.getSupportedHeights().getUpper() : 0,
+                tenBit);
+        } catch (IllegalArgumentException e) {
+            // Some vendor codecs list types they then refuse to describe
+            return null;
+        }
+    }
+
+    private static boolean isHardware(MediaCodecInfo info) {
+        if (Build.VERSION.SDK_INT >= 29) {
+            return info.isHardwareAccelerated();
+        }
+        String name = info.getName().toLowerCase();
+        return !name.startsWith("omx.google.") && !name.startsWith("c2.android.") &&
+            !name.startsWith("omx.ffmpeg.") && !name.contains(".sw.");
+    }
+
+    private static String toJson(Map<String, Decoder> decoders) {
+        try {
+            JSONObject json = new JSONObject();
+            for (Map.Entry<String, Decoder> entry : decoders.entrySet()) {
+                Decoder decoder = entry.getValue();
+                JSONObject item = new JSONObject();
+                item.put("hardware", decoder.hardware);
+                item.put("maxWidth", decoder.maxWidth);
+                item.put("maxHeight", decoder.maxHeight);
+                item.put("tenBit", decoder.tenBit);
+                json.put(entry.getKey(), item);
+            }
+            return json.toString();
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, Decoder> fromJson(String stored) {
+        if (stored == null) return null;
+        try {
+            JSONObject json = new JSONObject(stored);
+            Map<String, Decoder> decoders = new LinkedHashMap<>();
+            for (String mime : NAMES.keySet()) {
+                JSONObject item = json.optJSONObject(mime);
+                if (item != null) {
+                    decoders.put(mime, new Decoder(item.getBoolean("hardware"), item.getInt("maxWidth"),
+                        item.getInt("maxHeight"), item.getBoolean("tenBit")));
+                }
+            }
+            return decoders;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    public String getStatsJson() {
+        String json = toJson(decoders);
+        return json != null ? json : "{}";
+    }
+}
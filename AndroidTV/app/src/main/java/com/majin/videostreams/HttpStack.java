@@ -0,0 +1,390 @@
+package com.majin.videostreams;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.webkit.CookieManager;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// The one HTTP client for everything native code fetches: intercepted WebView requests,
+// the native player, prefetches, downloads and API calls. Connections to the tunnel edge
+// are pooled and multiplexed over HTTP/2, responses are gzip-decoded transparently, host
+// lookups are cached, and each call's DNS, connect, TLS and time-to-first-byte phases are
+// recorded so tunnel latency can be told apart from origin latency.
+public class HttpStack {
+    private static HttpStack shared;
+
+    private final OkHttpClient client;
+    private final CachingDns dns;
+    private final int historySize;
+    // Guarded by this
+    private final Map<String, Totals> totals = new LinkedHashMap<>();
+    private final ArrayDeque<JSONObject> recent = new ArrayDeque<>();
+
+    public static synchronized HttpStack getShared(Context context) {
+        if (shared == null) {
+            Context app = context.getApplicationContext();
+            shared = new HttpStack(app.getResources().getInteger(R.integer.http_max_idle_connections),
+                app.getResources().getInteger(R.integer.http_keep_alive_seconds),
+                app.getResources().getInteger(R.integer.http_dns_ttl_seconds) * 1000L,
+                app.getResources().getInteger(R.integer.http_timing_history));
+        }
+        return shared;
+    }
+
+    HttpStack(int maxIdleConnections, long keepAliveSeconds, long dnsTtlMs, int historySize) {
+        this.dns = new CachingDns(dnsTtlMs);
+        this.historySize = historySize;
+        this.client = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .dns(dns)
+            .addInterceptor(HttpStack::addSiteHeaders)
+            .eventListenerFactory(call -> new Timing())
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(20, TimeUnit.SECONDS)
+            .build();
+    }
+
+    public OkHttpClient client() {
+        return client;
+    }
+
+    // Callers with their own deadlines still share the pool, resolver and timing
+    public OkHttpClient client(long connectTimeoutMs, long readTimeoutMs) {
+        return client.newBuilder()
+            .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+            .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    // Resolves the host and leaves a warm (HTTP/2) connection in the pool, so the first
+    // real request skips DNS, TCP and TLS
+    public boolean preconnect(String url) {
+        Request request = new Request.Builder().url(url).head().build();
+        try (Response response = client(5000, 5000).newCall(request).execute()) {
+            return response.code() < 500;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Pooled sockets and cached addresses belong to the network they were made on
+    public void onNetworkChanged() {
+        dns.clear();
+        client.connectionPool().evictAll();
+    }
+
+    // The WebView's cookies and the decoder list go out on our requests exactly as they
+    // would on the page's own; explicit headers from the caller win
+    private static Response addSiteHeaders(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        Request.Builder builder = request.newBuilder();
+        if (request.header("Cookie") == null) {
+            String cookies = webViewCookies(request.url().toString());
+            if (cookies != null) {
+                builder.header("Cookie", cookies);
+            }
+        }
+        String codecs = DecoderCapabilities.currentHeaderValue();
+        if (codecs != null && request.url().encodedPath().startsWith("/videos/") &&
+            request.header(DecoderCapabilities.HEADER) == null) {
+            builder.header(DecoderCapabilities.HEADER, codecs);
+        }
+        return chain.proceed(builder.build());
+    }
+
+    private static String webViewCookies(String url) {
+        try {
+            return CookieManager.getInstance().getCookie(url);
+        } catch (RuntimeException e) {
+            // WebView package missing or mid-update, e.g. in the download job
+            return null;
+        }
+    }
+
+    // Cloudflare's answers change rarely, while older TVs cache lookups briefly or not at all
+    static class CachingDns implements Dns {
+        private static class Lookup {
+            final List<InetAddress> addresses;
+            final long expiresAt;
+
+            Lookup(List<InetAddress> addresses, long expiresAt) {
+                this.addresses = addresses;
+                this.expiresAt = expiresAt;
+            }
+        }
+
+        private final long ttlMs;
+        private final Map<String, Lookup> lookups = new ConcurrentHashMap<>();
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong staleServed = new AtomicLong();
+
+        CachingDns(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            Lookup cached = lookups.get(hostname);
+            long now = SystemClock.elapsedRealtime();
+            if (cached != null && now < cached.expiresAt) {
+                hits.incrementAndGet();
+                return cached.addresses;
+            }
+            try {
+                List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+                misses.incrementAndGet();
+                lookups.put(hostname, new Lookup(addresses, now + ttlMs));
+                return addresses;
+            } catch (UnknownHostException e) {
+                // A flaky home router should not take down a host we reached minutes ago
+                if (cached == null) throw e;
+                staleServed.incrementAndGet();
+                return cached.addresses;
+            }
+        }
+
+        void clear() {
+            lookups.clear();
+        }
+
+        int size() {
+            return lookups.size();
+        }
+    }
+
+    private static class Totals {
+        long calls;
+        long failures;
+        long reused;
+        long http2;
+        long dnsCount;
+        long dnsMs;
+        long connectCount;
+        long connectMs;
+        long tlsCount;
+        long tlsMs;
+        long ttfbCount;
+        long ttfbMs;
+        long maxTtfbMs;
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("calls", calls);
+            json.put("failures", failures);
+            json.put("reusedConnections", reused);
+            json.put("http2", http2);
+            json.put("avgDnsMs", dnsCount == 0 ? 0 : dnsMs / dnsCount);
+            json.put("avgConnectMs", connectCount == 0 ? 0 : connectMs / connectCount);
+            json.put("avgTlsMs", tlsCount == 0 ? 0 : tlsMs / tlsCount);
+            json.put("avgTtfbMs", ttfbCount == 0 ? 0 : ttfbMs / ttfbCount);
+            json.put("maxTtfbMs", maxTtfbMs);
+            return json;
+        }
+    }
+
+    // One per call. Phases a pooled connection skips stay at -1; TTFB runs from the
+    // request headers going out to the response headers arriving, so it is the tunnel
+    // and origin time with connection setup excluded.
+    private final class Timing extends EventListener {
+        private long callStart;
+        private long dnsStart;
+        private long dnsMs = -1;
+        private long connectStart;
+        private long connectMs = -1;
+        private long tlsStart;
+        private long tlsMs = -1;
+        private long requestStart;
+        private long ttfbMs = -1;
+        private long bodyBytes;
+        private String protocol = "";
+
+        private long now() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStart = now();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = now();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> addresses) {
+            dnsMs = now() - dnsStart;
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connectStart = now();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            tlsStart = now();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            tlsMs = now() - tlsStart;
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+            // TCP alone; the handshake is reported separately
+            connectMs = now() - connectStart - Math.max(tlsMs, 0);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            protocol = connection.protocol().toString();
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            requestStart = now();
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            ttfbMs = now() - requestStart;
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            bodyBytes = byteCount;
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            record(call.request(), this, false);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            record(call.request(), this, true);
+        }
+    }
+
+    private static String kindOf(Request request) {
+        String path = request.url().encodedPath();
+        if (path.startsWith("/videos/")) return "video";
+        if (path.startsWith("/api/")) return "api";
+        if (path.matches("(?i).*\\.(jpe?g|png|webp|gif)$")) return "image";
+        return "other";
+    }
+
+    private synchronized void record(Request request, Timing timing, boolean failed) {
+        String kind = kindOf(request);
+        Totals kindTotals = totals.get(kind);
+        if (kindTotals == null) {
+            kindTotals = new Totals();
+            totals.put(kind, kindTotals);
+        }
+        kindTotals.calls++;
+        if (failed) {
+            kindTotals.failures++;
+        }
+        if (timing.connectMs < 0 && !timing.protocol.isEmpty()) {
+            kindTotals.reused++;
+        }
+        if ("h2".equals(timing.protocol)) {
+            kindTotals.http2++;
+        }
+        if (timing.dnsMs >= 0) {
+            kindTotals.dnsCount++;
+            kindTotals.dnsMs += timing.dnsMs;
+        }
+        if (timing.connectMs >= 0) {
+            kindTotals.connectCount++;
+            kindTotals.connectMs += timing.connectMs;
+        }
+        if (timing.tlsMs >= 0) {
+            kindTotals.tlsCount++;
+            kindTotals.tlsMs += timing.tlsMs;
+        }
+        if (timing.ttfbMs >= 0) {
+            kindTotals.ttfbCount++;
+            kindTotals.ttfbMs += timing.ttfbMs;
+            kindTotals.maxTtfbMs = Math.max(kindTotals.maxTtfbMs, timing.ttfbMs);
+        }
+
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put("kind", kind);
+            entry.put("path", request.url().encodedPath());
+            entry.put("protocol", timing.protocol);
+            entry.put("dnsMs", timing.dnsMs);
+            entry.put("connectMs", timing.connectMs);
+            entry.put("tlsMs", timing.tlsMs);
+            entry.put("ttfbMs", timing.ttfbMs);
+            // Streamed bodies end when the reader closes them, so this includes playback pacing
+            entry.put("totalMs", SystemClock.elapsedRealtime() - timing.callStart);
+            entry.put("bytes", timing.bodyBytes);
+            entry.put("failed", failed);
+            recent.addLast(entry);
+            while (recent.size() > historySize) {
+                recent.removeFirst();
+            }
+        } catch (JSONException e) {
+            // Keys are constant
+        }
+    }
+
+    public synchronized String getStatsJson() {
+        try {
+            JSONObject kinds = new JSONObject();
+            for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+                kinds.put(entry.getKey(), entry.getValue().toJson());
+            }
+            JSONObject lookups = new JSONObject();
+            lookups.put("hits", dns.hits.get());
+            lookups.put("misses", dns.misses.get());
+            lookups.put("staleServed", dns.staleServed.get());
+            lookups.put("entries", dns.size());
+            JSONObject pool = new JSONObject();
+            pool.put("connections", client.connectionPool().connectionCount());
+            pool.put("idle", client.connectionPool().idleConnectionCount());
+
+            JSONObject json = new JSONObject();
+            json.put("pool", pool);
+            json.put("dns", lookups);
+            json.put("kinds", kinds);
+            json.put("recent", new JSONArray(recent));
+            return json.toString();
+        } catch (JSONException e) {
+            return "{}";
+        }
+    }
+}
@@ -15,6 +15,8 @@ import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import android.content.SharedPreferences;
 import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
 import java.io.InputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -22,91 +24,374 @@ import java.nio.charset.StandardCharsets;
 public class MainActivity extends Activity {
     private WebView webView;
     private String siteUrl;
-    private int retryCount = 0;
-    private int maxRetries;
-    private int retryDelayBase;
-    private int periodicRetryInterval;
-    private int loginDelay;
-    private int videoOptimizationDelay;
-    private String defaultTvPassword;
-    private Handler retryHandler = new Handler();
-    private Runnable periodicRetry;
-    private boolean siteLoaded = false;
+    private volatile SessionManager sessionManager;
+    private volatile TelemetryUploader telemetryUploader;
+    private volatile ProgressSyncQueue progressQueue;
+    private volatile PlaybackTelemetry.Session webPlayback;
+    private volatile String currentPageUrl;
+    private ReconnectManager reconnectManager;
+    private boolean mainFrameFailed = false;
+    private String lastFailedUrl;
     private SharedPreferences prefs;
-    private boolean loginAttempted = false;
-    private String videoOptimizationScript;
     private Handler inactivityHandler = new Handler();
-    private Runnable sleepRunnable;
+    private boolean resumed = false;
+    private final PageState pageState = new PageState(playing -> {
+        if (playing) {
+            stopInactivityTimer();
+        } else if (resumed) {
+            startInactivityTimer();
+        }
+    });
+    // Playback never arms the timer, so reaching this means the viewer walked away
+    private final Runnable sleepRunnable = () -> {
+        if (!pageState.isPlaying()) {
+            finish();
+        }
+    };
+    private FullscreenChromeClient chromeClient;
     private static final int INACTIVITY_TIMEOUT = 5 * 60 * 1000; // 5 minutes
+    private static final int REQUEST_NATIVE_PLAYER = 1001;
+    private static final int REQUEST_NATIVE_BROWSE = 1002;
+    private boolean browseOpen = false;
+    private VideoRangeCache videoRangeCache;
+    private VideoRequestInterceptor videoRequestInterceptor;
+    private NextEpisodePrefetcher prefetcher;
+    private Mp4SeekIndex seekIndex;
+    private DecoderCapabilities decoderCapabilities;
+    private HttpStack httpStack;
+    private OfflineDownloads offlineDownloads;
+    private CatalogCache catalogCache;
+    private CatalogSearchIndex searchIndex;
+    private PosterPipeline posterPipeline;
+    private MemoryManager memoryManager;
+    private final MemoryManager.Listener memoryListener = keepPercent -> {
+        posterPipeline.trimMemory(keepPercent);
+        if (keepPercent == 0) {
+            // A prefetch holds a whole segment in memory until it is written
+            prefetcher.cancel();
+        }
+    };
+    // What the page is playing, so a WebView recreated after a renderer crash can reopen it
+    private volatile String playingSeriesId;
+    private volatile int playingVideoIndex;
+    private volatile double playingPositionSeconds;
+    private volatile String pendingRestore;
+    private boolean nativePlayerOpen = false;
+    private int rendererRecoveries = 0;
+    private long rendererRecoveryWindowStart = 0;
+    private static final String ACTION_DUMP_STARTUP_TRACE = "com.majin.videostreams.DUMP_STARTUP_TRACE";
+    static final String EXTRA_SITE_URL = "site_url";
+    private final java.util.concurrent.ExecutorService startupExecutor = java.util.concurrent.Executors.newFixedThreadPool(4);
+    private final java.util.concurrent.CountDownLatch startupAssetsLoaded = new java.util.concurrent.CountDownLatch(1);
+    private android.content.BroadcastReceiver traceReceiver;
+    private ScriptInjector scriptInjector;
+    // Handed from loadInjectedScripts to the UI thread; null until (or unless) it finishes
+    private volatile ScriptInjector loadedScriptInjector;
+    private volatile boolean startupAssetsReady = false;
+    private RemoteInputChannel inputChannel;
+    private final java.util.concurrent.CountDownLatch injectedScriptsLoaded = new java.util.concurrent.CountDownLatch(1);
+    private final java.util.concurrent.CountDownLatch sessionManagerCreated = new java.util.concurrent.CountDownLatch(1);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.mark("activity_create");
+        
+        // Stage 1: kick off everything that does not need the layout
+        prewarmWebViewProvider();
+        loadConfiguration();
+        prefs = getSharedPreferences("VideoHostAuth", Context.MODE_PRIVATE);
+        startupExecutor.execute(this::preconnectToSite);
+        startupExecutor.execute(this::prepareSession);
+        startupExecutor.execute(this::loadInjectedScripts);
+        startupExecutor.execute(this::loadStartupAssets);
+        
+        // Stage 2: inflate while the background work runs
         super.onCreate(savedInstanceState);
+        long inflateStart = StartupTrace.begin();
         setContentView(R.layout.activity_main);
+        StartupTrace.endSpan("inflate_layout", inflateStart);
         
         // Keep screen on during video playback
         getWindow().addFlags(android.view.WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
-
-        // Load configuration values
-        loadConfiguration();
         
         webView = findViewById(R.id.webview);
-        prefs = getSharedPreferences("VideoHostAuth", Context.MODE_PRIVATE);
         setupWebView();
+        attachInjectedScripts();
+        StartupTrace.mark("webview_ready");
         loadSiteWithRetry();
         startInactivityTimer();
+        registerTraceReceiver();
     }
     
     private void loadConfiguration() {
         siteUrl = BuildConfig.SITE_URL;
-        maxRetries = getResources().getInteger(R.integer.max_retries);
-        retryDelayBase = getResources().getInteger(R.integer.retry_delay_base);
-        periodicRetryInterval = getResources().getInteger(R.integer.periodic_retry_interval);
-        loginDelay = getResources().getInteger(R.integer.login_delay);
-        videoOptimizationDelay = getResources().getInteger(R.integer.video_optimization_delay);
-        defaultTvPassword = getString(R.string.default_tv_password);
-        
-        // Load video optimization script
+        // Debug builds can be pointed at the benchmark module's stand-in server
+        String override = getIntent().getStringExtra(EXTRA_SITE_URL);
+        if (BuildConfig.ENABLE_WEBVIEW_DEBUG && override != null) {
+            siteUrl = override;
+        }
+    }
+    
+    // Loading the WebView provider is the single biggest cost of inflating activity_main;
+    // asking for the default user agent does it off the main thread
+    private void prewarmWebViewProvider() {
+        startupExecutor.execute(() -> {
+            long start = StartupTrace.begin();
+            try {
+                WebSettings.getDefaultUserAgent(getApplicationContext());
+            } catch (RuntimeException e) {
+                // WebView missing or updating - the layout inflate will surface it
+            }
+            StartupTrace.endSpan("webview_provider_prewarm", start);
+        });
+    }
+    
+    // Resolve DNS and open a connection to the tunnel edge before the WebView asks for the page;
+    // the connection stays in the shared pool for the first intercepted request. Best effort.
+    private void preconnectToSite() {
+        long start = StartupTrace.begin();
+        HttpStack.getShared(this).preconnect(siteUrl);
+        StartupTrace.endSpan("preconnect", start);
+    }
+    
+    private void loadStartupAssets() {
         try {
-            InputStream is = getAssets().open("video_optimization.js");
-            byte[] buffer = new byte[is.available()];
-            is.read(buffer);
-            is.close();
-            videoOptimizationScript = new String(buffer, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            videoOptimizationScript = "console.log('Video optimization script not found');"; 
+            buildStartupAssets();
+            startupAssetsReady = true;
+        } finally {
+            // Waiters time out on a failed stage instead of hanging
+            startupAssetsLoaded.countDown();
         }
+        // Indexing the last known catalog can wait until interception is unblocked
+        startupExecutor.execute(searchIndex::refresh);
     }
     
-    private void loadSiteWithRetry() {
-        retryCount = 0;
-        siteLoaded = false;
-        webView.loadUrl(siteUrl);
+    private void buildStartupAssets() {
+        long start = StartupTrace.begin();
+        
+        // Touch prefs so the XML is parsed here rather than on first use from the UI thread
+        prefs.contains("username");
+        
+        // Probed once per OS build; the WebView's own /videos requests carry it as a cookie
+        decoderCapabilities = DecoderCapabilities.getShared(this);
+        android.webkit.CookieManager.getInstance().setCookie(siteUrl,
+            "deviceCodecs=" + Uri.encode(decoderCapabilities.getHeaderValue()) + "; Path=/videos; Max-Age=31536000");
+        
+        httpStack = HttpStack.getShared(this);
+        // On-device cache for /videos byte ranges so seeks and re-watches skip the tunnel
+        videoRangeCache = VideoRangeCache.getShared(this);
+        seekIndex = Mp4SeekIndex.getShared(this);
+        videoRequestInterceptor = new VideoRequestInterceptor(videoRangeCache, seekIndex, httpStack,
+            getResources().getInteger(R.integer.video_cache_segment_kb) * 1024L);
+        prefetcher = NextEpisodePrefetcher.getShared(this);
+        // Episodes downloaded for offline viewing are served before anything else
+        offlineDownloads = OfflineDownloads.getShared(this);
+        offlineDownloads.setSiteUrl(siteUrl);
+        offlineDownloads.scheduleIfPending();
+        
+        // Posters are downsampled to grid tile size before the renderer decodes them;
+        // the memory tier is sized to the device and shrinks under pressure
+        memoryManager = MemoryManager.getShared(this);
+        posterPipeline = PosterPipeline.getShared(this);
+        memoryManager.addListener(memoryListener);
+        
+        // Last known catalog and page bundle, served instantly and revalidated in the background
+        catalogCache = new CatalogCache(new java.io.File(getFilesDir(), "catalog-cache"), httpStack,
+            getResources().getInteger(R.integer.catalog_revalidate_interval),
+            path -> {
+                if (CatalogSearchIndex.SERIES_PATH.equals(path)) {
+                    searchIndex.refresh();
+                }
+                runOnUiThread(() -> {
+                    if (webView != null) {
+                        scriptInjector.evaluate(webView,
+                            "window.dispatchEvent(new CustomEvent('catalogupdated', { detail: { path: '" + path + "' } }));", null);
+                    }
+                });
+            });
+        // Remote search is answered from the cached catalog; only changed series are re-indexed
+        searchIndex = new CatalogSearchIndex(catalogCache);
+        
+        StartupTrace.endSpan("load_assets", start);
+    }
+    
+    // Request interception and page callbacks need the caches and script; they are
+    // normally ready long before the first request, so this rarely blocks
+    private boolean awaitSessionManager() {
+        try {
+            return sessionManagerCreated.await(5, java.util.concurrent.TimeUnit.SECONDS) && sessionManager != null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
     
-    private void startPeriodicRetry() {
-        stopPeriodicRetry();
-        periodicRetry = () -> {
-            if (!siteLoaded) {
-                retryCount = 0;
-                webView.loadUrl(siteUrl);
-                retryHandler.postDelayed(periodicRetry, periodicRetryInterval);
+    private boolean awaitStartupAssets() {
+        try {
+            return startupAssetsLoaded.await(5, java.util.concurrent.TimeUnit.SECONDS) && startupAssetsReady;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    // Page scripts are small assets; reading them races the layout inflate and is
+    // done long before the WebView is ready to take document-start registrations
+    private void loadInjectedScripts() {
+        try {
+            long start = StartupTrace.begin();
+            ScriptInjector injector = new ScriptInjector(siteUrl);
+            injector.register("tv-navigation", 1, readAsset("tv_navigation.js"));
+            injector.register("video-optimization", 2, readAsset("video_optimization.js"));
+            injector.register("input-channel", 2, readAsset("input_channel.js"));
+            injector.register("page-state", 1, readAsset("page_state.js"));
+            injector.register("session-seed", 1, readAsset("session_seed.js"), false);
+            loadedScriptInjector = injector;
+            StartupTrace.endSpan("load_scripts", start);
+        } finally {
+            injectedScriptsLoaded.countDown();
+        }
+    }
+    
+    // Checks or renews the stored token while the page loads, so the page's first
+    // script finds a working session instead of validating it against the catalog
+    private void prepareSession() {
+        long start = StartupTrace.begin();
+        try {
+            SessionManager manager = SessionManager.create(this, siteUrl);
+            telemetryUploader = new TelemetryUploader(siteUrl, manager, HttpStack.getShared(this),
+                getResources().getInteger(R.integer.telemetry_upload_interval),
+                getResources().getInteger(R.integer.telemetry_batch_size));
+            progressQueue = new ProgressSyncQueue(new java.io.File(getFilesDir(), "progress-queue.json"), siteUrl,
+                manager, HttpStack.getShared(this),
+                getResources().getInteger(R.integer.progress_flush_interval),
+                getResources().getInteger(R.integer.progress_batch_size));
+            // Published last, so a non-null sessionManager means the whole stage ran
+            sessionManager = manager;
+        } finally {
+            sessionManagerCreated.countDown();
+        }
+        runOnUiThread(() -> {
+            telemetryUploader.start();
+            progressQueue.start();
+        });
+        sessionManager.prepare();
+        runOnUiThread(this::pushSession);
+        // Replay whatever a previous run could not deliver
+        progressQueue.flush();
+        StartupTrace.endSpan("prepare_session", start);
+    }
+    
+    // takeSession() does not wait for prepare(); a page that started first gets the
+    // session this way once it is ready (the next document reads it at document start)
+    private void pushSession() {
+        SessionManager.Session session = sessionManager.awaitSession(0);
+        String pageUrl = currentPageUrl;
+        if (session == null || webView == null || scriptInjector == null || pageUrl == null || !isSiteUrl(pageUrl)) return;
+        scriptInjector.evaluate(webView,
+            "window.__majinSeedSession && window.__majinSeedSession(" + org.json.JSONObject.quote(session.toJson()) + ");", null);
+    }
+    
+    private void attachInjectedScripts() {
+        try {
+            injectedScriptsLoaded.await(5, java.util.concurrent.TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scriptInjector = loadedScriptInjector;
+        if (scriptInjector == null) {
+            // Failed or stuck loading; the site still works without the TV scripts
+            android.util.Log.w("MainActivity", "Injected scripts not loaded; continuing without them");
+            scriptInjector = new ScriptInjector(siteUrl);
+        }
+        scriptInjector.attach(webView);
+        inputChannel = new RemoteInputChannel(scriptInjector, pageState, siteUrl);
+    }
+    
+    private String readAsset(String name) {
+        try (InputStream is = getAssets().open(name)) {
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "console.log('Script asset " + name + " not found');";
+        }
+    }
+    
+    // Debug builds: adb shell am broadcast -a com.majin.videostreams.DUMP_STARTUP_TRACE
+    private void registerTraceReceiver() {
+        if (!BuildConfig.ENABLE_WEBVIEW_DEBUG) return;
+        traceReceiver = new android.content.BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                StartupTrace.dump();
             }
         };
-        retryHandler.postDelayed(periodicRetry, periodicRetryInterval);
+        androidx.core.content.ContextCompat.registerReceiver(this, traceReceiver,
+            new android.content.IntentFilter(ACTION_DUMP_STARTUP_TRACE),
+            androidx.core.content.ContextCompat.RECEIVER_EXPORTED);
     }
     
-    private void stopPeriodicRetry() {
-        if (periodicRetry != null) {
-            retryHandler.removeCallbacks(periodicRetry);
-        }
+    private void loadSiteWithRetry() {
+        reconnectManager = new ReconnectManager(this, siteUrl, new ReconnectManager.Callbacks() {
+            @Override
+            public void reloadSite() {
+                // Retry the page that failed if it was ours, otherwise go home
+                webView.loadUrl(lastFailedUrl != null && isSiteUrl(lastFailedUrl) ? lastFailedUrl : siteUrl);
+            }
+            
+            @Override
+            public void onReconnected() {
+                // Page and player are intact; let the page restart whatever stalled
+                if (progressQueue != null) {
+                    progressQueue.flush();
+                }
+                scriptInjector.evaluate(webView, "window.dispatchEvent(new Event('majin-reconnected'));", null);
+            }
+        },
+            getResources().getInteger(R.integer.reconnect_base_delay),
+            getResources().getInteger(R.integer.reconnect_max_delay),
+            getResources().getInteger(R.integer.reconnect_breaker_threshold),
+            getResources().getInteger(R.integer.reconnect_probe_interval));
+        reconnectManager.start();
+        webView.loadUrl(siteUrl);
     }
     
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        stopPeriodicRetry();
+        if (reconnectManager != null) {
+            reconnectManager.stop();
+        }
         stopInactivityTimer();
+        if (traceReceiver != null) {
+            unregisterReceiver(traceReceiver);
+        }
+        if (memoryManager != null) {
+            memoryManager.removeListener(memoryListener);
+        }
+        if (telemetryUploader != null) {
+            telemetryUploader.stop();
+        }
+        if (progressQueue != null) {
+            // Last attempt; anything unsent is already on disk for the next launch
+            progressQueue.flush();
+            progressQueue.stop();
+        }
+        startupExecutor.shutdown();
+    }
+    
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Ship what we have before the process may be killed in the background
+        if (telemetryUploader != null) {
+            telemetryUploader.flush();
+        }
     }
     
     @Override
@@ -115,7 +400,11 @@ public class MainActivity extends Activity {
         if (webView != null) {
             webView.onPause();
         }
+        resumed = false;
         stopInactivityTimer();
+        if (progressQueue != null) {
+            progressQueue.flush();
+        }
     }
     
     @Override
@@ -124,9 +413,123 @@ public class MainActivity extends Activity {
         if (webView != null) {
             webView.onResume();
         }
+        resumed = true;
         startInactivityTimer();
     }
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_NATIVE_BROWSE) {
+            onNativeBrowseResult(resultCode, data);
+            return;
+        }
+        if (requestCode != REQUEST_NATIVE_PLAYER) return;
+        nativePlayerOpen = false;
+        if (webView == null) return;
+        
+        // Hand the final position back to the page so it can save progress
+        long positionMs = data != null ? data.getLongExtra(NativePlayerActivity.EXTRA_POSITION_MS, 0) : 0;
+        long durationMs = data != null ? data.getLongExtra(NativePlayerActivity.EXTRA_DURATION_MS, 0) : 0;
+        boolean ended = data != null && data.getBooleanExtra(NativePlayerActivity.EXTRA_ENDED, false);
+        boolean failed = data != null && data.hasExtra(NativePlayerActivity.EXTRA_ERROR);
+        scriptInjector.evaluate(webView,
+            "if (typeof onNativePlaybackClosed === 'function') onNativePlaybackClosed(" +
+            (positionMs / 1000.0) + ", " + (durationMs / 1000.0) + ", " + ended + ", " + failed + ");", null);
+    }
+    
+    private void onNativeBrowseResult(int resultCode, Intent data) {
+        browseOpen = false;
+        if (resultCode != RESULT_OK || data == null) {
+            // Back on the browse screen is back on the home screen
+            finish();
+            return;
+        }
+        if (webView == null) return;
+        
+        String seriesId = data.getStringExtra(BrowseActivity.EXTRA_SERIES_ID);
+        if (seriesId != null) {
+            scriptInjector.evaluate(webView,
+                "if (typeof selectSeries === 'function') selectSeries(" + org.json.JSONObject.quote(seriesId) + ");", null);
+            return;
+        }
+        String reason = data.getStringExtra(BrowseActivity.EXTRA_CLOSED_REASON);
+        scriptInjector.evaluate(webView,
+            "if (typeof onNativeBrowseClosed === 'function') onNativeBrowseClosed(" +
+            org.json.JSONObject.quote(reason != null ? reason : "") + ");", null);
+    }
+    
+    private void onMainFrameFailed(String failingUrl) {
+        if (mainFrameFailed) return;
+        mainFrameFailed = true;
+        lastFailedUrl = failingUrl;
+        reconnectManager.onMainFrameFailed();
+    }
+    
+    // The renderer died (usually killed for memory on 1 GB boxes). The old WebView is unusable,
+    // so build a new one in its place and reopen the page and whatever was playing.
+    private void recreateWebView(boolean crashed) {
+        if (isFinishing() || isDestroyed()) return;
+        
+        long now = android.os.SystemClock.elapsedRealtime();
+        if (now - rendererRecoveryWindowStart > getResources().getInteger(R.integer.renderer_recovery_window)) {
+            rendererRecoveryWindowStart = now;
+            rendererRecoveries = 0;
+        }
+        if (++rendererRecoveries > getResources().getInteger(R.integer.renderer_max_recoveries)) {
+            // Crash loop - a relaunch starts from a clean process
+            android.util.Log.e("MainActivity", "Renderer keeps dying, giving up");
+            finish();
+            return;
+        }
+        if (!crashed && memoryManager != null) {
+            // Killed for memory: free ours before a new renderer starts
+            memoryManager.onTrimMemory(android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        }
+        
+        String seriesId = playingSeriesId;
+        if (seriesId != null) {
+            try {
+                org.json.JSONObject state = new org.json.JSONObject();
+                state.put("seriesId", seriesId);
+                state.put("videoIndex", playingVideoIndex);
+                state.put("position", playingPositionSeconds);
+                // The native player survives the renderer; the page only has to pick up its result
+                state.put("native", nativePlayerOpen);
+                pendingRestore = state.toString();
+            } catch (org.json.JSONException e) {
+                pendingRestore = null;
+            }
+        }
+        String pageUrl = currentPageUrl != null && isSiteUrl(currentPageUrl) ? currentPageUrl : siteUrl;
+        
+        // A fullscreen view belongs to the dead renderer
+        chromeClient.onHideCustomView();
+        inputChannel.disconnect();
+        pageState.reset();
+        ViewGroup parent = (ViewGroup) webView.getParent();
+        int index = parent.indexOfChild(webView);
+        ViewGroup.LayoutParams params = webView.getLayoutParams();
+        parent.removeView(webView);
+        webView.destroy();
+        
+        webView = new WebView(this);
+        webView.setId(R.id.webview);
+        webView.setFocusable(true);
+        webView.setFocusableInTouchMode(true);
+        parent.addView(webView, index, params);
+        setupWebView();
+        scriptInjector.attach(webView);
+        webView.requestFocus();
+        webView.loadUrl(pageUrl);
+    }
+    
+    private boolean isSiteUrl(String url) {
+        if (url == null) return false;
+        String siteHost = Uri.parse(siteUrl).getHost();
+        return siteHost != null && siteHost.equalsIgnoreCase(Uri.parse(url).getHost());
+    }
+
     private void setupWebView() {
         WebSettings webSettings = webView.getSettings();
         webSettings.setJavaScriptEnabled(true);
@@ -184,158 +587,155 @@ public class MainActivity extends Activity {
                 return true;
             }
             
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                // Runs on a WebView background thread, so blocking network/disk work is fine here
+                if (!awaitStartupAssets()) {
+                    return super.shouldInterceptRequest(view, request);
+                }
+                WebResourceResponse cached = offlineDownloads.intercept(request);
+                if (cached != null) {
+                    return cached;
+                }
+                cached = videoRequestInterceptor.intercept(request);
+                if (cached != null) {
+                    return cached;
+                }
+                cached = catalogCache.intercept(request);
+                if (cached != null) {
+                    return cached;
+                }
+                cached = posterPipeline.intercept(request);
+                if (cached != null) {
+                    return cached;
+                }
+                return super.shouldInterceptRequest(view, request);
+            }
+            
+            @Override
+            public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
+                super.onPageStarted(view, url, favicon);
+                StartupTrace.mark("first_byte");
+                currentPageUrl = url;
+                scriptInjector.onPageStarted(url);
+                inputChannel.disconnect();
+                pageState.reset();
+                mainFrameFailed = false;
+            }
+            
             @Override
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
-                // Reset retry count on successful load
-                retryCount = 0;
-                siteLoaded = true;
-                stopPeriodicRetry();
-                
-                // Inject TV remote navigation handlers
-                view.evaluateJavascript(
-                    "document.addEventListener('keydown', function(e) {" +
-                    "  if (e.keyCode === 4 || e.key === 'GoBack') {" +
-                    "    var seriesModal = document.getElementById('seriesModal');" +
-                    "    if (seriesModal && seriesModal.style.display === 'block') {" +
-                    "      e.preventDefault();" +
-                    "      closeSeries();" +
-                    "    }" +
-                    "  }" +
-                    "  // Handle scrolling in video modal" +
-                    "  var videoModal = document.getElementById('videoModal');" +
-                    "  if (videoModal && videoModal.style.display === 'block') {" +
-                    "    if (e.keyCode === 38) { // Up arrow" +
-                    "      e.preventDefault();" +
-                    "      videoModal.scrollBy(0, -100);" +
-                    "    } else if (e.keyCode === 40) { // Down arrow" +
-                    "      e.preventDefault();" +
-                    "      videoModal.scrollBy(0, 100);" +
-                    "    }" +
-                    "  }" +
-                    "});", null);
+                StartupTrace.mark("page_finished");
+                // WebView also reports its own error page as finished
+                if (mainFrameFailed) return;
+                lastFailedUrl = null;
+                reconnectManager.onPageLoaded();
                 
-                // Auto-login with stored credentials and apply video optimizations
-                if (url.contains("magnushackhost.win")) {
-                    if (!loginAttempted) {
-                        loginAttempted = true;
-                        performAutoLogin(view);
-                    }
-                    applyVideoOptimizations(view);
-                }
+                // No-op when the scripts already ran at document start
+                scriptInjector.onPageFinished(view);
             }
             
             @Override
             public void onReceivedError(WebView view, int errorCode, String description, String failingUrl) {
                 super.onReceivedError(view, errorCode, description, failingUrl);
                 
-                // Retry logic for main site and video files
-                if (retryCount < maxRetries) {
-                    retryCount++;
-                    
-                    // Exponential backoff
-                    long delay = retryDelayBase * (1L << (retryCount - 1));
-                    
-                    retryHandler.postDelayed(() -> {
-                        if (failingUrl.equals(siteUrl) || failingUrl.contains("majinhackhost.win")) {
-                            // Retry main site
-                            view.loadUrl(siteUrl);
-                        } else {
-                            // Retry current page
-                            view.reload();
-                        }
-                    }, delay);
-                } else if (failingUrl.equals(siteUrl) || failingUrl.contains("majinhackhost.win")) {
-                    // Start periodic retry for main site
-                    siteLoaded = false;
-                    startPeriodicRetry();
-                }
-            }
-            
-            @Override
-            public void onLoadResource(WebView view, String url) {
-                super.onLoadResource(view, url);
-                // Preload video resources for better performance
-                if (url.contains(".mp4") || url.contains(".webm")) {
-                    view.evaluateJavascript("document.querySelector('video')?.setAttribute('preload', 'metadata');", null);
-                }
+                // Only called for the main document; subresources recover on their own
+                onMainFrameFailed(failingUrl);
             }
             
             @Override
             public void onReceivedHttpError(WebView view, android.webkit.WebResourceRequest request, android.webkit.WebResourceResponse errorResponse) {
                 super.onReceivedHttpError(view, request, errorResponse);
+                // Cloudflare serves 502/530 pages when the tunnel is down
+                if (request.isForMainFrame() && errorResponse.getStatusCode() >= 500) {
+                    onMainFrameFailed(request.getUrl().toString());
+                }
+                if (VideoRequestInterceptor.isVideoUrl(request.getUrl())) {
+                    PlaybackTelemetry.recordHttpError(request.getUrl().toString(), errorResponse.getStatusCode());
+                }
                 // Log QR login API errors for debugging
                 if (request.getUrl().toString().contains("/api/qr")) {
                     android.util.Log.e("WebView", "QR API Error: " + errorResponse.getStatusCode());
                 }
             }
+            
+            // API 26+; without it a renderer crash takes the whole app down
+            @Override
+            public boolean onRenderProcessGone(WebView view, android.webkit.RenderProcessGoneDetail detail) {
+                android.util.Log.w("WebView", "Renderer gone, crashed=" + detail.didCrash());
+                // Only the current WebView is rebuilt; a replaced one may still report
+                if (view == webView) {
+                    recreateWebView(detail.didCrash());
+                }
+                return true;
+            }
         });
         
         // Enable fullscreen video support with TV optimizations
-        webView.setWebChromeClient(new WebChromeClient() {
-            @Override
-            public void onProgressChanged(WebView view, int newProgress) {
-                super.onProgressChanged(view, newProgress);
-                // Apply video optimizations when page loads
-                if (newProgress > 80) {
-                    view.evaluateJavascript(videoOptimizationScript, null);
-                }
+        chromeClient = new FullscreenChromeClient();
+        webView.setWebChromeClient(chromeClient);
+    }
+    
+    private class FullscreenChromeClient extends WebChromeClient {
+        private View customView;
+        private CustomViewCallback customViewCallback;
+        
+        @Override
+        public void onShowCustomView(View view, CustomViewCallback callback) {
+            if (customView != null) {
+                onHideCustomView();
+                return;
             }
-            private View customView;
-            private CustomViewCallback customViewCallback;
             
-            @Override
-            public void onShowCustomView(View view, CustomViewCallback callback) {
-                if (customView != null) {
-                    onHideCustomView();
-                    return;
-                }
-                
-                customView = view;
-                customViewCallback = callback;
-                
-                // Hide system UI for fullscreen with TV-specific flags
-                getWindow().getDecorView().setSystemUiVisibility(
-                    View.SYSTEM_UI_FLAG_FULLSCREEN |
-                    View.SYSTEM_UI_FLAG_HIDE_NAVIGATION |
-                    View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY |
-                    View.SYSTEM_UI_FLAG_LAYOUT_STABLE |
-                    View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION |
-                    View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
-                );
-                
-                // Add custom view to activity
-                FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
-                    ViewGroup.LayoutParams.MATCH_PARENT,
-                    ViewGroup.LayoutParams.MATCH_PARENT
-                );
-                
-                FrameLayout container = findViewById(android.R.id.content);
-                container.addView(customView, params);
-                webView.setVisibility(View.GONE);
-            }
+            customView = view;
+            customViewCallback = callback;
             
-            @Override
-            public void onHideCustomView() {
-                if (customView == null) return;
-                
-                // Show system UI
-                getWindow().getDecorView().setSystemUiVisibility(View.SYSTEM_UI_FLAG_VISIBLE);
-                
-                // Remove custom view
-                FrameLayout container = findViewById(android.R.id.content);
-                container.removeView(customView);
-                customView = null;
-                
-                // Show WebView again
-                webView.setVisibility(View.VISIBLE);
-                
-                if (customViewCallback != null) {
-                    customViewCallback.onCustomViewHidden();
-                    customViewCallback = null;
-                }
+            // Hide system UI for fullscreen with TV-specific flags
+            getWindow().getDecorView().setSystemUiVisibility(
+                View.SYSTEM_UI_FLAG_FULLSCREEN |
+                View.SYSTEM_UI_FLAG_HIDE_NAVIGATION |
+                View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY |
+                View.SYSTEM_UI_FLAG_LAYOUT_STABLE |
+                View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION |
+                View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
+            );
+            
+            // Add custom view to activity
+            FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT
+            );
+            
+            FrameLayout container = findViewById(android.R.id.content);
+            container.addView(customView, params);
+            webView.setVisibility(View.GONE);
+        }
+        
+        @Override
+        public void onHideCustomView() {
+            if (customView == null) return;
+            
+            // Show system UI
+            getWindow().getDecorView().setSystemUiVisibility(View.SYSTEM_UI_FLAG_VISIBLE);
+            
+            // Remove custom view
+            FrameLayout container = findViewById(android.R.id.content);
+            container.removeView(customView);
+            customView = null;
+            
+            // Show WebView again
+            webView.setVisibility(View.VISIBLE);
+            
+            if (customViewCallback != null) {
+                customViewCallback.onCustomViewHidden();
+                customViewCallback = null;
             }
-        });
+        }
+        
+        boolean isShowingCustomView() {
+            return customView != null;
+        }
     }
 
     @Override
@@ -351,84 +751,28 @@ public class MainActivity extends Activity {
             case KeyEvent.KEYCODE_DPAD_DOWN:
             case KeyEvent.KEYCODE_DPAD_CENTER:
                 // Send arrow keys to JavaScript for custom handling
-                webView.evaluateJavascript(
-                    "var event = new KeyboardEvent('keydown', { keyCode: " + keyCode + ", bubbles: true });" +
-                    "document.dispatchEvent(event);", null);
+                inputChannel.sendKey(webView, keyCode, event.getRepeatCount());
                 return true;
             case KeyEvent.KEYCODE_BACK:
-                // Handle fullscreen exit first
-                WebChromeClient chromeClient = (WebChromeClient) webView.getWebChromeClient();
-                if (chromeClient != null) {
-                    try {
-                        chromeClient.onHideCustomView();
-                        return true;
-                    } catch (Exception e) {
-                        // Not in fullscreen, continue with normal back behavior
-                    }
+                // Fullscreen video is our own custom view; leave it without asking the page
+                if (chromeClient.isShowingCustomView()) {
+                    chromeClient.onHideCustomView();
+                    return true;
                 }
                 
-                // Send back key to JavaScript
-                webView.evaluateJavascript(
-                    "var event = new KeyboardEvent('keydown', { keyCode: 4, key: 'GoBack' });" +
-                    "document.dispatchEvent(event);", null);
+                // Overlays and playback close themselves in the page; so does anything on a
+                // page that has not reported its state
+                if (!pageState.isKnown() || pageState.getModal() != null || pageState.hasVideo() || pageState.isFullscreen()) {
+                    inputChannel.sendKey(webView, KeyEvent.KEYCODE_BACK, event.getRepeatCount());
+                    return true;
+                }
                 
-                // Prevent default back navigation for modals
-                return true;
+                // Nothing open on the grid - BACK leaves the app like any other TV app
+                break;
         }
         return super.onKeyDown(keyCode, event);
     }
     
-    private void performAutoLogin(WebView view) {
-        String savedUsername = prefs.getString("username", "");
-        String savedPassword = prefs.getString("password", "");
-        
-        String deviceId = android.provider.Settings.Secure.getString(getContentResolver(), android.provider.Settings.Secure.ANDROID_ID);
-        String deviceUsername = "TV-" + deviceId.substring(Math.max(0, deviceId.length() - 8));
-        
-        // First check if already logged in with valid token
-        String tokenCheckScript = "setTimeout(() => {" +
-            "  if (localStorage.getItem('authToken') && localStorage.getItem('currentUser')) {" +
-            "    fetch('/api/series', { headers: { 'Authorization': 'Bearer ' + localStorage.getItem('authToken') } })" +
-            "      .then(response => {" +
-            "        if (response.ok) {" +
-            "          console.log('Existing token valid, skipping login');" +
-            "          if (typeof updateUI === 'function') updateUI();" +
-            "          document.querySelector('main').style.display = 'block';" +
-            "          if (typeof loadSeries === 'function') loadSeries();" +
-            "          return;" +
-            "        } else {" +
-            "          console.log('Token invalid, proceeding with login');" +
-            "          performLogin();" +
-            "        }" +
-            "      })" +
-            "      .catch(() => performLogin());" +
-            "  } else {" +
-            "    performLogin();" +
-            "  }" +
-            "  " +
-            "  function performLogin() {" +
-            "    if (document.getElementById('loginUsername')) {" +
-            "      if ('" + savedUsername + "' && '" + savedPassword + "') {" +
-            "        document.getElementById('loginUsername').value = '" + savedUsername + "';" +
-            "        document.getElementById('loginPassword').value = '" + savedPassword + "';" +
-            "        setTimeout(() => { if (typeof login === 'function') login(); }, 500);" +
-            "      } else {" +
-            "        document.getElementById('loginUsername').value = '" + deviceUsername + "';" +
-            "        document.getElementById('loginPassword').value = '" + defaultTvPassword + "';" +
-            "        setTimeout(() => { if (typeof login === 'function') login(); }, 500);" +
-            "      }" +
-            "    }" +
-            "  }" +
-            "}, " + loginDelay + ");"; 
-        
-        view.evaluateJavascript(tokenCheckScript, null);
-    }
-    
-    private void applyVideoOptimizations(WebView view) {
-        String optimizationScript = "setTimeout(() => {" + videoOptimizationScript + "}, " + videoOptimizationDelay + ");"; 
-        view.evaluateJavascript(optimizationScript, null);
-    }
-    
     public class WebAppInterface {
         @android.webkit.JavascriptInterface
         public void exitApp() {
@@ -437,6 +781,9 @@ public class MainActivity extends Activity {
         
         @android.webkit.JavascriptInterface
         public void clearCacheAndReload() {
+            if (awaitStartupAssets()) {
+                catalogCache.clear();
+            }
             runOnUiThread(() -> {
                 webView.clearCache(true);
                 webView.clearHistory();
@@ -458,7 +805,7 @@ public class MainActivity extends Activity {
         @android.webkit.JavascriptInterface
         public void showLoginPrompt() {
             runOnUiThread(() -> {
-                webView.evaluateJavascript(
+                scriptInjector.evaluate(webView,
                     "var loginDiv = document.createElement('div');" +
                     "loginDiv.innerHTML = '<div style=\"position:fixed;top:50%;left:50%;transform:translate(-50%,-50%);background:rgba(0,0,0,0.9);color:white;padding:20px;border-radius:10px;z-index:9999;text-align:center;\">" +
                     "<h3>First Time Setup</h3>" +
@@ -470,6 +817,283 @@ public class MainActivity extends Activity {
             });
         }
         
+        @android.webkit.JavascriptInterface
+        public boolean isNativePlayerAvailable() {
+            return getResources().getBoolean(R.bool.native_player_enabled);
+        }
+        
+        @android.webkit.JavascriptInterface
+        public boolean playNative(String url, String authToken, double startPositionSeconds) {
+            if (url == null || !isNativePlayerAvailable()) return false;
+            
+            // Only stream from our own host
+            String absoluteUrl = url.startsWith("/") ? siteUrl + url : url;
+            if (!isSiteUrl(absoluteUrl)) return false;
+            
+            // Formats from an earlier play of this file that the hardware cannot decode go
+            // straight to the WebView player instead of failing or stuttering natively
+            if (awaitStartupAssets()) {
+                Mp4SeekIndex.Index index = seekIndex.get(absoluteUrl);
+                if (index != null && !decoderCapabilities.canPlayNatively(index.codecs)) return false;
+            }
+            
+            Intent intent = new Intent(MainActivity.this, NativePlayerActivity.class);
+            intent.putExtra(NativePlayerActivity.EXTRA_URL, absoluteUrl);
+            intent.putExtra(NativePlayerActivity.EXTRA_AUTH_TOKEN, authToken);
+            intent.putExtra(NativePlayerActivity.EXTRA_START_POSITION_MS, (long) (startPositionSeconds * 1000));
+            if (awaitStartupAssets()) {
+                prefetcher.onPlaybackStarted(absoluteUrl);
+                seekIndex.prepareAsync(absoluteUrl);
+            }
+            runOnUiThread(() -> {
+                nativePlayerOpen = true;
+                startActivityForResult(intent, REQUEST_NATIVE_PLAYER);
+            });
+            return true;
+        }
+        
+        // The page hands its grid over to the native rows; it keeps details and playback
+        @android.webkit.JavascriptInterface
+        public boolean openNativeBrowse(String authToken) {
+            if (authToken == null || authToken.isEmpty() ||
+                !getResources().getBoolean(R.bool.native_browse_enabled)) return false;
+            
+            Intent intent = new Intent(MainActivity.this, BrowseActivity.class);
+            intent.putExtra(BrowseActivity.EXTRA_AUTH_TOKEN, authToken);
+            intent.putExtra(BrowseActivity.EXTRA_SITE_URL, siteUrl);
+            runOnUiThread(() -> {
+                if (browseOpen) return;
+                browseOpen = true;
+                startActivityForResult(intent, REQUEST_NATIVE_BROWSE);
+            });
+            return true;
+        }
+        
+        // Watch progress goes through the persistent queue instead of a request per update
+        @android.webkit.JavascriptInterface
+        public boolean queueProgress(String seriesId, String videoFile, double currentTime, double duration, boolean completed) {
+            if (seriesId == null || videoFile == null || !awaitSessionManager()) return false;
+            progressQueue.enqueue(seriesId, videoFile, currentTime, duration, completed);
+            return true;
+        }
+        
+        // QoE for playback in the page's own <video> element
+        @android.webkit.JavascriptInterface
+        public void beginPlayback(String url) {
+            PlaybackTelemetry.Session previous = webPlayback;
+            if (previous != null) {
+                previous.end("exited");
+            }
+            webPlayback = url != null ? PlaybackTelemetry.begin("web", url) : null;
+            if (url != null && awaitStartupAssets()) {
+                String absoluteUrl = url.startsWith("/") ? siteUrl + url : url;
+                prefetcher.onPlaybackStarted(absoluteUrl);
+                if (isSiteUrl(absoluteUrl)) {
+                    seekIndex.prepareAsync(absoluteUrl);
+                }
+            }
+        }
+        
+        // Which episode follows the one starting now; empty for the last of a series
+        @android.webkit.JavascriptInterface
+        public void setNextEpisode(String url, String nextUrl) {
+            if (url == null || !awaitStartupAssets()) return;
+            String next = nextUrl != null && !nextUrl.isEmpty() ? (nextUrl.startsWith("/") ? siteUrl + nextUrl : nextUrl) : null;
+            prefetcher.setNextEpisode(url.startsWith("/") ? siteUrl + url : url, next != null && isSiteUrl(next) ? next : null);
+        }
+        
+        // Web playback position; the native player reports its own
+        @android.webkit.JavascriptInterface
+        public void onPlaybackPosition(double positionSeconds, double durationSeconds) {
+            playingPositionSeconds = positionSeconds;
+            if (prefetcher != null) {
+                prefetcher.onPosition((long) (positionSeconds * 1000), (long) (durationSeconds * 1000));
+            }
+        }
+        
+        // The episode now playing; an empty seriesId when playback is closed
+        @android.webkit.JavascriptInterface
+        public void setPlaybackRestore(String seriesId, int videoIndex) {
+            playingSeriesId = seriesId != null && !seriesId.isEmpty() ? seriesId : null;
+            playingVideoIndex = videoIndex;
+            playingPositionSeconds = 0;
+        }
+        
+        // Handed once to the first page after the WebView was recreated
+        @android.webkit.JavascriptInterface
+        public String takeRestoreState() {
+            String state = pendingRestore;
+            pendingRestore = null;
+            return state != null && isSiteUrl(currentPageUrl) ? state : "";
+        }
+        
+        // Fetched in the background during the off-peak window, then played from the device
+        @android.webkit.JavascriptInterface
+        public boolean queueDownload(String url, String seriesId, String title) {
+            if (url == null || !awaitStartupAssets()) return false;
+            String absoluteUrl = url.startsWith("/") ? siteUrl + url : url;
+            if (!isSiteUrl(absoluteUrl)) return false;
+            return offlineDownloads.enqueue(absoluteUrl, seriesId, title);
+        }
+        
+        @android.webkit.JavascriptInterface
+        public void removeDownload(String url) {
+            if (url == null || !awaitStartupAssets()) return;
+            offlineDownloads.remove(url.startsWith("/") ? siteUrl + url : url);
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getDownloads() {
+            return awaitStartupAssets() ? offlineDownloads.getStatusJson() : "{}";
+        }
+        
+        // Seek target snapped back to a keyframe, or -1 until the file has been indexed
+        @android.webkit.JavascriptInterface
+        public double getKeyframeTime(String url, double targetSeconds) {
+            if (url == null || !awaitStartupAssets()) return -1;
+            long keyframeMs = seekIndex.keyframeTimeMs(url.startsWith("/") ? siteUrl + url : url, (long) (targetSeconds * 1000));
+            return keyframeMs < 0 ? -1 : keyframeMs / 1000.0;
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getDecoderCapabilities() {
+            return awaitStartupAssets() ? decoderCapabilities.getStatsJson() : "{}";
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getSeekIndexStats() {
+            return awaitStartupAssets() ? seekIndex.getStatsJson() : "{}";
+        }
+        
+        // Per-kind DNS/connect/TLS/TTFB averages, pool and lookup-cache state, and the latest calls
+        @android.webkit.JavascriptInterface
+        public String getNetworkStats() {
+            return awaitStartupAssets() ? httpStack.getStatsJson() : "{}";
+        }
+        
+        // Ranked series summaries for the search box as a JSON array; "" until startup is done
+        @android.webkit.JavascriptInterface
+        public String searchCatalog(String query, int limit) {
+            String results = awaitStartupAssets() ? searchIndex.query(query, limit) : null;
+            return results != null ? results : "";
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getSearchIndexStats() {
+            return awaitStartupAssets() ? searchIndex.getStatsJson() : "{}";
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getMemoryStats() {
+            return awaitStartupAssets() ? memoryManager.getStatsJson() : "{}";
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getPrefetchStats() {
+            return awaitStartupAssets() ? prefetcher.getStatsJson() : "{}";
+        }
+        
+        // first_frame (ms since play was requested), rebuffer_start, rebuffer_end, seek, error (MediaError code)
+        @android.webkit.JavascriptInterface
+        public void reportPlayback(String event, double value) {
+            PlaybackTelemetry.Session session = webPlayback;
+            if (session == null || event == null) return;
+            switch (event) {
+                case "first_frame":
+                    session.setStartupMs((long) value);
+                    break;
+                case "rebuffer_start":
+                    session.onBuffering();
+                    break;
+                case "rebuffer_end":
+                    session.onReady();
+                    break;
+                case "seek":
+                    session.onSeek();
+                    break;
+                case "error":
+                    session.setError("MEDIA_ERR_" + (int) value);
+                    break;
+            }
+        }
+        
+        @android.webkit.JavascriptInterface
+        public void endPlayback(String outcome, double droppedFrames) {
+            PlaybackTelemetry.Session session = webPlayback;
+            if (session == null) return;
+            webPlayback = null;
+            session.addDroppedFrames((long) droppedFrames);
+            session.end("ended".equals(outcome) || "error".equals(outcome) ? outcome : "exited");
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getVideoCacheStats() {
+            return awaitStartupAssets() ? videoRangeCache.getStatsJson() : "{}";
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getPosterStats() {
+            return awaitStartupAssets() ? posterPipeline.getStatsJson() : "{}";
+        }
+        
+        @android.webkit.JavascriptInterface
+        public void markStartupPhase(String phase) {
+            // The page reports its own milestones, e.g. first_grid_paint
+            if (phase != null && phase.matches("[a-z_]{1,40}")) {
+                StartupTrace.mark(phase);
+            }
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getStartupTrace() {
+            return StartupTrace.toJson();
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getInjectionStats() {
+            return scriptInjector.getStatsJson();
+        }
+        
+        @android.webkit.JavascriptInterface
+        public void requestInputChannel() {
+            runOnUiThread(() -> inputChannel.connect(webView));
+        }
+        
+        // page_state.js falls back to this before the input port is up or on old WebViews
+        @android.webkit.JavascriptInterface
+        public void reportPageState(String snapshot) {
+            if (snapshot == null || !isSiteUrl(currentPageUrl)) return;
+            runOnUiThread(() -> pageState.apply(snapshot));
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getPageState() {
+            return pageState.getStatsJson();
+        }
+        
+        @android.webkit.JavascriptInterface
+        public String getInputStats() {
+            return inputChannel.getStatsJson();
+        }
+        
+        // Called synchronously by session_seed.js at document start, so it never waits: an
+        // unfinished native login answers "" and its session is pushed later (pushSession)
+        @android.webkit.JavascriptInterface
+        public String takeSession() {
+            // The first document can run this before onPageStarted reports it; that one is always siteUrl
+            String pageUrl = currentPageUrl;
+            SessionManager manager = sessionManager;
+            if ((pageUrl != null && !isSiteUrl(pageUrl)) || manager == null) return "";
+            SessionManager.Session session = manager.awaitSession(0);
+            return session != null ? session.toJson() : "";
+        }
+        
+        @android.webkit.JavascriptInterface
+        public void storeSession(String token, String username) {
+            if (token == null || username == null || !isSiteUrl(currentPageUrl) || !awaitSessionManager()) return;
+            sessionManager.adopt(token, username);
+        }
+        
         @android.webkit.JavascriptInterface
         public String getDeviceId() {
             return android.provider.Settings.Secure.getString(getContentResolver(), android.provider.Settings.Secure.ANDROID_ID);
@@ -480,11 +1104,13 @@ public class MainActivity extends Activity {
             SharedPreferences.Editor editor = prefs.edit();
             editor.clear();
             editor.apply();
-            loginAttempted = false;
+            if (awaitSessionManager()) {
+                sessionManager.clear();
+            }
             
             // Clear web storage as well
             runOnUiThread(() -> {
-                webView.evaluateJavascript(
+                scriptInjector.evaluate(webView,
                     "localStorage.removeItem('authToken');" +
                     "localStorage.removeItem('currentUser');" +
                     "localStorage.removeItem('tvDeviceId');", null);
@@ -494,32 +1120,16 @@ public class MainActivity extends Activity {
     
     private void startInactivityTimer() {
         stopInactivityTimer();
-        sleepRunnable = () -> {
-            // Check if video is playing before sleeping
-            webView.evaluateJavascript(
-                "(function() {" +
-                "  var video = document.querySelector('video');" +
-                "  return video && !video.paused && !video.ended;" +
-                "})();", result -> {
-                    if ("true".equals(result)) {
-                        // Video is playing, restart timer
-                        startInactivityTimer();
-                    } else {
-                        // No video playing, sleep
-                        finish();
-                    }
-                });
-        };
+        // Playback pushes its state; the timer is armed again when it stops
+        if (pageState.isPlaying()) return;
         inactivityHandler.postDelayed(sleepRunnable, INACTIVITY_TIMEOUT);
     }
     
     private void stopInactivityTimer() {
-        if (sleepRunnable != null) {
-            inactivityHandler.removeCallbacks(sleepRunnable);
-        }
+        inactivityHandler.removeCallbacks(sleepRunnable);
     }
     
     private void resetInactivityTimer() {
         startInactivityTimer();
     }
-}
\ No newline at end of file
+}
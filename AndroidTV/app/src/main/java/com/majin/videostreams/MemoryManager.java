@@ -0,0 +1,147 @@
+package com.majin.videostreams;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sizes the in-memory caches and player buffers to the device and shrinks them when the
+// system reports pressure. On a 1 GB stick the app, the GPU and the WebView renderer share
+// the same RAM, and the renderer is the first process the low-memory killer takes.
+public class MemoryManager implements ComponentCallbacks2 {
+    public enum Tier { NORMAL, CONSTRAINED, LOW }
+
+    public interface Listener {
+        // Keep at most keepPercent of each in-memory cache's budget; 0 drops everything
+        void onTrim(int keepPercent);
+    }
+
+    private static final String TAG = "MemoryManager";
+    private static final long MB = 1024L * 1024L;
+    // A pressure signal keeps new budgets halved for a while; there is no "pressure over" callback
+    private static final long PRESSURE_HOLD_MS = 5 * 60 * 1000;
+    // Player byte cap when config.xml leaves it to ExoPlayer, whose default is sized for phones
+    private static final long LOW_RAM_BUFFER_BASE_BYTES = 64 * MB;
+
+    private static MemoryManager shared;
+
+    private final Tier tier;
+    private final boolean lowRamDevice;
+    private final int memoryClassMb;
+    private final int largeMemoryClassMb;
+    private final long totalMemBytes;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile int lastTrimLevel = 0;
+    private volatile long lastPressureAt = 0;
+    private final AtomicLong trims = new AtomicLong();
+
+    // One per process so every activity sees the same pressure state
+    public static synchronized MemoryManager getShared(Context context) {
+        if (shared == null) {
+            Context app = context.getApplicationContext();
+            shared = new MemoryManager((ActivityManager) app.getSystemService(Context.ACTIVITY_SERVICE));
+            app.registerComponentCallbacks(shared);
+        }
+        return shared;
+    }
+
+    public MemoryManager(ActivityManager activityManager) {
+        ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(info);
+        lowRamDevice = activityManager.isLowRamDevice();
+        memoryClassMb = activityManager.getMemoryClass();
+        largeMemoryClassMb = activityManager.getLargeMemoryClass();
+        totalMemBytes = info.totalMem;
+        tier = classify(lowRamDevice, memoryClassMb, totalMemBytes);
+        android.util.Log.i(TAG, "Memory tier " + tier + ": " + getStatsJson());
+    }
+
+    static Tier classify(boolean lowRamDevice, int memoryClassMb, long totalMemBytes) {
+        if (lowRamDevice || memoryClassMb <= 128 || totalMemBytes < 1536 * MB) return Tier.LOW;
+        if (memoryClassMb <= 192 || totalMemBytes < 3072 * MB) return Tier.CONSTRAINED;
+        return Tier.NORMAL;
+    }
+
+    public Tier getTier() {
+        return tier;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Share of the configured budgets this device gets right now
+    public int budgetPercent() {
+        int percent = tier == Tier.LOW ? 25 : tier == Tier.CONSTRAINED ? 50 : 100;
+        if (lastPressureAt != 0 && SystemClock.elapsedRealtime() - lastPressureAt < PRESSURE_HOLD_MS) {
+            percent /= 2;
+        }
+        return percent;
+    }
+
+    public int scaleBytes(int configuredBytes) {
+        return (int) ((long) configuredBytes * budgetPercent() / 100);
+    }
+
+    public int playerMaxBufferMs(int minBufferMs, int configuredMaxMs) {
+        return Math.max(minBufferMs, configuredMaxMs * budgetPercent() / 100);
+    }
+
+    // -1 (C.LENGTH_UNSET) lets ExoPlayer size the buffer from the track types
+    public int playerTargetBufferBytes(int configuredBytes) {
+        if (configuredBytes > 0) return scaleBytes(configuredBytes);
+        int percent = budgetPercent();
+        return percent >= 100 ? configuredBytes : (int) (LOW_RAM_BUFFER_BASE_BYTES * percent / 100);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        int keepPercent;
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            keepPercent = 0;
+        } else if (level == TRIM_MEMORY_RUNNING_LOW) {
+            keepPercent = 25;
+        } else if (level == TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_MODERATE) {
+            keepPercent = 50;
+        } else {
+            return;
+        }
+        if (level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            lastPressureAt = SystemClock.elapsedRealtime();
+        }
+        lastTrimLevel = level;
+        trims.incrementAndGet();
+        for (Listener listener : listeners) {
+            listener.onTrim(keepPercent);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    public String getStatsJson() {
+        return "{\"tier\":\"" + tier + "\"" +
+            ",\"lowRamDevice\":" + lowRamDevice +
+            ",\"memoryClassMb\":" + memoryClassMb +
+            ",\"largeMemoryClassMb\":" + largeMemoryClassMb +
+            ",\"totalMemMb\":" + totalMemBytes / MB +
+            ",\"budgetPercent\":" + budgetPercent() +
+            ",\"lastTrimLevel\":" + lastTrimLevel +
+            ",\"trims\":" + trims.get() + "}";
+    }
+}
@@ -0,0 +1,701 @@
+package com.majin.videostreams;
+
+import android.content.Context;
+import android.net.Uri;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Where each file keeps its moov box and at which byte every video keyframe starts.
+// The first play of a file walks its top-level boxes with small range requests, pulls
+// moov into VideoRangeCache and parses the keyframe table out of it; the result is kept
+// on disk, so later plays fetch moov in one request and both players read it locally.
+// Seeks use the table to ask for exactly one GOP, and files whose moov sits after mdat
+// are reported through telemetry as needing a faststart re-mux.
+public class Mp4SeekIndex {
+    private static final String TAG = "SeekIndex";
+    private static final int MAX_BOX_HOPS = 16;
+    private static final long MAX_MOOV_BYTES = 16L * 1024 * 1024;
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final int MEMORY_ENTRIES = 32;
+
+    // Sample formats of the first video and audio track; empty when unknown
+    public static class Codecs {
+        public String videoMime = "";
+        public String audioMime = "";
+        public int width;
+        public int height;
+        public boolean tenBit;
+    }
+
+    public static class Index {
+        final long total;
+        final long moovOffset;
+        final long moovSize;
+        final boolean faststart;
+        // Parallel arrays in file order; times ascend
+        final long[] keyframeTimesMs;
+        final long[] keyframeOffsets;
+        public final Codecs codecs;
+        // keyframeOffsets sorted, for looking up the GOP a byte belongs to
+        private final long[] sortedOffsets;
+
+        Index(long total, long moovOffset, long moovSize, boolean faststart, Codecs codecs,
+              long[] keyframeTimesMs, long[] keyframeOffsets) {
+            this.total = total;
+            this.moovOffset = moovOffset;
+            this.moovSize = moovSize;
+            this.faststart = faststart;
+            this.codecs = codecs;
+            this.keyframeTimesMs = keyframeTimesMs;
+            this.keyframeOffsets = keyframeOffsets;
+            this.sortedOffsets = keyframeOffsets.clone();
+            Arrays.sort(sortedOffsets);
+        }
+
+        boolean inMoov(long offset) {
+            return offset >= moovOffset && offset < moovOffset + moovSize;
+        }
+
+        // Latest keyframe at or before timeMs, or -1 without a table
+        public long keyframeTimeMs(long timeMs) {
+            int i = keyframeAtOrBefore(timeMs);
+            return i < 0 ? -1 : keyframeTimesMs[i];
+        }
+
+        // Byte where decoding for timeMs has to start, or -1 without a table
+        public long byteOffsetFor(long timeMs) {
+            int i = keyframeAtOrBefore(timeMs);
+            return i < 0 ? -1 : keyframeOffsets[i];
+        }
+
+        private int keyframeAtOrBefore(long timeMs) {
+            if (keyframeTimesMs.length == 0) return -1;
+            int i = Arrays.binarySearch(keyframeTimesMs, timeMs);
+            return i >= 0 ? i : Math.max(0, -i - 2);
+        }
+
+        // First keyframe that starts after offset, or -1 if the rest is one GOP
+        long nextKeyframeOffsetAfter(long offset) {
+            int i = Arrays.binarySearch(sortedOffsets, offset + 1);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i < sortedOffsets.length ? sortedOffsets[i] : -1;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("total", total);
+            json.put("moovOffset", moovOffset);
+            json.put("moovSize", moovSize);
+            json.put("faststart", faststart);
+            json.put("videoMime", codecs.videoMime);
+            json.put("audioMime", codecs.audioMime);
+            json.put("width", codecs.width);
+            json.put("height", codecs.height);
+            json.put("tenBit", codecs.tenBit);
+            JSONArray times = new JSONArray();
+            JSONArray offsets = new JSONArray();
+            for (int i = 0; i < keyframeTimesMs.length; i++) {
+                times.put(keyframeTimesMs[i]);
+                offsets.put(keyframeOffsets[i]);
+            }
+            json.put("times", times);
+            json.put("offsets", offsets);
+            return json;
+        }
+
+        static Index fromJson(JSONObject json) throws JSONException {
+            JSONArray times = json.getJSONArray("times");
+            JSONArray offsets = json.getJSONArray("offsets");
+            if (times.length() != offsets.length()) throw new JSONException("Mismatched keyframe table");
+            long[] keyframeTimesMs = new long[times.length()];
+            long[] keyframeOffsets = new long[offsets.length()];
+            for (int i = 0; i < keyframeTimesMs.length; i++) {
+                keyframeTimesMs[i] = times.getLong(i);
+                keyframeOffsets[i] = offsets.getLong(i);
+            }
+            // Indexes saved before codecs were recorded read as unknown
+            Codecs codecs = new Codecs();
+            codecs.videoMime = json.optString("videoMime");
+            codecs.audioMime = json.optString("audioMime");
+            codecs.width = json.optInt("width");
+            codecs.height = json.optInt("height");
+            codecs.tenBit = json.optBoolean("tenBit");
+            return new Index(json.getLong("total"), json.getLong("moovOffset"), json.getLong("moovSize"),
+                json.getBoolean("faststart"), codecs, keyframeTimesMs, keyframeOffsets);
+        }
+    }
+
+    // A header fetch in progress; moovOffset is -1 until the box walk finds it
+    private static class Pending {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile long total = -1;
+        volatile long moovOffset = -1;
+        volatile long moovSize = -1;
+    }
+
+    private static Mp4SeekIndex shared;
+
+    private final File directory;
+    private final VideoRangeCache cache;
+    private final OkHttpClient client;
+    private final long segmentBytes;
+    private final long minSeekRangeBytes;
+    private final long headerWaitMs;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+    // Guarded by this
+    private final LinkedHashMap<String, Index> memory = new LinkedHashMap<String, Index>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Index> eldest) {
+            return size() > MEMORY_ENTRIES;
+        }
+    };
+    private final Map<String, Pending> pending = new HashMap<>();
+
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong needsFaststart = new AtomicLong();
+    private final AtomicLong moovFetches = new AtomicLong();
+    private final AtomicLong headerWaits = new AtomicLong();
+    private final AtomicLong seekRanges = new AtomicLong();
+
+    public static synchronized Mp4SeekIndex getShared(Context context) {
+        if (shared == null) {
+            Context app = context.getApplicationContext();
+            shared = new Mp4SeekIndex(new File(app.getFilesDir(), "seek-index"), VideoRangeCache.getShared(app),
+                HttpStack.getShared(app),
+                app.getResources().getInteger(R.integer.video_cache_segment_kb) * 1024L,
+                app.getResources().getInteger(R.integer.seek_index_min_range_kb) * 1024L,
+                app.getResources().getInteger(R.integer.seek_index_header_wait));
+        }
+        return shared;
+    }
+
+    public Mp4SeekIndex(File directory, VideoRangeCache cache, HttpStack httpStack, long segmentBytes,
+                        long minSeekRangeBytes, long headerWaitMs) {
+        this.directory = directory;
+        this.cache = cache;
+        this.client = httpStack.client(15000, 30000);
+        this.segmentBytes = segmentBytes;
+        this.minSeekRangeBytes = minSeekRangeBytes;
+        this.headerWaitMs = headerWaitMs;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+    }
+
+    // Playback of url is about to start; gets moov into the cache in the background
+    public void prepareAsync(String url) {
+        if (!isMp4(url)) return;
+        Pending fetch;
+        synchronized (this) {
+            if (pending.containsKey(url)) return;
+            fetch = new Pending();
+            pending.put(url, fetch);
+        }
+        worker.execute(() -> prepare(url, fetch, 0, 0));
+    }
+
+    // Same, on the caller's thread and at the caller's pace (requestBytes-sized ranges at
+    // rateBytesPerSecond); used by the prefetcher
+    public void prepare(String url, long rateBytesPerSecond, long requestBytes) throws InterruptedIOException {
+        if (!isMp4(url)) return;
+        Pending fetch;
+        synchronized (this) {
+            if (pending.containsKey(url)) return;
+            fetch = new Pending();
+            pending.put(url, fetch);
+        }
+        prepare(url, fetch, rateBytesPerSecond, requestBytes);
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+    }
+
+    private void prepare(String url, Pending fetch, long rateBytesPerSecond, long requestBytes) {
+        try {
+            Index index = get(url);
+            if (index != null) {
+                fetch.total = index.total;
+                fetch.moovOffset = index.moovOffset;
+                fetch.moovSize = index.moovSize;
+                if (cache.contains(url, index.moovOffset) || !needsOwnFetch(index.moovOffset, index.moovSize)) return;
+                byte[] moov = fetchMoov(url, index.moovOffset, index.moovSize, index.total, rateBytesPerSecond, requestBytes);
+                if (moov != null) return;
+                // The file changed size on the server; index it again
+                forget(url);
+            }
+            build(url, fetch, rateBytesPerSecond, requestBytes);
+        } catch (InterruptedIOException e) {
+            // Cancelled with the prefetch; whatever was cached stays
+        } catch (IOException | RuntimeException e) {
+            android.util.Log.w(TAG, "Indexing failed for " + url + ": " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                pending.remove(url);
+            }
+            fetch.done.countDown();
+        }
+    }
+
+    // moov inside the first segment arrives with the player's own first request
+    private boolean needsOwnFetch(long moovOffset, long moovSize) {
+        return moovOffset + moovSize > segmentBytes;
+    }
+
+    private void build(String url, Pending fetch, long rateBytesPerSecond, long requestBytes) throws IOException {
+        long[] total = new long[1];
+        byte[] header = readBytes(url, 0, 16, total);
+        fetch.total = total[0];
+        long position = 0;
+        boolean sawMdat = false;
+        for (int hop = 0; hop < MAX_BOX_HOPS && header != null && header.length >= 8; hop++) {
+            long size = readUInt32(header, 0);
+            String type = new String(header, 4, 4, StandardCharsets.US_ASCII);
+            if (size == 1) {
+                if (header.length < 16) return;
+                size = (readUInt32(header, 8) << 32) | readUInt32(header, 12);
+            } else if (size == 0) {
+                size = total[0] - position;
+            }
+            if (size < 8) return;
+
+            if ("moov".equals(type)) {
+                if (size > MAX_MOOV_BYTES) return;
+                fetch.moovOffset = position;
+                fetch.moovSize = size;
+                byte[] moov = cachedBytes(url, position, (int) size, total);
+                if (moov == null) {
+                    moov = fetchMoov(url, position, size, total[0], rateBytesPerSecond, requestBytes);
+                }
+                if (moov == null) return;
+                Index index = parse(moov, total[0], position, !sawMdat);
+                store(url, index);
+                return;
+            }
+            sawMdat |= "mdat".equals(type);
+            position += size;
+            if (position + 8 > total[0]) return;
+            header = readBytes(url, position, (int) Math.min(16, total[0] - position), total);
+        }
+    }
+
+    // The moov box as one cache segment; null if the server's length no longer matches.
+    // Paced fetches ask for it in requestBytes-sized ranges, so a throttled read never
+    // leaves the rest of a large response queued on the shared connection.
+    private byte[] fetchMoov(String url, long offset, long size, long expectedTotal, long rateBytesPerSecond,
+                             long requestBytes) throws IOException {
+        long step = requestBytes > 0 ? requestBytes : size;
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) size);
+        byte[] chunk = new byte[CHUNK_BYTES];
+        String contentType = null;
+        long transferStart = System.currentTimeMillis();
+        while (out.size() < size) {
+            long position = offset + out.size();
+            long end = Math.min(offset + size - 1, position + step - 1);
+            try (Response response = open(url, position, end)) {
+                if (response.code() != 206) return null;
+                Matcher contentRange = VideoRequestInterceptor.CONTENT_RANGE.matcher(
+                    String.valueOf(response.header("Content-Range")));
+                if (!contentRange.matches() || !String.valueOf(expectedTotal).equals(contentRange.group(3))) return null;
+                contentType = response.header("Content-Type");
+
+                int before = out.size();
+                try (InputStream in = response.body().byteStream()) {
+                    int read;
+                    while ((read = in.read(chunk)) != -1) {
+                        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+                        if (out.size() + read > size) throw new IOException("moov longer than its box");
+                        out.write(chunk, 0, read);
+                    }
+                }
+                if (out.size() == before) throw new IOException("Short moov");
+            }
+            throttle(transferStart, out.size(), rateBytesPerSecond);
+        }
+        byte[] moov = out.toByteArray();
+        cache.put(url, offset, expectedTotal, moov, contentType);
+        moovFetches.incrementAndGet();
+        return moov;
+    }
+
+    // Small reads for the box walk; cached segments first, the network otherwise
+    private byte[] readBytes(String url, long offset, int length, long[] totalOut) throws IOException {
+        byte[] cached = cachedBytes(url, offset, length, totalOut);
+        if (cached != null) return cached;
+        try (Response response = open(url, offset, offset + length - 1)) {
+            if (response.code() != 206) return null;
+            Matcher contentRange = VideoRequestInterceptor.CONTENT_RANGE.matcher(
+                String.valueOf(response.header("Content-Range")));
+            if (!contentRange.matches() || "*".equals(contentRange.group(3))) return null;
+            totalOut[0] = Long.parseLong(contentRange.group(3));
+            return response.body().bytes();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Bytes already cached in one segment, e.g. a faststart moov from the player's first request
+    private byte[] cachedBytes(String url, long offset, int length, long[] totalOut) throws IOException {
+        VideoRangeCache.Hit hit = cache.get(url, offset);
+        if (hit == null || hit.end - offset + 1 < length) {
+            if (hit != null) {
+                hit.data.close();
+            }
+            return null;
+        }
+        try (InputStream in = hit.data) {
+            byte[] data = new byte[length];
+            int filled = 0;
+            while (filled < length) {
+                int read = in.read(data, filled, length - filled);
+                if (read < 0) return null;
+                filled += read;
+            }
+            totalOut[0] = hit.total;
+            return data;
+        }
+    }
+
+    // Called by the interceptor and the native data source on a cache miss: if a header
+    // fetch covering offset is under way, waiting for it beats a second request for moov
+    public void awaitHeader(String url, long offset) {
+        Pending fetch;
+        synchronized (this) {
+            fetch = pending.get(url);
+        }
+        if (fetch == null || offset == 0) return;
+        long moovOffset = fetch.moovOffset;
+        if (moovOffset >= 0) {
+            if (offset < moovOffset || offset >= moovOffset + fetch.moovSize) return;
+        } else {
+            // Still walking the boxes; only the tail of the file can turn out to be moov
+            long total = fetch.total;
+            if (total < 0 || offset < total - MAX_MOOV_BYTES) return;
+        }
+        headerWaits.incrementAndGet();
+        try {
+            fetch.done.await(headerWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // End of a range request starting at start: a jump to a new position asks for the GOP
+    // it lands in instead of a whole segment, so the first frame is one short request away
+    public long seekRangeEnd(String url, long start, long end) {
+        Index index = get(url);
+        if (index == null || index.inMoov(start)) return end;
+        long next = index.nextKeyframeOffsetAfter(start);
+        if (next < 0) return end;
+        long gopEnd = Math.max(next - 1, start + minSeekRangeBytes - 1);
+        if (gopEnd >= end) return end;
+        seekRanges.incrementAndGet();
+        return gopEnd;
+    }
+
+    // Keyframe time at or before the target, or -1 if the file is not indexed yet
+    public long keyframeTimeMs(String url, long targetMs) {
+        Index index = get(url);
+        return index != null ? index.keyframeTimeMs(targetMs) : -1;
+    }
+
+    public Index get(String url) {
+        synchronized (this) {
+            Index index = memory.get(url);
+            if (index != null) return index;
+        }
+        File file = fileFor(url);
+        if (!file.exists()) return null;
+        try (FileInputStream in = new FileInputStream(file)) {
+            Index index = Index.fromJson(new JSONObject(new String(CatalogCache.readFully(in), StandardCharsets.UTF_8)));
+            synchronized (this) {
+                memory.put(url, index);
+            }
+            return index;
+        } catch (IOException | JSONException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    private void store(String url, Index index) {
+        synchronized (this) {
+            memory.put(url, index);
+        }
+        indexed.incrementAndGet();
+        if (!index.faststart) {
+            needsFaststart.incrementAndGet();
+            PlaybackTelemetry.recordFileIssue(url, "moov_at_end", index.total);
+        }
+        File target = fileFor(url);
+        File temp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(index.toJson().toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+        }
+    }
+
+    private void forget(String url) {
+        synchronized (this) {
+            memory.remove(url);
+        }
+        fileFor(url).delete();
+    }
+
+    private File fileFor(String url) {
+        return new File(directory, VideoRangeCache.keyFor(url) + ".json");
+    }
+
+    private static boolean isMp4(String url) {
+        String path = Uri.parse(url).getPath();
+        return path != null && path.toLowerCase().endsWith(".mp4");
+    }
+
+    // Keyframe table and format of the first video track, plus the first audio track's
+    // format. Times are decode times from stts; edit lists and composition offsets shift
+    // them by a frame or two at most, which does not matter for choosing where to start
+    // reading.
+    static Index parse(byte[] moov, long total, long moovOffset, boolean faststart) {
+        long[][] keyframes = {new long[0], new long[0]};
+        Codecs codecs = new Codecs();
+        boolean sawVideo = false;
+        boolean sawAudio = false;
+        int[] trak = {readUInt32(moov, 0) == 1 ? 16 : 8, moov.length};
+        while ((trak = findBox(moov, trak[0], moov.length, "trak")) != null) {
+            int[] mdia = findBox(moov, trak[0], trak[1], "mdia");
+            int[] hdlr = mdia != null ? findBox(moov, mdia[0], mdia[1], "hdlr") : null;
+            int[] minf = mdia != null ? findBox(moov, mdia[0], mdia[1], "minf") : null;
+            int[] stbl = minf != null ? findBox(moov, minf[0], minf[1], "stbl") : null;
+            String handler = hdlr != null ? new String(moov, hdlr[0] + 8, 4, StandardCharsets.US_ASCII) : "";
+            if (!sawVideo && "vide".equals(handler) && stbl != null) {
+                sawVideo = true;
+                readVideoFormat(moov, stbl, codecs);
+                keyframes = parseKeyframes(moov, mdia, stbl);
+            } else if (!sawAudio && "soun".equals(handler) && stbl != null) {
+                sawAudio = true;
+                int[] entry = firstSampleEntry(moov, stbl);
+                if (entry != null) {
+                    codecs.audioMime = mimeFor(new String(moov, entry[0] + 4, 4, StandardCharsets.US_ASCII));
+                }
+            }
+            trak[0] = trak[1];
+        }
+        return new Index(total, moovOffset, moov.length, faststart, codecs, keyframes[0], keyframes[1]);
+    }
+
+    // Sample entry fourcc, coded size, and the profile from avcC/hvcC for bit depth
+    private static void readVideoFormat(byte[] moov, int[] stbl, Codecs codecs) {
+        int[] entry = firstSampleEntry(moov, stbl);
+        if (entry == null) return;
+        String format = new String(moov, entry[0] + 4, 4, StandardCharsets.US_ASCII);
+        codecs.videoMime = mimeFor(format);
+        // VisualSampleEntry: 8 header, 24 reserved/pre-defined, then width and height
+        if (entry[0] + 36 > entry[1]) return;
+        codecs.width = ((moov[entry[0] + 32] & 0xFF) << 8) | (moov[entry[0] + 33] & 0xFF);
+        codecs.height = ((moov[entry[0] + 34] & 0xFF) << 8) | (moov[entry[0] + 35] & 0xFF);
+        // Child boxes follow the 86-byte visual sample entry
+        int[] avcC = findBox(moov, entry[0] + 86, entry[1], "avcC");
+        int[] hvcC = avcC == null ? findBox(moov, entry[0] + 86, entry[1], "hvcC") : null;
+        if (avcC != null) {
+            codecs.tenBit = (moov[avcC[0] + 1] & 0xFF) == 110; // High 10
+        } else if (hvcC != null) {
+            codecs.tenBit = (moov[hvcC[0] + 1] & 0x1F) == 2; // Main 10
+        }
+    }
+
+    // [start, end) of the first entry in stsd
+    private static int[] firstSampleEntry(byte[] moov, int[] stbl) {
+        int[] stsd = findBox(moov, stbl[0], stbl[1], "stsd");
+        if (stsd == null || stsd[0] + 16 > stsd[1]) return null;
+        int start = stsd[0] + 8;
+        long size = readUInt32(moov, start);
+        if (size < 8 || start + size > stsd[1]) return null;
+        return new int[] {start, (int) (start + size)};
+    }
+
+    private static String mimeFor(String format) {
+        switch (format) {
+            case "avc1":
+            case "avc3":
+                return "video/avc";
+            case "hvc1":
+            case "hev1":
+                return "video/hevc";
+            case "vp09":
+                return "video/x-vnd.on2.vp9";
+            case "av01":
+                return "video/av01";
+            case "mp4a":
+                return "audio/mp4a-latm";
+            case "ac-3":
+                return "audio/ac3";
+            case "ec-3":
+                return "audio/eac3";
+            case "Opus":
+                return "audio/opus";
+            case "fLaC":
+                return "audio/flac";
+            case ".mp3":
+                return "audio/mpeg";
+            default:
+                // Encrypted or unusual entries; treated as unknown rather than unsupported
+                return "";
+        }
+    }
+
+    // {times, offsets} of the track's keyframes, both empty without a usable table
+    private static long[][] parseKeyframes(byte[] moov, int[] mdia, int[] stbl) {
+        long[][] empty = {new long[0], new long[0]};
+        int[] mdhd = findBox(moov, mdia[0], mdia[1], "mdhd");
+        if (mdhd == null) return empty;
+
+        long timescale = readUInt32(moov, mdhd[0] + (moov[mdhd[0]] == 1 ? 20 : 12));
+        int[] stts = findBox(moov, stbl[0], stbl[1], "stts");
+        int[] stss = findBox(moov, stbl[0], stbl[1], "stss");
+        int[] stsc = findBox(moov, stbl[0], stbl[1], "stsc");
+        int[] stsz = findBox(moov, stbl[0], stbl[1], "stsz");
+        int[] stco = findBox(moov, stbl[0], stbl[1], "stco");
+        int[] co64 = stco == null ? findBox(moov, stbl[0], stbl[1], "co64") : null;
+        // No stss means every sample is a keyframe; such files need no table to seek
+        if (timescale == 0 || stts == null || stss == null || stsc == null || stsz == null || (stco == null && co64 == null)) {
+            return empty;
+        }
+
+        int keyframeCount = (int) readUInt32(moov, stss[0] + 4);
+        long[] times = new long[keyframeCount];
+        long[] offsets = new long[keyframeCount];
+        int nextKeyframe = 0;
+
+        int sttsEntries = (int) readUInt32(moov, stts[0] + 4);
+        int sttsIndex = 0;
+        long sttsLeft = sttsEntries > 0 ? readUInt32(moov, stts[0] + 8) : 0;
+        long decodeTime = 0;
+
+        int stscEntries = (int) readUInt32(moov, stsc[0] + 4);
+        long fixedSize = readUInt32(moov, stsz[0] + 4);
+        long sampleCount = readUInt32(moov, stsz[0] + 8);
+        int[] chunkTable = stco != null ? stco : co64;
+        int chunkCount = (int) readUInt32(moov, chunkTable[0] + 4);
+
+        long sample = 1;
+        for (int chunk = 1; chunk <= chunkCount && sample <= sampleCount && nextKeyframe < keyframeCount; chunk++) {
+            long chunkOffset = stco != null
+                ? readUInt32(moov, stco[0] + 8 + (chunk - 1) * 4)
+                : (readUInt32(moov, co64[0] + 8 + (chunk - 1) * 8) << 32) | readUInt32(moov, co64[0] + 12 + (chunk - 1) * 8);
+            long samplesInChunk = samplesPerChunk(moov, stsc[0], stscEntries, chunk);
+            long offset = chunkOffset;
+            for (long s = 0; s < samplesInChunk && sample <= sampleCount; s++, sample++) {
+                if (nextKeyframe < keyframeCount && readUInt32(moov, stss[0] + 8 + nextKeyframe * 4) == sample) {
+                    times[nextKeyframe] = decodeTime * 1000 / timescale;
+                    offsets[nextKeyframe] = offset;
+                    nextKeyframe++;
+                }
+                offset += fixedSize != 0 ? fixedSize : readUInt32(moov, stsz[0] + 12 + (int) (sample - 1) * 4);
+                while (sttsLeft == 0 && ++sttsIndex < sttsEntries) {
+                    sttsLeft = readUInt32(moov, stts[0] + 8 + sttsIndex * 8);
+                }
+                if (sttsIndex < sttsEntries) {
+                    decodeTime += readUInt32(moov, stts[0] + 12 + sttsIndex * 8);
+                    sttsLeft--;
+                }
+            }
+        }
+        if (nextKeyframe < keyframeCount) {
+            times = Arrays.copyOf(times, nextKeyframe);
+            offsets = Arrays.copyOf(offsets, nextKeyframe);
+        }
+        return new long[][] {times, offsets};
+    }
+
+    // stsc entries apply from their first chunk until the next entry's
+    private static long samplesPerChunk(byte[] moov, int stsc, int entries, int chunk) {
+        long samples = 0;
+        for (int i = 0; i < entries; i++) {
+            long firstChunk = readUInt32(moov, stsc + 8 + i * 12);
+            if (firstChunk > chunk) break;
+            samples = readUInt32(moov, stsc + 12 + i * 12);
+        }
+        return samples;
+    }
+
+    // Payload start and box end of the first child of the given type in [start, end)
+    private static int[] findBox(byte[] data, int start, int end, String type) {
+        int position = start;
+        while (position + 8 <= end) {
+            long size = readUInt32(data, position);
+            int headerSize = 8;
+            if (size == 1 && position + 16 <= end) {
+                size = (readUInt32(data, position + 8) << 32) | readUInt32(data, position + 12);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+            if (size < headerSize || position + size > end) return null;
+            if (type.equals(new String(data, position + 4, 4, StandardCharsets.US_ASCII))) {
+                return new int[] {position + headerSize, (int) (position + size)};
+            }
+            position += (int) size;
+        }
+        return null;
+    }
+
+    private Response open(String url, long start, long end) throws IOException {
+        Request request = new Request.Builder()
+            .url(url)
+            .header("Range", "bytes=" + start + "-" + end)
+            .build();
+        return client.newCall(request).execute();
+    }
+
+    private static void throttle(long transferStart, long transferred, long rateBytesPerSecond) throws InterruptedIOException {
+        if (rateBytesPerSecond <= 0) return;
+        long wait = transferStart + transferred * 1000 / rateBytesPerSecond - System.currentTimeMillis();
+        if (wait <= 0) return;
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static long readUInt32(byte[] data, int offset) {
+        return ((data[offset] & 0xFFL) << 24) | ((data[offset + 1] & 0xFFL) << 16) |
+            ((data[offset + 2] & 0xFFL) << 8) | (data[offset + 3] & 0xFFL);
+    }
+
+    public String getStatsJson() {
+        return "{\"indexed\":" + indexed.get() +
+            ",\"needsFaststart\":" + needsFaststart.get() +
+            ",\"moovFetches\":" + moovFetches.get() +
+            ",\"headerWaits\":" + headerWaits.get() +
+            ",\"seekRanges\":" + seekRanges.get() + "}";
+    }
+}
@@ -0,0 +1,343 @@
+package com.majin.videostreams;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.KeyEvent;
+import android.view.SurfaceView;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.ProgressBar;
+import androidx.annotation.OptIn;
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.Player;
+import androidx.media3.common.Tracks;
+import androidx.media3.common.VideoSize;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.HttpDataSource;
+import androidx.media3.datasource.okhttp.OkHttpDataSource;
+import androidx.media3.exoplayer.DefaultLoadControl;
+import androidx.media3.exoplayer.DefaultRenderersFactory;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.SeekParameters;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
+import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
+import androidx.media3.exoplayer.source.LoadEventInfo;
+import androidx.media3.exoplayer.source.MediaLoadData;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Hardware-decoded playback for /videos streams, launched from the page via Android.playNative()
+@OptIn(markerClass = UnstableApi.class)
+public class NativePlayerActivity extends Activity {
+    public static final String EXTRA_URL = "url";
+    public static final String EXTRA_AUTH_TOKEN = "auth_token";
+    public static final String EXTRA_START_POSITION_MS = "start_position_ms";
+    public static final String EXTRA_POSITION_MS = "position_ms";
+    public static final String EXTRA_DURATION_MS = "duration_ms";
+    public static final String EXTRA_ENDED = "ended";
+    public static final String EXTRA_ERROR = "error";
+
+    private static final long SEEK_BACK_MS = 10 * 1000;
+    private static final long SEEK_FORWARD_MS = 30 * 1000;
+    private static final long POSITION_REPORT_INTERVAL_MS = 5 * 1000;
+
+    private ExoPlayer player;
+    private SurfaceView surfaceView;
+    private FrameLayout container;
+    private ProgressBar bufferingIndicator;
+    private boolean ended = false;
+    private String errorMessage;
+    private long lastPositionMs;
+    private long lastDurationMs;
+    private PlaybackTelemetry.Session telemetry;
+    private NextEpisodePrefetcher prefetcher;
+    private DecoderCapabilities decoderCapabilities;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable reportPosition = new Runnable() {
+        @Override
+        public void run() {
+            if (player == null) return;
+            long duration = player.getDuration();
+            if (duration != C.TIME_UNSET) {
+                prefetcher.onPosition(player.getCurrentPosition(), duration);
+            }
+            handler.postDelayed(this, POSITION_REPORT_INTERVAL_MS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_native_player);
+        getWindow().addFlags(android.view.WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+
+        container = findViewById(R.id.player_container);
+        surfaceView = findViewById(R.id.player_surface);
+        bufferingIndicator = findViewById(R.id.player_buffering);
+
+        String url = getIntent().getStringExtra(EXTRA_URL);
+        if (url == null) {
+            finish();
+            return;
+        }
+        lastPositionMs = getIntent().getLongExtra(EXTRA_START_POSITION_MS, 0);
+        initializePlayer(url, getIntent().getStringExtra(EXTRA_AUTH_TOKEN), lastPositionMs);
+    }
+
+    private void initializePlayer(String url, String authToken, long startPositionMs) {
+        // Buffer targets come from config.xml so low-end boxes can be tuned without code changes,
+        // and shrink further on low-RAM devices or after recent memory pressure
+        MemoryManager memoryManager = MemoryManager.getShared(this);
+        int minBufferMs = getResources().getInteger(R.integer.player_min_buffer_ms);
+        DefaultLoadControl loadControl = new DefaultLoadControl.Builder()
+            .setBufferDurationsMs(
+                minBufferMs,
+                memoryManager.playerMaxBufferMs(minBufferMs, getResources().getInteger(R.integer.player_max_buffer_ms)),
+                getResources().getInteger(R.integer.player_buffer_for_playback_ms),
+                getResources().getInteger(R.integer.player_buffer_after_rebuffer_ms))
+            .setTargetBufferBytes(memoryManager.playerTargetBufferBytes(
+                getResources().getInteger(R.integer.player_target_buffer_bytes)))
+            .setPrioritizeTimeOverSizeThresholds(true)
+            .build();
+
+        decoderCapabilities = DecoderCapabilities.getShared(this);
+        Map<String, String> headers = new HashMap<>();
+        if (authToken != null && !authToken.isEmpty()) {
+            headers.put("Authorization", "Bearer " + authToken);
+        }
+        headers.put(DecoderCapabilities.HEADER, decoderCapabilities.getHeaderValue());
+        // Same pool as the page's intercepted requests, so the player reuses a warm connection
+        OkHttpDataSource.Factory dataSourceFactory = new OkHttpDataSource.Factory(
+                HttpStack.getShared(this).client(15000, 30000))
+            .setDefaultRequestProperties(headers);
+
+        // Prefer hardware decoders but fall back rather than failing outright
+        DefaultRenderersFactory renderersFactory = new DefaultRenderersFactory(this)
+            .setEnableDecoderFallback(true)
+            .setExtensionRendererMode(DefaultRenderersFactory.EXTENSION_RENDERER_MODE_OFF);
+
+        player = new ExoPlayer.Builder(this, renderersFactory)
+            .setLoadControl(loadControl)
+            .setMediaSourceFactory(new DefaultMediaSourceFactory(
+                new RangeCacheDataSource.Factory(VideoRangeCache.getShared(this), Mp4SeekIndex.getShared(this),
+                    OfflineDownloads.getShared(this), dataSourceFactory)))
+            .build();
+        // Seeks land on the keyframe at or before the target, so each one is a single
+        // range request with nothing to decode and discard before the first frame
+        player.setSeekParameters(SeekParameters.PREVIOUS_SYNC);
+        player.setVideoSurfaceView(surfaceView);
+        telemetry = PlaybackTelemetry.begin("native", url);
+        prefetcher = NextEpisodePrefetcher.getShared(this);
+        handler.postDelayed(reportPosition, POSITION_REPORT_INTERVAL_MS);
+        player.addAnalyticsListener(new TelemetryListener());
+        player.addListener(new Player.Listener() {
+            @Override
+            public void onPlaybackStateChanged(int state) {
+                bufferingIndicator.setVisibility(state == Player.STATE_BUFFERING ? View.VISIBLE : View.GONE);
+                if (state == Player.STATE_ENDED) {
+                    ended = true;
+                    finishWithResult();
+                }
+            }
+
+            @Override
+            public void onPlayerError(PlaybackException error) {
+                android.util.Log.e("NativePlayer", "Playback error: " + error.getErrorCodeName(), error);
+                errorMessage = error.getErrorCodeName();
+                finishWithResult();
+            }
+
+            @Override
+            public void onVideoSizeChanged(VideoSize videoSize) {
+                fitSurface(videoSize);
+            }
+
+            @Override
+            public void onTracksChanged(Tracks tracks) {
+                String unsupported = unsupportedTrack(tracks);
+                if (unsupported != null) {
+                    android.util.Log.w("NativePlayer", "Handing " + unsupported + " over to the WebView player");
+                    errorMessage = "UNSUPPORTED_" + unsupported;
+                    telemetry.setError(errorMessage);
+                    finishWithResult();
+                }
+            }
+        });
+
+        player.setMediaItem(MediaItem.fromUri(url), startPositionMs);
+        player.setPlayWhenReady(true);
+        player.prepare();
+    }
+
+    // An audio or video track nothing here can decode would play silently or black, and
+    // one without a hardware decoder would stutter; the WebView player gets those instead
+    private String unsupportedTrack(Tracks tracks) {
+        for (Tracks.Group group : tracks.getGroups()) {
+            int type = group.getType();
+            if (type != C.TRACK_TYPE_VIDEO && type != C.TRACK_TYPE_AUDIO) continue;
+            boolean playable = false;
+            for (int i = 0; i < group.length; i++) {
+                if (!group.isTrackSupported(i)) continue;
+                Format format = group.getTrackFormat(i);
+                playable |= type == C.TRACK_TYPE_AUDIO || !DecoderCapabilities.isProbed(format.sampleMimeType) ||
+                    decoderCapabilities.canHardwareDecode(format.sampleMimeType, format.width, format.height, false);
+            }
+            if (!playable) return type == C.TRACK_TYPE_VIDEO ? "VIDEO" : "AUDIO";
+        }
+        return null;
+    }
+
+    // Feeds the playback session's QoE metrics
+    private class TelemetryListener implements AnalyticsListener {
+        @Override
+        public void onRenderedFirstFrame(EventTime eventTime, Object output, long renderTimeMs) {
+            telemetry.onFirstFrame();
+        }
+
+        @Override
+        public void onPlaybackStateChanged(EventTime eventTime, int state) {
+            if (state == Player.STATE_BUFFERING) {
+                telemetry.onBuffering();
+            } else if (state == Player.STATE_READY) {
+                telemetry.onReady();
+            }
+        }
+
+        @Override
+        public void onPositionDiscontinuity(EventTime eventTime, Player.PositionInfo oldPosition,
+                                            Player.PositionInfo newPosition, int reason) {
+            if (reason == Player.DISCONTINUITY_REASON_SEEK) {
+                telemetry.onSeek();
+            }
+        }
+
+        @Override
+        public void onDroppedVideoFrames(EventTime eventTime, int droppedFrames, long elapsedMs) {
+            telemetry.addDroppedFrames(droppedFrames);
+        }
+
+        @Override
+        public void onLoadError(EventTime eventTime, LoadEventInfo loadEventInfo, MediaLoadData mediaLoadData,
+                                IOException error, boolean wasCanceled) {
+            if (error instanceof HttpDataSource.InvalidResponseCodeException) {
+                telemetry.onHttpError(((HttpDataSource.InvalidResponseCodeException) error).responseCode);
+            }
+        }
+
+        @Override
+        public void onPlayerError(EventTime eventTime, PlaybackException error) {
+            telemetry.setError(error.getErrorCodeName());
+        }
+    }
+
+    // Letterbox the surface to the video's aspect ratio inside the container
+    private void fitSurface(VideoSize videoSize) {
+        if (videoSize.width == 0 || videoSize.height == 0) return;
+        int containerWidth = container.getWidth();
+        int containerHeight = container.getHeight();
+        if (containerWidth == 0 || containerHeight == 0) return;
+
+        float videoAspect = (videoSize.width * videoSize.pixelWidthHeightRatio) / videoSize.height;
+        int width = containerWidth;
+        int height = (int) (containerWidth / videoAspect);
+        if (height > containerHeight) {
+            height = containerHeight;
+            width = (int) (containerHeight * videoAspect);
+        }
+
+        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) surfaceView.getLayoutParams();
+        params.width = width;
+        params.height = height;
+        surfaceView.setLayoutParams(params);
+    }
+
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        if (player == null) return super.onKeyDown(keyCode, event);
+
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_CENTER:
+            case KeyEvent.KEYCODE_ENTER:
+            case KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE:
+                player.setPlayWhenReady(!player.getPlayWhenReady());
+                return true;
+            case KeyEvent.KEYCODE_MEDIA_PLAY:
+                player.setPlayWhenReady(true);
+                return true;
+            case KeyEvent.KEYCODE_MEDIA_PAUSE:
+                player.setPlayWhenReady(false);
+                return true;
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+            case KeyEvent.KEYCODE_MEDIA_REWIND:
+                player.seekTo(Math.max(0, player.getCurrentPosition() - SEEK_BACK_MS));
+                return true;
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+            case KeyEvent.KEYCODE_MEDIA_FAST_FORWARD:
+                long duration = player.getDuration();
+                long target = player.getCurrentPosition() + SEEK_FORWARD_MS;
+                player.seekTo(duration == C.TIME_UNSET ? target : Math.min(target, duration));
+                return true;
+            case KeyEvent.KEYCODE_BACK:
+            case KeyEvent.KEYCODE_MEDIA_STOP:
+                finishWithResult();
+                return true;
+        }
+        return super.onKeyDown(keyCode, event);
+    }
+
+    private void finishWithResult() {
+        if (isFinishing()) return;
+        capturePosition();
+
+        Intent result = new Intent();
+        result.putExtra(EXTRA_POSITION_MS, lastPositionMs);
+        result.putExtra(EXTRA_DURATION_MS, lastDurationMs);
+        result.putExtra(EXTRA_ENDED, ended);
+        if (errorMessage != null) {
+            result.putExtra(EXTRA_ERROR, errorMessage);
+        }
+        setResult(RESULT_OK, result);
+        if (telemetry != null) {
+            telemetry.end(errorMessage != null ? "error" : ended ? "ended" : "exited");
+        }
+        finish();
+    }
+
+    private void capturePosition() {
+        if (player == null) return;
+        lastPositionMs = player.getCurrentPosition();
+        long duration = player.getDuration();
+        if (duration != C.TIME_UNSET) {
+            lastDurationMs = duration;
+        }
+        if (ended && lastDurationMs > 0) {
+            lastPositionMs = lastDurationMs;
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Leaving the screen (home button, input switch) ends the session like BACK does
+        if (!isFinishing()) {
+            finishWithResult();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacks(reportPosition);
+        if (player != null) {
+            player.release();
+            player = null;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.majin.videostreams;
+
+import android.content.Context;
+import android.os.Process;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Pulls the start of the next episode into VideoRangeCache once the current one passes
+// a configurable point, so the next start skips the cold range request, moov parse and
+// initial buffering. Runs on one background-priority thread and is rate limited so it
+// never competes with the stream being watched: the bytes are asked for as small range
+// requests spaced out to the configured rate, because a single large request would be
+// sent at full speed into the shared HTTP/2 connection's flow-control window whatever
+// pace it was read at. Playback of anything cancels it.
+public class NextEpisodePrefetcher {
+    private static final String TAG = "Prefetch";
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    private static NextEpisodePrefetcher shared;
+
+    private final VideoRangeCache cache;
+    private final Mp4SeekIndex seekIndex;
+    private final OkHttpClient client;
+    private final long prefetchBytes;
+    private final long segmentBytes;
+    private final long requestBytes;
+    private final int thresholdPercent;
+    private final long rateBytesPerSecond;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+    // Guarded by this
+    private String currentUrl;
+    private String nextUrl;
+    private String prefetchingUrl;
+    private String prefetchedUrl;
+    private Future<?> inFlight;
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesFetched = new AtomicLong();
+
+    public static synchronized NextEpisodePrefetcher getShared(Context context) {
+        if (shared == null) {
+            Context app = context.getApplicationContext();
+            shared = new NextEpisodePrefetcher(VideoRangeCache.getShared(app), Mp4SeekIndex.getShared(app),
+                HttpStack.getShared(app),
+                app.getResources().getInteger(R.integer.prefetch_mb) * 1024L * 1024L,
+                app.getResources().getInteger(R.integer.video_cache_segment_kb) * 1024L,
+                app.getResources().getInteger(R.integer.prefetch_threshold_percent),
+                app.getResources().getInteger(R.integer.prefetch_rate_kb) * 1024L,
+                app.getResources().getInteger(R.integer.prefetch_request_kb) * 1024L);
+        }
+        return shared;
+    }
+
+    public NextEpisodePrefetcher(VideoRangeCache cache, Mp4SeekIndex seekIndex, HttpStack httpStack, long prefetchBytes,
+                                 long segmentBytes, int thresholdPercent, long rateBytesPerSecond, long requestBytes) {
+        this.cache = cache;
+        this.seekIndex = seekIndex;
+        this.client = httpStack.client(15000, 30000);
+        this.prefetchBytes = prefetchBytes;
+        this.segmentBytes = segmentBytes;
+        this.thresholdPercent = thresholdPercent;
+        this.rateBytesPerSecond = rateBytesPerSecond;
+        this.requestBytes = requestBytes;
+    }
+
+    // Absolute URLs; nextUrl is null for the last episode of a series
+    public synchronized void setNextEpisode(String playingUrl, String upcomingUrl) {
+        currentUrl = playingUrl;
+        nextUrl = upcomingUrl;
+    }
+
+    // A video started playing in either player
+    public synchronized void onPlaybackStarted(String url) {
+        // The prefetch would now compete with the stream itself; what it has is kept
+        cancel();
+        if (prefetchedUrl != null) {
+            if (prefetchedUrl.equals(url)) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+            }
+            prefetchedUrl = null;
+        }
+    }
+
+    // Stops a running prefetch; segments already stored stay in the cache
+    public synchronized void cancel() {
+        if (inFlight != null) {
+            inFlight.cancel(true);
+            inFlight = null;
+            prefetchingUrl = null;
+        }
+    }
+
+    public synchronized void onPosition(long positionMs, long durationMs) {
+        if (nextUrl == null || durationMs <= 0 || positionMs * 100 < durationMs * thresholdPercent) return;
+        if (nextUrl.equals(prefetchingUrl) || nextUrl.equals(prefetchedUrl)) return;
+
+        String url = nextUrl;
+        prefetchingUrl = url;
+        started.incrementAndGet();
+        inFlight = worker.submit(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            boolean done = prefetch(url);
+            synchronized (this) {
+                if (url.equals(prefetchingUrl)) {
+                    prefetchingUrl = null;
+                    inFlight = null;
+                    if (done) {
+                        prefetchedUrl = url;
+                    }
+                }
+            }
+        });
+    }
+
+    private boolean prefetch(String url) {
+        try {
+            if (!cache.contains(url, 0)) {
+                long total = fetchRange(url, 0, prefetchBytes - 1);
+                if (total <= 0) return false;
+            }
+            // Non-faststart files keep their moov index at the end; without it the first
+            // frame still waits on a round trip, so the seek index fetches it too
+            seekIndex.prepare(url, rateBytesPerSecond, requestBytes);
+            completed.incrementAndGet();
+            return true;
+        } catch (InterruptedIOException e) {
+            return false;
+        } catch (IOException | RuntimeException e) {
+            android.util.Log.w(TAG, "Prefetch failed for " + url + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Fetches [start, end] into cache segments as paced requestBytes-sized ranges; returns
+    // the file's total length, or -1 if nothing usable came back
+    private long fetchRange(String url, long start, long end) throws IOException {
+        long total = -1;
+        String contentType = null;
+        long position = start;
+        long segmentStart = start;
+        long transferStart = System.currentTimeMillis();
+        ByteArrayOutputStream segment = new ByteArrayOutputStream((int) Math.min(segmentBytes, end - start + 1));
+        byte[] chunk = new byte[CHUNK_BYTES];
+        try {
+            while (position <= end) {
+                Request request = new Request.Builder()
+                    .url(url)
+                    .header("Range", "bytes=" + position + "-" + Math.min(end, position + requestBytes - 1))
+                    .build();
+                long before = position;
+                try (Response response = client.newCall(request).execute()) {
+                    if (response.code() != 206) break;
+                    Matcher contentRange = VideoRequestInterceptor.CONTENT_RANGE.matcher(
+                        String.valueOf(response.header("Content-Range")));
+                    if (!contentRange.matches() || "*".equals(contentRange.group(3)) ||
+                        Long.parseLong(contentRange.group(1)) != position) break;
+                    long length = Long.parseLong(contentRange.group(3));
+                    if (total >= 0 && length != total) {
+                        // Changed on the server mid-prefetch; what is buffered belongs to the old file
+                        segment.reset();
+                        return -1;
+                    }
+                    total = length;
+                    contentType = response.header("Content-Type");
+                    end = Math.min(end, total - 1);
+
+                    try (InputStream in = response.body().byteStream()) {
+                        int read;
+                        while ((read = in.read(chunk, 0, (int) Math.min(chunk.length, segmentBytes - segment.size()))) != -1) {
+                            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+                            segment.write(chunk, 0, read);
+                            position += read;
+                            bytesFetched.addAndGet(read);
+                            if (segment.size() >= segmentBytes) {
+                                segmentStart = storeSegment(url, segmentStart, total, contentType, segment);
+                            }
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    break;
+                }
+                if (position == before) break;
+                // The next request waits until the average is back under the rate
+                throttle(transferStart, position - start);
+            }
+            return total;
+        } finally {
+            // Whatever arrived is kept, cancelled or not
+            if (segment.size() > 0 && total > 0) {
+                storeSegment(url, segmentStart, total, contentType, segment);
+            }
+        }
+    }
+
+    private long storeSegment(String url, long segmentStart, long total, String contentType, ByteArrayOutputStream segment) {
+        byte[] data = segment.toByteArray();
+        segment.reset();
+        cache.put(url, segmentStart, total, data, contentType);
+        return segmentStart + data.length;
+    }
+
+    private void throttle(long transferStart, long transferred) throws InterruptedIOException {
+        if (rateBytesPerSecond <= 0) return;
+        long due = transferStart + transferred * 1000 / rateBytesPerSecond;
+        long wait = due - System.currentTimeMillis();
+        if (wait <= 0) return;
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    public String getStatsJson() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long outcomes = hitCount + missCount;
+        return "{\"started\":" + started.get() +
+            ",\"completed\":" + completed.get() +
+            ",\"hits\":" + hitCount +
+            ",\"misses\":" + missCount +
+            ",\"hitRate\":" + (outcomes == 0 ? 0 : (double) hitCount / outcomes) +
+            ",\"bytesFetched\":" + bytesFetched.get() + "}";
+    }
+}
@@ -0,0 +1,40 @@
+package com.majin.videostreams;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+
+// Runs the offline download queue on unmetered networks; scheduled by OfflineDownloads
+public class OfflineDownloadJob extends JobService {
+    private Thread worker;
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        OfflineDownloads downloads = OfflineDownloads.getShared(this);
+        String siteUrl = params.getExtras().getString(OfflineDownloads.EXTRA_SITE_URL, BuildConfig.SITE_URL);
+        // A retry scheduled from this run goes to the same site
+        downloads.setSiteUrl(siteUrl);
+        worker = new Thread(() -> {
+            SessionManager sessionManager = SessionManager.create(this, siteUrl);
+            sessionManager.prepare();
+            boolean remaining = downloads.runPending(sessionManager.getToken());
+            jobFinished(params, false);
+            // Left over from a closed window, a stop or a failed attempt
+            if (remaining) {
+                downloads.scheduleRetry();
+            }
+        }, "OfflineDownloads");
+        worker.start();
+        return true;
+    }
+
+    // Network lost or the system needs the resources; chunks written so far are kept and
+    // the worker schedules the rest itself
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        OfflineDownloads.getShared(this).stop();
+        if (worker != null) {
+            worker.interrupt();
+        }
+        return false;
+    }
+}
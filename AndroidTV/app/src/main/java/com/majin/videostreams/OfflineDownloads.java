@@ -0,0 +1,737 @@
+package com.majin.videostreams;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.net.Uri;
+import android.os.PersistableBundle;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Episodes kept on the device so playback does not depend on the tunnel. Queued files are
+// fetched by OfflineDownloadJob in the off-peak window as parallel range requests into a
+// .part file; the chunk map is saved with the queue, so a stopped job resumes where it
+// left off. A finished file is checked against the server's length and validator (and,
+// for MP4s, its top-level boxes) before playback is allowed to use it.
+public class OfflineDownloads {
+    private static final String TAG = "OfflineDownloads";
+    private static final int JOB_ID = 4101;
+    // Site the job signs in to; carried in the job's extras
+    static final String EXTRA_SITE_URL = "site_url";
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final long RETRY_DELAY_MS = 15 * 60 * 1000;
+    // Left free for the system and the other caches
+    private static final long FREE_SPACE_MARGIN_BYTES = 256L * 1024 * 1024;
+
+    static final String STATUS_QUEUED = "queued";
+    static final String STATUS_DOWNLOADING = "downloading";
+    static final String STATUS_DONE = "done";
+    static final String STATUS_FAILED = "failed";
+
+    private static class Entry {
+        final String url;
+        final String seriesId;
+        final String title;
+        final File file;
+        String status = STATUS_QUEUED;
+        long total = -1;
+        String validator;
+        String contentType;
+        BitSet chunks = new BitSet();
+        int attempts = 0;
+        String error;
+
+        Entry(String url, String seriesId, String title, File file) {
+            this.url = url;
+            this.seriesId = seriesId;
+            this.title = title;
+            this.file = file;
+        }
+
+        File partFile() {
+            return new File(file.getPath() + ".part");
+        }
+
+        void reset() {
+            total = -1;
+            validator = null;
+            contentType = null;
+            chunks.clear();
+            partFile().delete();
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("url", url);
+            json.put("seriesId", seriesId);
+            json.put("title", title);
+            json.put("file", file.getName());
+            json.put("status", status);
+            json.put("total", total);
+            json.put("validator", validator != null ? validator : JSONObject.NULL);
+            json.put("contentType", contentType != null ? contentType : JSONObject.NULL);
+            StringBuilder map = new StringBuilder();
+            for (int i = 0; i < chunks.length(); i++) {
+                map.append(chunks.get(i) ? '1' : '0');
+            }
+            json.put("chunks", map.toString());
+            json.put("attempts", attempts);
+            json.put("error", error != null ? error : JSONObject.NULL);
+            return json;
+        }
+
+        static Entry fromJson(JSONObject json, File directory) throws JSONException {
+            Entry entry = new Entry(json.getString("url"), json.optString("seriesId"), json.optString("title"),
+                new File(directory, json.getString("file")));
+            entry.status = json.optString("status", STATUS_QUEUED);
+            entry.total = json.optLong("total", -1);
+            entry.validator = json.isNull("validator") ? null : json.optString("validator");
+            entry.contentType = json.isNull("contentType") ? null : json.optString("contentType", null);
+            String map = json.optString("chunks");
+            for (int i = 0; i < map.length(); i++) {
+                if (map.charAt(i) == '1') {
+                    entry.chunks.set(i);
+                }
+            }
+            entry.attempts = json.optInt("attempts");
+            entry.error = json.isNull("error") ? null : json.optString("error");
+            return entry;
+        }
+    }
+
+    // The file changed on the server between two range requests
+    private static class ChangedException extends IOException {
+        ChangedException() {
+            super("File changed on the server");
+        }
+    }
+
+    private static OfflineDownloads shared;
+
+    private final Context context;
+    private final File directory;
+    private final File indexFile;
+    private final long chunkBytes;
+    private final int parallelRanges;
+    private final long quotaBytes;
+    private final int offPeakStartHour;
+    private final int offPeakEndHour;
+    private final int maxAttempts;
+    private final OkHttpClient client;
+
+    // Queue order; guarded by this
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private volatile boolean running = false;
+    private volatile boolean stopRequested = false;
+    private volatile String siteUrl = BuildConfig.SITE_URL;
+
+    public static synchronized OfflineDownloads getShared(Context context) {
+        if (shared == null) {
+            Context app = context.getApplicationContext();
+            shared = new OfflineDownloads(app, new File(app.getFilesDir(), "offline"), HttpStack.getShared(app),
+                app.getResources().getInteger(R.integer.offline_chunk_mb) * 1024L * 1024L,
+                app.getResources().getInteger(R.integer.offline_parallel_ranges),
+                app.getResources().getInteger(R.integer.offline_quota_mb) * 1024L * 1024L,
+                app.getResources().getInteger(R.integer.offline_offpeak_start_hour),
+                app.getResources().getInteger(R.integer.offline_offpeak_end_hour),
+                app.getResources().getInteger(R.integer.offline_max_attempts));
+        }
+        return shared;
+    }
+
+    public OfflineDownloads(Context context, File directory, HttpStack httpStack, long chunkBytes, int parallelRanges,
+                            long quotaBytes, int offPeakStartHour, int offPeakEndHour, int maxAttempts) {
+        this.context = context;
+        this.directory = directory;
+        this.client = httpStack.client(15000, 30000);
+        this.indexFile = new File(directory, "index.json");
+        this.chunkBytes = chunkBytes;
+        this.parallelRanges = parallelRanges;
+        this.quotaBytes = quotaBytes;
+        this.offPeakStartHour = offPeakStartHour;
+        this.offPeakEndHour = offPeakEndHour;
+        this.maxAttempts = maxAttempts;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        load();
+    }
+
+    // Absolute URL of a /videos file; a failed entry is queued again from scratch
+    public boolean enqueue(String url, String seriesId, String title) {
+        if (!VideoRequestInterceptor.isVideoUrl(Uri.parse(url))) return false;
+        synchronized (this) {
+            Entry entry = entries.get(url);
+            if (entry != null && !STATUS_FAILED.equals(entry.status)) return true;
+            if (entry == null) {
+                String extension = url.substring(url.lastIndexOf('.')).toLowerCase();
+                entry = new Entry(url, seriesId, title, new File(directory, VideoRangeCache.keyFor(url) + extension));
+                entries.put(url, entry);
+            }
+            entry.reset();
+            entry.status = STATUS_QUEUED;
+            entry.attempts = 0;
+            entry.error = null;
+            persist();
+        }
+        schedule(0);
+        return true;
+    }
+
+    public synchronized void remove(String url) {
+        Entry entry = entries.remove(url);
+        if (entry == null) return;
+        // A running download notices on its next chunk and drops the entry's files itself
+        entry.status = STATUS_FAILED;
+        entry.error = "removed";
+        entry.partFile().delete();
+        entry.file.delete();
+        persist();
+    }
+
+    // Finished and verified local copy, or null
+    public synchronized File getCompletedFile(String url) {
+        Entry entry = entries.get(url);
+        return entry != null && STATUS_DONE.equals(entry.status) && entry.file.exists() ? entry.file : null;
+    }
+
+    private synchronized String contentTypeOf(String url) {
+        Entry entry = entries.get(url);
+        return entry != null ? entry.contentType : null;
+    }
+
+    // Serves /videos requests from a finished local copy; returns null to use the network
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if (!"GET".equals(request.getMethod()) || !VideoRequestInterceptor.isVideoUrl(request.getUrl())) return null;
+        String url = request.getUrl().toString();
+        File file = getCompletedFile(url);
+        if (file == null) return null;
+
+        long length = file.length();
+        long start = 0;
+        long end = length - 1;
+        String range = VideoRequestInterceptor.header(request.getRequestHeaders(), "Range");
+        Matcher matcher = range != null ? VideoRequestInterceptor.RANGE_HEADER.matcher(range.trim()) : null;
+        boolean partial = matcher != null && matcher.matches();
+        if (partial) {
+            start = Long.parseLong(matcher.group(1));
+            if (!matcher.group(2).isEmpty()) {
+                end = Math.min(end, Long.parseLong(matcher.group(2)));
+            }
+        }
+        if (start > end) return null;
+
+        String mimeType = VideoRequestInterceptor.mimeTypeOf(contentTypeOf(url), url);
+        try {
+            InputStream data = new RangeInputStream(file, start, end - start + 1);
+            PlaybackTelemetry.recordVideoBytes(url, true, end - start + 1);
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Length", String.valueOf(end - start + 1));
+            headers.put("Accept-Ranges", "bytes");
+            if (!partial) {
+                return new WebResourceResponse(mimeType, null, 200, "OK", headers, data);
+            }
+            headers.put("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            return new WebResourceResponse(mimeType, null, 206, "Partial Content", headers, data);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Debug builds may run against another site than BuildConfig.SITE_URL
+    public void setSiteUrl(String siteUrl) {
+        this.siteUrl = siteUrl;
+    }
+
+    public void scheduleIfPending() {
+        if (hasRunnable()) {
+            schedule(0);
+        }
+    }
+
+    // After a run that left work behind; a failing server is not retried straight away
+    public void scheduleRetry() {
+        if (hasRunnable()) {
+            schedule(RETRY_DELAY_MS);
+        }
+    }
+
+    // Rescheduling a running job would stop it; it picks up new entries by itself
+    private void schedule(long minDelayMs) {
+        if (running) return;
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        PersistableBundle extras = new PersistableBundle();
+        extras.putString(EXTRA_SITE_URL, siteUrl);
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, OfflineDownloadJob.class))
+            .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+            .setMinimumLatency(Math.max(minDelayMs, millisUntilOffPeak()))
+            .setExtras(extras)
+            .build();
+        scheduler.schedule(job);
+    }
+
+    private long millisUntilOffPeak() {
+        if (offPeakStartHour == offPeakEndHour) return 0;
+        Calendar now = Calendar.getInstance();
+        if (isOffPeak(now.get(Calendar.HOUR_OF_DAY))) return 0;
+        Calendar start = (Calendar) now.clone();
+        start.set(Calendar.HOUR_OF_DAY, offPeakStartHour);
+        start.set(Calendar.MINUTE, 0);
+        start.set(Calendar.SECOND, 0);
+        if (!start.after(now)) {
+            start.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return start.getTimeInMillis() - now.getTimeInMillis();
+    }
+
+    // The window may wrap midnight, e.g. 23 to 6
+    private boolean isOffPeak(int hour) {
+        if (offPeakStartHour == offPeakEndHour) return true;
+        if (offPeakStartHour < offPeakEndHour) return hour >= offPeakStartHour && hour < offPeakEndHour;
+        return hour >= offPeakStartHour || hour < offPeakEndHour;
+    }
+
+    // Downloading means a previous run was stopped part way
+    private synchronized boolean hasRunnable() {
+        for (Entry entry : entries.values()) {
+            if (STATUS_QUEUED.equals(entry.status) || STATUS_DOWNLOADING.equals(entry.status)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Runs on OfflineDownloadJob's thread until the queue is empty, the off-peak window
+    // closes or the job is stopped. Returns true if work is left for a later run.
+    public boolean runPending(String authToken) {
+        running = true;
+        stopRequested = false;
+        // A failed entry waits for the next run rather than burning its attempts back to back
+        Set<Entry> tried = new HashSet<>();
+        try {
+            while (!stopRequested && isOffPeak(Calendar.getInstance().get(Calendar.HOUR_OF_DAY))) {
+                Entry entry = nextEntry(tried);
+                if (entry == null) break;
+                tried.add(entry);
+                download(entry, authToken);
+            }
+            return hasRunnable();
+        } finally {
+            running = false;
+        }
+    }
+
+    public void stop() {
+        stopRequested = true;
+    }
+
+    private synchronized Entry nextEntry(Set<Entry> tried) {
+        for (Entry entry : entries.values()) {
+            if (tried.contains(entry)) continue;
+            if (STATUS_QUEUED.equals(entry.status) || STATUS_DOWNLOADING.equals(entry.status)) {
+                entry.status = STATUS_DOWNLOADING;
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void download(Entry entry, String authToken) {
+        try {
+            probe(entry, authToken);
+            if (!checkSpace(entry)) return;
+            fetchChunks(entry, authToken);
+            if (stopRequested || !isActive(entry)) return;
+            finish(entry);
+        } catch (ChangedException e) {
+            // Start over against the new file; the attempt still counts
+            synchronized (this) {
+                entry.reset();
+                failOrRetry(entry, e.getMessage());
+            }
+        } catch (InterruptedIOException e) {
+            // Stopped - the chunk map already has everything that was written
+        } catch (IOException e) {
+            android.util.Log.w(TAG, "Download failed for " + entry.url + ": " + e.getMessage());
+            synchronized (this) {
+                failOrRetry(entry, e.getMessage());
+            }
+        } finally {
+            // Removed while running; a worker may have recreated the .part file
+            synchronized (this) {
+                if (entries.get(entry.url) != entry) {
+                    entry.partFile().delete();
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isActive(Entry entry) {
+        return STATUS_DOWNLOADING.equals(entry.status);
+    }
+
+    // Learns the length and validator with a one-byte range request
+    private void probe(Entry entry, String authToken) throws IOException {
+        try (Response response = open(entry.url, 0, 0, authToken)) {
+            int status = response.code();
+            if (status != 206) throw new IOException("HTTP " + status);
+            Matcher contentRange = VideoRequestInterceptor.CONTENT_RANGE.matcher(
+                String.valueOf(response.header("Content-Range")));
+            if (!contentRange.matches() || "*".equals(contentRange.group(3))) throw new IOException("No length");
+            long total = Long.parseLong(contentRange.group(3));
+            String validator = validatorOf(response);
+            synchronized (this) {
+                if (entry.total != total || (entry.validator != null && !entry.validator.equals(validator))) {
+                    entry.reset();
+                }
+                entry.total = total;
+                entry.validator = validator;
+                entry.contentType = response.header("Content-Type");
+                persist();
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad Content-Range");
+        }
+    }
+
+    private boolean checkSpace(Entry entry) throws IOException {
+        long reserved = 0;
+        synchronized (this) {
+            for (Entry other : entries.values()) {
+                if (other != entry && other.total > 0 && !STATUS_FAILED.equals(other.status)) {
+                    reserved += other.total;
+                }
+            }
+        }
+        String problem = null;
+        if (reserved + entry.total > quotaBytes) {
+            problem = "quota";
+        } else if (directory.getUsableSpace() - FREE_SPACE_MARGIN_BYTES < entry.total - entry.partFile().length()) {
+            problem = "storage";
+        }
+        if (problem == null) return true;
+
+        synchronized (this) {
+            entry.reset();
+            entry.status = STATUS_FAILED;
+            entry.error = problem;
+            persist();
+        }
+        return false;
+    }
+
+    private void fetchChunks(Entry entry, String authToken) throws IOException {
+        int chunkCount = (int) ((entry.total + chunkBytes - 1) / chunkBytes);
+        List<Integer> missing = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < chunkCount; i++) {
+                if (!entry.chunks.get(i)) {
+                    missing.add(i);
+                }
+            }
+        }
+        if (missing.isEmpty()) return;
+
+        try (RandomAccessFile part = new RandomAccessFile(entry.partFile(), "rw")) {
+            part.setLength(entry.total);
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelRanges, missing.size()));
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int w = 0; w < Math.min(parallelRanges, missing.size()); w++) {
+                futures.add(workers.submit(() -> {
+                    int index;
+                    while ((index = next.getAndIncrement()) < missing.size()) {
+                        if (stopRequested || !isActive(entry)) throw new InterruptedIOException();
+                        fetchChunk(entry, missing.get(index), authToken);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : futures) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    // First failure stops the others; the chunks they finished are kept
+                    stopWorkers(futures);
+                    if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                    throw new IOException(e.getCause());
+                } catch (InterruptedException e) {
+                    stopWorkers(futures);
+                    throw new InterruptedIOException();
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void stopWorkers(List<Future<?>> futures) {
+        for (Future<?> worker : futures) {
+            worker.cancel(true);
+        }
+    }
+
+    private void fetchChunk(Entry entry, int index, String authToken) throws IOException {
+        long start = index * chunkBytes;
+        long end = Math.min(entry.total, start + chunkBytes) - 1;
+        try (Response response = open(entry.url, start, end, authToken);
+             RandomAccessFile part = new RandomAccessFile(entry.partFile(), "rw")) {
+            int status = response.code();
+            if (status == 200) throw new ChangedException(); // Range ignored; the file was replaced
+            if (status != 206) throw new IOException("HTTP " + status);
+            String validator = validatorOf(response);
+            if (entry.validator != null && !entry.validator.equals(validator)) throw new ChangedException();
+
+            part.seek(start);
+            long written = 0;
+            byte[] buffer = new byte[BUFFER_BYTES];
+            try (InputStream in = response.body().byteStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (stopRequested || Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+                    if (written + read > end - start + 1) throw new IOException("Chunk longer than requested");
+                    part.write(buffer, 0, read);
+                    written += read;
+                }
+            }
+            if (written != end - start + 1) throw new IOException("Short chunk " + index);
+            // On disk before the map says so, or a power cut leaves a hole marked as done
+            part.getFD().sync();
+        }
+        synchronized (this) {
+            entry.chunks.set(index);
+            persist();
+        }
+    }
+
+    private void finish(Entry entry) throws IOException {
+        File part = entry.partFile();
+        String problem = null;
+        if (part.length() != entry.total) {
+            problem = "length mismatch";
+        } else if (entry.file.getName().endsWith(".mp4") && !hasCompleteBoxes(part, entry.total)) {
+            problem = "damaged MP4";
+        }
+        synchronized (this) {
+            if (!STATUS_DOWNLOADING.equals(entry.status)) return; // Removed meanwhile
+            if (problem != null) {
+                entry.reset();
+                failOrRetry(entry, problem);
+                return;
+            }
+            if (!part.renameTo(entry.file)) {
+                throw new IOException("Could not move finished file");
+            }
+            entry.status = STATUS_DONE;
+            entry.error = null;
+            persist();
+        }
+    }
+
+    // Top-level MP4 boxes must tile the file exactly and include the moov index
+    private static boolean hasCompleteBoxes(File file, long total) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] header = new byte[16];
+            long position = 0;
+            boolean sawMoov = false;
+            while (position < total) {
+                if (total - position < 8) return false;
+                in.seek(position);
+                in.readFully(header, 0, (int) Math.min(16, total - position));
+                long size = readUInt32(header, 0);
+                String type = new String(header, 4, 4, StandardCharsets.US_ASCII);
+                if (size == 1) {
+                    if (total - position < 16) return false;
+                    size = (readUInt32(header, 8) << 32) | readUInt32(header, 12);
+                } else if (size == 0) {
+                    size = total - position;
+                }
+                if (size < 8 || position + size > total) return false;
+                sawMoov |= "moov".equals(type);
+                position += size;
+            }
+            return sawMoov;
+        }
+    }
+
+    private static long readUInt32(byte[] data, int offset) {
+        return ((data[offset] & 0xFFL) << 24) | ((data[offset + 1] & 0xFFL) << 16) |
+            ((data[offset + 2] & 0xFFL) << 8) | (data[offset + 3] & 0xFFL);
+    }
+
+    // Called with the lock held
+    private void failOrRetry(Entry entry, String error) {
+        if (!STATUS_DOWNLOADING.equals(entry.status)) return;
+        entry.attempts++;
+        entry.error = error;
+        entry.status = entry.attempts >= maxAttempts ? STATUS_FAILED : STATUS_QUEUED;
+        if (STATUS_FAILED.equals(entry.status)) {
+            entry.reset();
+        }
+        persist();
+    }
+
+    // Parallel chunks share one multiplexed connection when the edge speaks HTTP/2
+    private Response open(String url, long start, long end, String authToken) throws IOException {
+        Request.Builder builder = new Request.Builder()
+            .url(url)
+            .header("Range", "bytes=" + start + "-" + end)
+            // The job may run before MainActivity ever probed
+            .header(DecoderCapabilities.HEADER, DecoderCapabilities.getShared(context).getHeaderValue());
+        if (authToken != null) {
+            builder.header("Authorization", "Bearer " + authToken);
+        }
+        return client.newCall(builder.build()).execute();
+    }
+
+    private static String validatorOf(Response response) {
+        String etag = response.header("ETag");
+        return etag != null ? etag : response.header("Last-Modified");
+    }
+
+    private synchronized void load() {
+        if (!indexFile.exists()) return;
+        try (FileInputStream in = new FileInputStream(indexFile)) {
+            JSONArray array = new JSONArray(new String(CatalogCache.readFully(in), StandardCharsets.UTF_8));
+            for (int i = 0; i < array.length(); i++) {
+                Entry entry = Entry.fromJson(array.getJSONObject(i), directory);
+                // A finished file that went missing is fetched again
+                if (STATUS_DONE.equals(entry.status) && !entry.file.exists()) {
+                    entry.reset();
+                    entry.status = STATUS_QUEUED;
+                }
+                entries.put(entry.url, entry);
+            }
+        } catch (IOException | JSONException e) {
+            android.util.Log.w(TAG, "Discarding unreadable download index: " + e.getMessage());
+            indexFile.delete();
+        }
+    }
+
+    // Called with the lock held; the index is small enough to rewrite per chunk
+    private void persist() {
+        JSONArray array = new JSONArray();
+        try {
+            for (Entry entry : entries.values()) {
+                array.put(entry.toJson());
+            }
+        } catch (JSONException e) {
+            return;
+        }
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(array.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            android.util.Log.w(TAG, "Could not save download index: " + e.getMessage());
+            return;
+        }
+        if (!temp.renameTo(indexFile)) {
+            temp.delete();
+        }
+    }
+
+    public synchronized String getStatusJson() {
+        JSONArray list = new JSONArray();
+        long usedBytes = 0;
+        try {
+            for (Entry entry : entries.values()) {
+                JSONObject item = new JSONObject();
+                item.put("url", entry.url);
+                item.put("seriesId", entry.seriesId);
+                item.put("title", entry.title);
+                item.put("status", entry.status);
+                item.put("total", entry.total);
+                long chunkCount = entry.total > 0 ? (entry.total + chunkBytes - 1) / chunkBytes : 0;
+                item.put("progress", STATUS_DONE.equals(entry.status) ? 1.0
+                    : chunkCount == 0 ? 0 : (double) entry.chunks.cardinality() / chunkCount);
+                item.put("error", entry.error != null ? entry.error : JSONObject.NULL);
+                list.put(item);
+                if (STATUS_DONE.equals(entry.status)) {
+                    usedBytes += entry.total;
+                }
+            }
+            JSONObject status = new JSONObject();
+            status.put("downloads", list);
+            status.put("usedBytes", usedBytes);
+            status.put("quotaBytes", quotaBytes);
+            status.put("running", running);
+            return status.toString();
+        } catch (JSONException e) {
+            return "{}";
+        }
+    }
+
+    // Reads [start, start + length) of a file
+    static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(File file, long start, long length) throws IOException {
+            super(new FileInputStream(file));
+            long toSkip = start;
+            while (toSkip > 0) {
+                long skipped = in.skip(toSkip);
+                if (skipped <= 0) {
+                    in.close();
+                    throw new IOException("Short file");
+                }
+                toSkip -= skipped;
+            }
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) return -1;
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
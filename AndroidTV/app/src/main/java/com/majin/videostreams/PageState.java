@@ -0,0 +1,97 @@
+package com.majin.videostreams;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Native copy of the page's playback, fullscreen and modal state. page_state.js pushes a
+// snapshot over the input channel on every change, so idle and BACK decisions read a
+// field instead of evaluating JavaScript in the renderer. UI thread only.
+public class PageState {
+    public interface Listener {
+        void onPlayingChanged(boolean playing);
+    }
+
+    private final Listener listener;
+    private boolean known = false;
+    private boolean video = false;
+    private boolean paused = true;
+    private boolean ended = false;
+    private boolean seeking = false;
+    private boolean fullscreen = false;
+    private String modal = null;
+    private long updates = 0;
+
+    public PageState(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void apply(String snapshot) {
+        boolean wasPlaying = isPlaying();
+        try {
+            JSONObject state = new JSONObject(snapshot);
+            video = state.optBoolean("video");
+            paused = state.optBoolean("paused", true);
+            ended = state.optBoolean("ended");
+            seeking = state.optBoolean("seeking");
+            fullscreen = state.optBoolean("fullscreen");
+            String overlay = state.optString("modal");
+            modal = overlay.isEmpty() ? null : overlay;
+            known = true;
+            updates++;
+        } catch (JSONException e) {
+            return;
+        }
+        if (isPlaying() != wasPlaying) {
+            listener.onPlayingChanged(!wasPlaying);
+        }
+    }
+
+    // A new document starts with nothing reported
+    public void reset() {
+        boolean wasPlaying = isPlaying();
+        known = false;
+        video = false;
+        paused = true;
+        ended = false;
+        seeking = false;
+        fullscreen = false;
+        modal = null;
+        if (wasPlaying) {
+            listener.onPlayingChanged(false);
+        }
+    }
+
+    public boolean isKnown() {
+        return known;
+    }
+
+    public boolean isPlaying() {
+        return video && !paused && !ended;
+    }
+
+    public boolean isSeeking() {
+        return seeking;
+    }
+
+    public boolean hasVideo() {
+        return video;
+    }
+
+    public boolean isFullscreen() {
+        return fullscreen;
+    }
+
+    // Id of the topmost open overlay, or null on the bare grid
+    public String getModal() {
+        return modal;
+    }
+
+    public String getStatsJson() {
+        return "{\"known\":" + known +
+            ",\"playing\":" + isPlaying() +
+            ",\"seeking\":" + seeking +
+            ",\"fullscreen\":" + fullscreen +
+            ",\"modal\":" + (modal != null ? JSONObject.quote(modal) : "null") +
+            ",\"updates\":" + updates + "}";
+    }
+}
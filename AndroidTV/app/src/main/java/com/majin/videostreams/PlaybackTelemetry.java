@@ -0,0 +1,247 @@
+package com.majin.videostreams;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Per-playback quality metrics for both players: time to first frame, rebuffers,
+// bytes from network vs. cache, dropped frames and HTTP errors. Each finished session
+// becomes one event in a bounded ring buffer that TelemetryUploader drains.
+public final class PlaybackTelemetry {
+    private static final String TAG = "PlaybackTelemetry";
+    private static final int RING_CAPACITY = 256;
+
+    private static final ArrayDeque<String> events = new ArrayDeque<>();
+    private static final List<Session> openSessions = new ArrayList<>();
+    private static int droppedEvents = 0;
+
+    private PlaybackTelemetry() {
+    }
+
+    public static final class Session {
+        private final String id = UUID.randomUUID().toString().substring(0, 8);
+        private final String player;
+        private final String path;
+        private final long startedAt = SystemClock.elapsedRealtime();
+        private long startupMs = -1;
+        private int rebufferCount = 0;
+        private long rebufferMs = 0;
+        private long bufferingSince = -1;
+        private boolean seekPending = false;
+        private long networkBytes = 0;
+        private long cacheBytes = 0;
+        private long droppedFrames = 0;
+        private final Map<Integer, Integer> httpErrors = new HashMap<>();
+        private String errorCode;
+        private boolean ended = false;
+
+        Session(String player, String url) {
+            this.player = player;
+            this.path = pathOf(url);
+        }
+
+        // Native player: measured from session start
+        public synchronized void onFirstFrame() {
+            if (startupMs < 0) {
+                startupMs = SystemClock.elapsedRealtime() - startedAt;
+            }
+        }
+
+        // Web player: the page measures from its own play request, since TV playback
+        // waits for the user to press play
+        public synchronized void setStartupMs(long ms) {
+            if (startupMs < 0) {
+                startupMs = ms;
+            }
+        }
+
+        // Buffering before the first frame is startup, and right after a seek is expected
+        public synchronized void onBuffering() {
+            if (startupMs < 0 || bufferingSince >= 0) return;
+            if (seekPending) {
+                seekPending = false;
+                return;
+            }
+            rebufferCount++;
+            bufferingSince = SystemClock.elapsedRealtime();
+        }
+
+        public synchronized void onReady() {
+            seekPending = false;
+            if (bufferingSince >= 0) {
+                rebufferMs += SystemClock.elapsedRealtime() - bufferingSince;
+                bufferingSince = -1;
+            }
+        }
+
+        public synchronized void onSeek() {
+            seekPending = true;
+        }
+
+        public synchronized void addBytes(boolean fromCache, long bytes) {
+            if (fromCache) {
+                cacheBytes += bytes;
+            } else {
+                networkBytes += bytes;
+            }
+        }
+
+        public synchronized void addDroppedFrames(long frames) {
+            droppedFrames += frames;
+        }
+
+        public synchronized void onHttpError(int status) {
+            Integer count = httpErrors.get(status);
+            httpErrors.put(status, count == null ? 1 : count + 1);
+        }
+
+        public synchronized void setError(String code) {
+            if (errorCode == null) {
+                errorCode = code;
+            }
+        }
+
+        // outcome: ended, exited or error
+        public void end(String outcome) {
+            String event;
+            synchronized (this) {
+                if (ended) return;
+                ended = true;
+                onReady();
+                event = toJson(outcome);
+            }
+            synchronized (PlaybackTelemetry.class) {
+                openSessions.remove(this);
+            }
+            if (event != null) {
+                record(event);
+            }
+        }
+
+        private String toJson(String outcome) {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("type", "playback");
+                json.put("session", id);
+                json.put("player", player);
+                json.put("path", path);
+                json.put("outcome", outcome);
+                json.put("startedAt", System.currentTimeMillis() - (SystemClock.elapsedRealtime() - startedAt));
+                json.put("durationMs", SystemClock.elapsedRealtime() - startedAt);
+                json.put("startupMs", startupMs);
+                json.put("rebufferCount", rebufferCount);
+                json.put("rebufferMs", rebufferMs);
+                json.put("networkBytes", networkBytes);
+                json.put("cacheBytes", cacheBytes);
+                json.put("droppedFrames", droppedFrames);
+                JSONObject errors = new JSONObject();
+                for (Map.Entry<Integer, Integer> entry : httpErrors.entrySet()) {
+                    errors.put(String.valueOf(entry.getKey()), entry.getValue());
+                }
+                json.put("httpErrors", errors);
+                if (errorCode != null) {
+                    json.put("error", errorCode);
+                }
+                return json.toString();
+            } catch (JSONException e) {
+                return null;
+            }
+        }
+    }
+
+    // player: "native" or "web"
+    public static Session begin(String player, String url) {
+        Session session = new Session(player, url);
+        synchronized (PlaybackTelemetry.class) {
+            openSessions.add(session);
+        }
+        return session;
+    }
+
+    // Bytes the WebView's range interceptor served for a video, attributed to its session
+    public static void recordVideoBytes(String url, boolean fromCache, long bytes) {
+        Session session = openSessionFor(url);
+        if (session != null) {
+            session.addBytes(fromCache, bytes);
+        }
+    }
+
+    // A problem with the file itself rather than one playback, e.g. moov_at_end
+    public static void recordFileIssue(String url, String issue, long sizeBytes) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("type", "file");
+            json.put("path", pathOf(url));
+            json.put("issue", issue);
+            json.put("sizeBytes", sizeBytes);
+            record(json.toString());
+        } catch (JSONException e) {
+            // Nothing to report
+        }
+    }
+
+    public static void recordHttpError(String url, int status) {
+        Session session = openSessionFor(url);
+        if (session != null) {
+            session.onHttpError(status);
+        }
+    }
+
+    private static synchronized Session openSessionFor(String url) {
+        String path = pathOf(url);
+        for (int i = openSessions.size() - 1; i >= 0; i--) {
+            if (openSessions.get(i).path.equals(path)) {
+                return openSessions.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static synchronized void record(String event) {
+        if (events.size() >= RING_CAPACITY) {
+            events.pollFirst();
+            droppedEvents++;
+        }
+        events.addLast(event);
+        if (BuildConfig.ENABLE_WEBVIEW_DEBUG) {
+            android.util.Log.d(TAG, event);
+        }
+    }
+
+    // Oldest first, up to max events
+    static synchronized List<String> drain(int max) {
+        List<String> batch = new ArrayList<>(Math.min(max, events.size()));
+        while (batch.size() < max && !events.isEmpty()) {
+            batch.add(events.pollFirst());
+        }
+        return batch;
+    }
+
+    // A failed upload goes back in front, still subject to the ring limit
+    static synchronized void requeue(List<String> batch, int dropped) {
+        droppedEvents += dropped;
+        for (int i = batch.size() - 1; i >= 0 && events.size() < RING_CAPACITY; i--) {
+            events.addFirst(batch.get(i));
+        }
+    }
+
+    // Events lost to the ring limit since the last call
+    static synchronized int takeDroppedCount() {
+        int dropped = droppedEvents;
+        droppedEvents = 0;
+        return dropped;
+    }
+
+    private static String pathOf(String url) {
+        if (url == null) return "";
+        String path = Uri.parse(url).getEncodedPath();
+        return path != null ? path : "";
+    }
+}
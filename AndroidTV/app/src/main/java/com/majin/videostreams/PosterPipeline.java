@@ -0,0 +1,317 @@
+package com.majin.videostreams;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.LruCache;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Downsamples poster art to the grid tile size before the WebView sees it.
+// Re-encoded thumbnails are kept in a bounded memory tier and a disk tier, so the
+// renderer never decodes a full-size poster on the TV.
+public class PosterPipeline {
+    private static final int MAX_CONCURRENT_DECODES = 2;
+
+    private final int targetWidth;
+    private final int targetHeight;
+    private final File directory;
+    private final long maxDiskBytes;
+    private final OkHttpClient client;
+    private final LruCache<String, byte[]> memoryCache;
+    // Bytes in the disk tier, counted from the directory on the first write and kept
+    // up to date after that; -1 until then
+    private long diskBytes = -1;
+    // Full-size decodes are the memory spike on 1 GB boxes - never run many at once
+    private final Semaphore decodePermits = new Semaphore(MAX_CONCURRENT_DECODES);
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong decodes = new AtomicLong();
+    private final AtomicLong decodeTimeMs = new AtomicLong();
+    private final AtomicLong maxDecodeTimeMs = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    private static PosterPipeline shared;
+
+    // One pipeline per process: the WebView grid and the native rows share the disk tier,
+    // and only one owner can keep its byte count right
+    public static synchronized PosterPipeline getShared(Context context) {
+        if (shared == null) {
+            Context app = context.getApplicationContext();
+            shared = new PosterPipeline(new File(app.getCacheDir(), "posters"), HttpStack.getShared(app),
+                app.getResources().getInteger(R.integer.poster_tile_width),
+                app.getResources().getInteger(R.integer.poster_tile_height),
+                MemoryManager.getShared(app).scaleBytes(app.getResources().getInteger(R.integer.poster_memory_cache_kb) * 1024),
+                app.getResources().getInteger(R.integer.poster_disk_cache_mb) * 1024L * 1024L);
+        }
+        return shared;
+    }
+
+    public PosterPipeline(File directory, HttpStack httpStack, int targetWidth, int targetHeight,
+                          int memoryCacheBytes, long maxDiskBytes) {
+        this.directory = directory;
+        this.client = httpStack.client();
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memoryCache = new LruCache<String, byte[]>(memoryCacheBytes) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+    }
+
+    public static boolean isPosterUrl(Uri uri) {
+        String path = uri.getPath();
+        return path != null && path.startsWith("/videos/") && path.toLowerCase().matches(".*\\.(jpg|jpeg|png|webp)$");
+    }
+
+    // Returns null to let the WebView load the request itself
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if (!"GET".equals(request.getMethod()) || !isPosterUrl(request.getUrl())) return null;
+
+        String url = request.getUrl().toString();
+        byte[] thumbnail = getThumbnail(url, VideoRequestInterceptor.header(request.getRequestHeaders(), "User-Agent"));
+        if (thumbnail == null) return null;
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", "public, max-age=86400");
+        return new WebResourceResponse(mimeTypeOf(thumbnail), null, 200, "OK", headers, new ByteArrayInputStream(thumbnail));
+    }
+
+    // Encoded tile-sized thumbnail for a poster URL, or null if it could not be produced
+    public byte[] getThumbnail(String url, String userAgent) {
+        String key = VideoRangeCache.keyFor(url + "@" + targetWidth + "x" + targetHeight);
+
+        byte[] cached = memoryCache.get(key);
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            return cached;
+        }
+
+        File diskFile = new File(directory, key + ".img");
+        if (diskFile.exists()) {
+            try {
+                cached = CatalogCache.readFully(new FileInputStream(diskFile));
+                diskFile.setLastModified(System.currentTimeMillis());
+                memoryCache.put(key, cached);
+                diskHits.incrementAndGet();
+                return cached;
+            } catch (IOException e) {
+                deleteFromDisk(diskFile);
+            }
+        }
+
+        misses.incrementAndGet();
+        byte[] original = download(url, userAgent);
+        if (original == null) return null;
+
+        byte[] thumbnail = downsample(original);
+        if (thumbnail == null) return null;
+
+        memoryCache.put(key, thumbnail);
+        writeToDisk(diskFile, thumbnail);
+        return thumbnail;
+    }
+
+    private byte[] download(String url, String userAgent) {
+        Request.Builder builder = new Request.Builder().url(url);
+        if (userAgent != null) {
+            builder.header("User-Agent", userAgent);
+        }
+        try (Response response = client.newCall(builder.build()).execute()) {
+            if (response.code() != 200) return null;
+            return response.body().bytes();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] downsample(byte[] original) {
+        try {
+            decodePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+        try {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(original, 0, original.length, bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+            // Already small enough - re-encoding would only cost quality
+            if (bounds.outWidth <= targetWidth && bounds.outHeight <= targetHeight) {
+                return original;
+            }
+
+            // PNG and WebP can carry transparency, which RGB_565 and JPEG would turn black
+            String sourceType = mimeTypeOf(original);
+            boolean mayHaveAlpha = !"image/jpeg".equals(sourceType);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSizeFor(bounds.outWidth, bounds.outHeight);
+            options.inPreferredConfig = mayHaveAlpha ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+            Bitmap decoded = BitmapFactory.decodeByteArray(original, 0, original.length, options);
+            if (decoded == null) return null;
+
+            // Fit inside the tile like the page's object-fit: contain
+            float scale = Math.min((float) targetWidth / decoded.getWidth(), (float) targetHeight / decoded.getHeight());
+            Bitmap scaled = decoded;
+            if (scale < 1f) {
+                scaled = Bitmap.createScaledBitmap(decoded,
+                    Math.max(1, Math.round(decoded.getWidth() * scale)),
+                    Math.max(1, Math.round(decoded.getHeight() * scale)), true);
+                if (scaled != decoded) {
+                    decoded.recycle();
+                }
+            }
+
+            Bitmap.CompressFormat format = Bitmap.CompressFormat.JPEG;
+            if (mayHaveAlpha && scaled.hasAlpha()) {
+                format = "image/png".equals(sourceType) ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.WEBP;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            scaled.compress(format, 85, out);
+            scaled.recycle();
+
+            byte[] encoded = out.toByteArray();
+            bytesSaved.addAndGet(Math.max(0, original.length - encoded.length));
+            return encoded;
+        } catch (OutOfMemoryError e) {
+            android.util.Log.w("PosterPipeline", "Out of memory decoding poster");
+            memoryCache.evictAll();
+            return null;
+        } finally {
+            long elapsed = SystemClock.elapsedRealtime() - startTime;
+            decodes.incrementAndGet();
+            decodeTimeMs.addAndGet(elapsed);
+            if (elapsed > maxDecodeTimeMs.get()) {
+                maxDecodeTimeMs.set(elapsed);
+            }
+            decodePermits.release();
+        }
+    }
+
+    private int sampleSizeFor(int width, int height) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private void writeToDisk(File target, byte[] data) {
+        File temp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        synchronized (this) {
+            countDiskBytes();
+            // Another request may have written the same poster first
+            long replaced = target.length();
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                return;
+            }
+            diskBytes += data.length - replaced;
+            if (diskBytes > maxDiskBytes) {
+                trimDisk();
+            }
+        }
+    }
+
+    private synchronized void countDiskBytes() {
+        if (diskBytes >= 0) return;
+        diskBytes = 0;
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.getName().endsWith(".tmp")) {
+                diskBytes += file.length();
+            }
+        }
+    }
+
+    private synchronized void deleteFromDisk(File file) {
+        long length = file.length();
+        if (file.delete() && diskBytes >= 0) {
+            diskBytes -= length;
+        }
+    }
+
+    // Only runs once the running total is over the limit, oldest thumbnails first
+    private synchronized void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (diskBytes <= maxDiskBytes) break;
+            if (file.getName().endsWith(".tmp")) continue;
+            deleteFromDisk(file);
+        }
+    }
+
+    // The budget itself stays, so the cache refills once pressure passes
+    public void trimMemory(int keepPercent) {
+        if (keepPercent <= 0) {
+            memoryCache.evictAll();
+        } else {
+            memoryCache.trimToSize((int) ((long) memoryCache.maxSize() * keepPercent / 100));
+        }
+    }
+
+    private static String mimeTypeOf(byte[] data) {
+        if (data.length > 3 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return "image/png";
+        }
+        if (data.length > 11 && data[8] == 'W' && data[9] == 'E' && data[10] == 'B' && data[11] == 'P') {
+            return "image/webp";
+        }
+        return "image/jpeg";
+    }
+
+    public String getStatsJson() {
+        long memory = memoryHits.get();
+        long disk = diskHits.get();
+        long miss = misses.get();
+        long requests = memory + disk + miss;
+        long decodeCount = decodes.get();
+        return "{\"memoryHits\":" + memory +
+            ",\"diskHits\":" + disk +
+            ",\"misses\":" + miss +
+            ",\"hitRate\":" + (requests == 0 ? 0 : (double) (memory + disk) / requests) +
+            ",\"decodes\":" + decodeCount +
+            ",\"avgDecodeMs\":" + (decodeCount == 0 ? 0 : (double) decodeTimeMs.get() / decodeCount) +
+            ",\"maxDecodeMs\":" + maxDecodeTimeMs.get() +
+            ",\"memoryCacheBytes\":" + memoryCache.size() +
+            ",\"bytesSaved\":" + bytesSaved.get() + "}";
+    }
+}
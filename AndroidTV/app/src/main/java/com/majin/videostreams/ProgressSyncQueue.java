@@ -0,0 +1,203 @@
+package com.majin.videostreams;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Owns watch-progress sync. Updates are coalesced per episode, kept in a small file
+// so a killed app or a dropped tunnel loses nothing, and posted to /api/progress/batch
+// on an interval, when the app goes to the background and after a reconnect.
+public class ProgressSyncQueue {
+    private static final String TAG = "ProgressSync";
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private final File file;
+    private final String siteUrl;
+    private final SessionManager sessionManager;
+    private final OkHttpClient client;
+    private final long intervalMs;
+    private final int batchSize;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // Latest update per episode, oldest first; guarded by this
+    private final Map<String, JSONObject> pending = new LinkedHashMap<>();
+    private boolean dirty = false;
+
+    private final Runnable periodicFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+            handler.postDelayed(this, intervalMs);
+        }
+    };
+
+    public ProgressSyncQueue(File file, String siteUrl, SessionManager sessionManager, HttpStack httpStack,
+                             long intervalMs, int batchSize) {
+        this.file = file;
+        this.siteUrl = siteUrl;
+        this.sessionManager = sessionManager;
+        this.client = httpStack.client(10000, 10000);
+        this.intervalMs = intervalMs;
+        this.batchSize = batchSize;
+        load();
+    }
+
+    public void start() {
+        handler.removeCallbacks(periodicFlush);
+        handler.postDelayed(periodicFlush, intervalMs);
+    }
+
+    public void stop() {
+        handler.removeCallbacks(periodicFlush);
+        executor.shutdown();
+    }
+
+    public void enqueue(String seriesId, String videoFile, double currentTime, double duration, boolean completed) {
+        try {
+            JSONObject update = new JSONObject();
+            update.put("seriesId", seriesId);
+            update.put("videoFile", videoFile);
+            update.put("currentTime", currentTime);
+            update.put("duration", duration);
+            update.put("completed", completed);
+            update.put("updatedAt", System.currentTimeMillis());
+            synchronized (this) {
+                // Re-inserting moves the episode to the back so the batch order stays by age
+                String key = seriesId + "\u0000" + videoFile;
+                pending.remove(key);
+                pending.put(key, update);
+                dirty = true;
+            }
+        } catch (JSONException e) {
+            return;
+        }
+        if (!executor.isShutdown()) {
+            executor.execute(this::persist);
+        }
+    }
+
+    public void flush() {
+        if (!executor.isShutdown()) {
+            executor.execute(this::upload);
+        }
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    private void upload() {
+        String token = sessionManager.getToken();
+        if (token == null) return;
+
+        List<JSONObject> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+            for (JSONObject update : pending.values()) {
+                if (batch.size() >= batchSize) break;
+                batch.add(update);
+            }
+        }
+
+        try {
+            JSONObject body = new JSONObject();
+            body.put("updates", new JSONArray(batch));
+            Request request = new Request.Builder()
+                .url(siteUrl + "/api/progress/batch")
+                .header("Authorization", "Bearer " + token)
+                .post(RequestBody.create(body.toString().getBytes(StandardCharsets.UTF_8), JSON))
+                .build();
+            try (Response response = client.newCall(request).execute()) {
+                if (response.code() != 200) {
+                    android.util.Log.w(TAG, "Batch rejected: HTTP " + response.code());
+                    return;
+                }
+            }
+        } catch (IOException | JSONException e) {
+            // Stays queued for the next flush
+            android.util.Log.w(TAG, "Batch failed: " + e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            // An episode updated while the batch was in flight keeps its newer position
+            for (JSONObject sent : batch) {
+                String key = sent.optString("seriesId") + "\u0000" + sent.optString("videoFile");
+                if (pending.get(key) == sent) {
+                    pending.remove(key);
+                    dirty = true;
+                }
+            }
+        }
+        persist();
+
+        // More than one batch was waiting, e.g. after a long outage
+        synchronized (this) {
+            if (!pending.isEmpty() && batch.size() == batchSize) {
+                flush();
+            }
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        try (FileInputStream in = new FileInputStream(file)) {
+            JSONArray array = new JSONArray(new String(CatalogCache.readFully(in), StandardCharsets.UTF_8));
+            synchronized (this) {
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject update = array.getJSONObject(i);
+                    pending.put(update.optString("seriesId") + "\u0000" + update.optString("videoFile"), update);
+                }
+            }
+        } catch (IOException | JSONException e) {
+            android.util.Log.w(TAG, "Discarding unreadable queue: " + e.getMessage());
+            file.delete();
+        }
+    }
+
+    // Runs on the executor; several enqueues in a row end up as one write
+    private void persist() {
+        String snapshot;
+        synchronized (this) {
+            if (!dirty) return;
+            dirty = false;
+            snapshot = new JSONArray(pending.values()).toString();
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(snapshot.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            android.util.Log.w(TAG, "Could not save queue: " + e.getMessage());
+            synchronized (this) {
+                dirty = true;
+            }
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+}
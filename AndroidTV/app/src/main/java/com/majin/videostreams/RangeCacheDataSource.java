@@ -0,0 +1,161 @@
+package com.majin.videostreams;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Lets the native player read the same VideoRangeCache segments the WebView and the
+// prefetcher fill. A read that starts inside a cached segment is served from disk and
+// continues from the network where the segment ends. Downloaded episodes are read
+// entirely from their local file.
+@OptIn(markerClass = UnstableApi.class)
+public class RangeCacheDataSource implements DataSource {
+    public static class Factory implements DataSource.Factory {
+        private final VideoRangeCache cache;
+        private final Mp4SeekIndex seekIndex;
+        private final OfflineDownloads offline;
+        private final DataSource.Factory upstreamFactory;
+
+        public Factory(VideoRangeCache cache, Mp4SeekIndex seekIndex, OfflineDownloads offline,
+                       DataSource.Factory upstreamFactory) {
+            this.cache = cache;
+            this.seekIndex = seekIndex;
+            this.offline = offline;
+            this.upstreamFactory = upstreamFactory;
+        }
+
+        @Override
+        public DataSource createDataSource() {
+            return new RangeCacheDataSource(cache, seekIndex, offline, upstreamFactory.createDataSource());
+        }
+    }
+
+    private final VideoRangeCache cache;
+    private final Mp4SeekIndex seekIndex;
+    private final OfflineDownloads offline;
+    private final DataSource upstream;
+
+    private DataSpec dataSpec;
+    private String url;
+    private InputStream cached;
+    private boolean upstreamOpen = false;
+    private long position;
+    private long bytesRemaining;
+
+    public RangeCacheDataSource(VideoRangeCache cache, Mp4SeekIndex seekIndex, OfflineDownloads offline,
+                                DataSource upstream) {
+        this.cache = cache;
+        this.seekIndex = seekIndex;
+        this.offline = offline;
+        this.upstream = upstream;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        url = dataSpec.uri.toString();
+        position = dataSpec.position;
+
+        File local = offline.getCompletedFile(url);
+        if (local != null && position < local.length()) {
+            long toEnd = local.length() - position;
+            bytesRemaining = dataSpec.length != C.LENGTH_UNSET ? Math.min(dataSpec.length, toEnd) : toEnd;
+            cached = new OfflineDownloads.RangeInputStream(local, position, bytesRemaining);
+            return bytesRemaining;
+        }
+
+        if (!cache.contains(url, position)) {
+            // The extractor jumping to a trailing moov; the seek index may be fetching it
+            seekIndex.awaitHeader(url, position);
+        }
+        VideoRangeCache.Hit hit = cache.get(url, position);
+        if (hit == null) {
+            upstreamOpen = true;
+            bytesRemaining = upstream.open(dataSpec);
+            return bytesRemaining;
+        }
+
+        cached = hit.data;
+        long toEnd = hit.total - position;
+        bytesRemaining = dataSpec.length != C.LENGTH_UNSET ? Math.min(dataSpec.length, toEnd) : toEnd;
+        return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        if (bytesRemaining == 0) return C.RESULT_END_OF_INPUT;
+        int toRead = bytesRemaining == C.LENGTH_UNSET ? length : (int) Math.min(length, bytesRemaining);
+
+        if (cached != null) {
+            int read = cached.read(buffer, offset, toRead);
+            if (read > 0) {
+                advance(read);
+                PlaybackTelemetry.recordVideoBytes(url, true, read);
+                return read;
+            }
+            // Segment exhausted - pick up from the network at the same offset
+            cached.close();
+            cached = null;
+            upstream.open(dataSpec.subrange(position - dataSpec.position));
+            upstreamOpen = true;
+        }
+
+        int read = upstream.read(buffer, offset, toRead);
+        if (read > 0) {
+            advance(read);
+            PlaybackTelemetry.recordVideoBytes(url, false, read);
+        }
+        return read;
+    }
+
+    private void advance(int read) {
+        position += read;
+        if (bytesRemaining != C.LENGTH_UNSET) {
+            bytesRemaining -= read;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return upstreamOpen ? upstream.getUri() : dataSpec != null ? dataSpec.uri : null;
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return upstreamOpen ? upstream.getResponseHeaders() : Collections.emptyMap();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (cached != null) {
+                cached.close();
+            }
+            if (upstreamOpen) {
+                upstream.close();
+            }
+        } finally {
+            cached = null;
+            upstreamOpen = false;
+            dataSpec = null;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.majin.videostreams;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Recovers from network and tunnel outages. Retries use full-jitter exponential backoff;
+// after repeated failures a circuit breaker stops reloading the page and probes the
+// site cheaply until it answers. A returning network triggers an immediate attempt.
+// When the page itself is still alive, recovery notifies it instead of reloading so
+// the grid and player keep their state.
+public class ReconnectManager {
+    public interface Callbacks {
+        // The main document never loaded - it has to be fetched again
+        void reloadSite();
+
+        // The page is intact; only its in-flight requests need a nudge
+        void onReconnected();
+    }
+
+    private enum State { HEALTHY, RETRYING, OPEN, PROBING }
+
+    private final Context context;
+    private final String siteUrl;
+    private final Callbacks callbacks;
+    private final HttpStack httpStack;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int breakerThreshold;
+    private final long probeIntervalMs;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService prober = Executors.newSingleThreadExecutor();
+    private final Random random = new Random();
+
+    private State state = State.HEALTHY;
+    private int consecutiveFailures = 0;
+    private int failedProbes = 0;
+    private boolean pageAlive = false;
+    private boolean networkAvailable = true;
+    private boolean outageDuringPage = false;
+    private ConnectivityManager.NetworkCallback networkCallback;
+
+    private final Runnable attempt = this::attemptRecovery;
+    private final Runnable probe = this::probe;
+
+    public ReconnectManager(Context context, String siteUrl, Callbacks callbacks,
+                            long baseDelayMs, long maxDelayMs, int breakerThreshold, long probeIntervalMs) {
+        this.context = context.getApplicationContext();
+        this.siteUrl = siteUrl;
+        this.callbacks = callbacks;
+        this.httpStack = HttpStack.getShared(context);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.breakerThreshold = breakerThreshold;
+        this.probeIntervalMs = probeIntervalMs;
+    }
+
+    public void start() {
+        ConnectivityManager connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity == null) return;
+
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                handler.post(() -> onNetworkAvailable());
+            }
+
+            @Override
+            public void onLost(Network network) {
+                handler.post(() -> onNetworkLost());
+            }
+        };
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            connectivity.registerDefaultNetworkCallback(networkCallback);
+        } else {
+            connectivity.registerNetworkCallback(new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build(), networkCallback);
+        }
+    }
+
+    public void stop() {
+        handler.removeCallbacks(attempt);
+        handler.removeCallbacks(probe);
+        if (networkCallback != null) {
+            ConnectivityManager connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            try {
+                connectivity.unregisterNetworkCallback(networkCallback);
+            } catch (IllegalArgumentException e) {
+                // Already unregistered
+            }
+            networkCallback = null;
+        }
+        prober.shutdownNow();
+    }
+
+    public void onPageLoaded() {
+        pageAlive = true;
+        outageDuringPage = false;
+        reset();
+    }
+
+    // The main document failed to load
+    public void onMainFrameFailed() {
+        pageAlive = false;
+        consecutiveFailures++;
+        if (!networkAvailable) {
+            // Nothing to do until the network comes back
+            state = State.RETRYING;
+            return;
+        }
+        if (consecutiveFailures >= breakerThreshold) {
+            openBreaker();
+        } else {
+            state = State.RETRYING;
+            schedule(attempt, backoffDelay(consecutiveFailures));
+        }
+    }
+
+    private void onNetworkAvailable() {
+        boolean wasDown = !networkAvailable;
+        networkAvailable = true;
+        httpStack.onNetworkChanged();
+        if (state != State.HEALTHY || (wasDown && outageDuringPage)) {
+            // Skip whatever backoff was pending - the likely cause just went away
+            failedProbes = 0;
+            handler.removeCallbacks(probe);
+            schedule(attempt, 0);
+        }
+    }
+
+    private void onNetworkLost() {
+        networkAvailable = false;
+        if (pageAlive) {
+            outageDuringPage = true;
+        }
+        handler.removeCallbacks(attempt);
+        handler.removeCallbacks(probe);
+    }
+
+    private void attemptRecovery() {
+        if (!networkAvailable) return;
+        if (pageAlive) {
+            outageDuringPage = false;
+            reset();
+            callbacks.onReconnected();
+        } else {
+            callbacks.reloadSite();
+        }
+    }
+
+    private void openBreaker() {
+        state = State.OPEN;
+        schedule(probe, jitter(Math.min(maxDelayMs, probeIntervalMs * (1L << Math.min(failedProbes, 4)))));
+    }
+
+    // Cheap HEAD request instead of a full page load while the tunnel is down
+    private void probe() {
+        if (!networkAvailable) return;
+        state = State.PROBING;
+        prober.execute(() -> {
+            boolean reachable = isSiteReachable();
+            handler.post(() -> {
+                if (state != State.PROBING) return;
+                if (reachable) {
+                    failedProbes = 0;
+                    state = State.RETRYING;
+                    attemptRecovery();
+                } else {
+                    failedProbes++;
+                    openBreaker();
+                }
+            });
+        });
+    }
+
+    private boolean isSiteReachable() {
+        // Cloudflare answers 502/530 when the tunnel is down
+        return httpStack.preconnect(siteUrl);
+    }
+
+    private void reset() {
+        state = State.HEALTHY;
+        consecutiveFailures = 0;
+        failedProbes = 0;
+        handler.removeCallbacks(attempt);
+        handler.removeCallbacks(probe);
+    }
+
+    private void schedule(Runnable task, long delayMs) {
+        handler.removeCallbacks(task);
+        handler.postDelayed(task, delayMs);
+    }
+
+    long backoffDelay(int failures) {
+        long cap = Math.min(maxDelayMs, baseDelayMs * (1L << Math.min(failures - 1, 16)));
+        return jitter(cap);
+    }
+
+    // Full jitter keeps a houseful of TVs from hammering the tunnel in lockstep
+    private long jitter(long cap) {
+        return Math.max(250, (long) (random.nextDouble() * cap));
+    }
+
+    public boolean isPageAlive() {
+        return pageAlive;
+    }
+
+    public String getStateName() {
+        return state.name();
+    }
+}
@@ -0,0 +1,143 @@
+package com.majin.videostreams;
+
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.webkit.WebView;
+import androidx.webkit.WebMessageCompat;
+import androidx.webkit.WebMessagePortCompat;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+import java.util.Arrays;
+
+// Delivers remote-control keys to the page over a WebMessagePort instead of compiling
+// a fresh evaluateJavascript string per press. Every press, auto-repeats included, is
+// posted straight away (each one moves focus a step), and the page acknowledges each
+// message after the next paint so key-to-focus latency can be tracked per device. The
+// page pushes its playback and overlay state back over the same port.
+public class RemoteInputChannel {
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int MAX_IN_FLIGHT = 64;
+
+    private final ScriptInjector scriptInjector;
+    private final PageState pageState;
+    private final Uri targetOrigin;
+
+    private WebMessagePortCompat nativePort;
+    private int sequence = 0;
+
+    // Send times indexed by sequence number modulo MAX_IN_FLIGHT
+    private final long[] sentAt = new long[MAX_IN_FLIGHT];
+    private final int[] sentSequence = new int[MAX_IN_FLIGHT];
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount = 0;
+    private long keysReceived = 0;
+    private long messagesSent = 0;
+    private long fallbackEvaluations = 0;
+    private long stateMessages = 0;
+
+    public RemoteInputChannel(ScriptInjector scriptInjector, PageState pageState, String siteUrl) {
+        this.scriptInjector = scriptInjector;
+        this.pageState = pageState;
+        this.targetOrigin = Uri.parse(siteUrl);
+        Arrays.fill(sentSequence, -1);
+    }
+
+    public static boolean isSupported() {
+        return WebViewFeature.isFeatureSupported(WebViewFeature.CREATE_WEB_MESSAGE_CHANNEL) &&
+            WebViewFeature.isFeatureSupported(WebViewFeature.POST_WEB_MESSAGE) &&
+            WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_POST_MESSAGE) &&
+            WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_SET_MESSAGE_CALLBACK);
+    }
+
+    // Called (on the UI thread) when the page's input script asks for a port; each new
+    // document gets a fresh channel
+    public void connect(WebView webView) {
+        disconnect();
+        if (!isSupported()) return;
+
+        WebMessagePortCompat[] ports = WebViewCompat.createWebMessageChannel(webView);
+        nativePort = ports[0];
+        nativePort.setWebMessageCallback(new WebMessagePortCompat.WebMessageCallbackCompat() {
+            @Override
+            public void onMessage(WebMessagePortCompat port, WebMessageCompat message) {
+                onPageMessage(message.getData());
+            }
+        });
+        WebViewCompat.postWebMessage(webView,
+            new WebMessageCompat("majin-input-port", new WebMessagePortCompat[] { ports[1] }), targetOrigin);
+    }
+
+    public void disconnect() {
+        if (nativePort != null) {
+            if (WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_CLOSE)) {
+                nativePort.close();
+            }
+            nativePort = null;
+        }
+    }
+
+    // repeatCount is the KeyEvent's: 0 for the first press, counting up while held
+    public void sendKey(WebView webView, int keyCode, int repeatCount) {
+        keysReceived++;
+        if (nativePort == null) {
+            // Page has not asked for a port (old WebView or script not loaded yet)
+            fallbackEvaluations++;
+            scriptInjector.evaluate(webView,
+                "window.__majinDispatchKey && window.__majinDispatchKey(" + keyCode + ", " + repeatCount + ");", null);
+            return;
+        }
+
+        int seq = sequence++;
+        int slot = seq % MAX_IN_FLIGHT;
+        sentAt[slot] = SystemClock.uptimeMillis();
+        sentSequence[slot] = seq;
+        nativePort.postMessage(new WebMessageCompat("k:" + keyCode + ":" + repeatCount + ":" + seq));
+        messagesSent++;
+    }
+
+    private void onPageMessage(String data) {
+        if (data == null) return;
+        if (data.startsWith("s:")) {
+            stateMessages++;
+            pageState.apply(data.substring(2));
+            return;
+        }
+        if (!data.startsWith("a:")) return;
+        try {
+            int seq = Integer.parseInt(data.substring(2));
+            int slot = seq % MAX_IN_FLIGHT;
+            if (sentSequence[slot] != seq) return; // Too old, slot reused
+            recordLatency(SystemClock.uptimeMillis() - sentAt[slot]);
+            sentSequence[slot] = -1;
+        } catch (NumberFormatException e) {
+            // Ignore malformed acks
+        }
+    }
+
+    private void recordLatency(long latencyMs) {
+        latencies[latencyCount % LATENCY_SAMPLES] = latencyMs;
+        latencyCount++;
+    }
+
+    private long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    public String getStatsJson() {
+        long[] samples = Arrays.copyOf(latencies, Math.min(latencyCount, LATENCY_SAMPLES));
+        Arrays.sort(samples);
+        return "{\"device\":\"" + Build.MANUFACTURER.replace("\"", "") + " " + Build.MODEL.replace("\"", "") + "\"" +
+            ",\"connected\":" + (nativePort != null) +
+            ",\"keys\":" + keysReceived +
+            ",\"messages\":" + messagesSent +
+            ",\"fallbackEvaluations\":" + fallbackEvaluations +
+            ",\"stateMessages\":" + stateMessages +
+            ",\"latencySamples\":" + samples.length +
+            ",\"latencyP50Ms\":" + percentile(samples, 0.5) +
+            ",\"latencyP95Ms\":" + percentile(samples, 0.95) +
+            ",\"latencyMaxMs\":" + (samples.length == 0 ? 0 : samples[samples.length - 1]) + "}";
+    }
+}
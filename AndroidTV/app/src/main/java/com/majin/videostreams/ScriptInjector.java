@@ -0,0 +1,143 @@
+package com.majin.videostreams;
+
+import android.os.SystemClock;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Owns every script the app puts into the page. Scripts are registered once and run
+// at document start where the WebView supports it, otherwise once per document after
+// load. A version guard inside each script makes repeated injection a no-op.
+public class ScriptInjector {
+    private static final String TAG = "ScriptInjector";
+
+    private static class Script {
+        final String id;
+        final int version;
+        final String source;
+        final boolean needsDom;
+
+        Script(String id, int version, String source, boolean needsDom) {
+            this.id = id;
+            this.version = version;
+            this.source = source;
+            this.needsDom = needsDom;
+        }
+    }
+
+    private final List<Script> scripts = new ArrayList<>();
+    private final Set<String> allowedOrigins;
+    private boolean documentStartActive = false;
+
+    // Per page load
+    private final AtomicInteger evaluations = new AtomicInteger();
+    private final AtomicInteger injected = new AtomicInteger();
+    private final AtomicInteger deduplicated = new AtomicInteger();
+    private final AtomicLong evaluationTimeMs = new AtomicLong();
+    private String currentPage;
+
+    public ScriptInjector(String siteOrigin) {
+        this.allowedOrigins = Collections.singleton(siteOrigin);
+    }
+
+    // Bump the version whenever a script's source changes so old documents pick it up
+    public synchronized void register(String id, int version, String source) {
+        register(id, version, source, true);
+    }
+
+    // Scripts that only touch window state can skip waiting for the DOM
+    public synchronized void register(String id, int version, String source, boolean needsDom) {
+        scripts.add(new Script(id, version, source, needsDom));
+    }
+
+    // Call once per WebView instance, before the first loadUrl
+    public synchronized void attach(WebView webView) {
+        documentStartActive = WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT);
+        if (!documentStartActive) return;
+
+        for (Script script : scripts) {
+            WebViewCompat.addDocumentStartJavaScript(webView, wrap(script), allowedOrigins);
+        }
+    }
+
+    public void onPageStarted(String url) {
+        if (currentPage != null && BuildConfig.ENABLE_WEBVIEW_DEBUG) {
+            android.util.Log.d(TAG, "Page " + currentPage + ": " + getStatsJson());
+        }
+        currentPage = url;
+        evaluations.set(0);
+        injected.set(0);
+        deduplicated.set(0);
+        evaluationTimeMs.set(0);
+    }
+
+    // Fallback path for WebViews without document-start support
+    public synchronized void onPageFinished(WebView view) {
+        if (documentStartActive) return;
+        for (Script script : scripts) {
+            evaluate(view, wrap(script), result -> {
+                if ("true".equals(result)) {
+                    injected.incrementAndGet();
+                } else {
+                    deduplicated.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    // All native-to-page JavaScript goes through here so each page load's cost is counted
+    public void evaluate(WebView view, String source, ValueCallback<String> callback) {
+        evaluations.incrementAndGet();
+        final long start = SystemClock.uptimeMillis();
+        view.evaluateJavascript(source, result -> {
+            evaluationTimeMs.addAndGet(SystemClock.uptimeMillis() - start);
+            if (callback != null) {
+                callback.onReceiveValue(result);
+            }
+        });
+    }
+
+    public boolean isDocumentStartActive() {
+        return documentStartActive;
+    }
+
+    public String getStatsJson() {
+        return "{\"documentStart\":" + documentStartActive +
+            ",\"registeredScripts\":" + scripts.size() +
+            ",\"evaluations\":" + evaluations.get() +
+            ",\"injected\":" + injected.get() +
+            ",\"deduplicated\":" + deduplicated.get() +
+            ",\"evaluationTimeMs\":" + evaluationTimeMs.get() + "}";
+    }
+
+    // Guarded so a document runs each script version once, and deferred until the DOM
+    // exists because document-start scripts run before <head> is parsed. The page can
+    // read per-script run times from window.__majinScriptStats.
+    private static String wrap(Script script) {
+        String id = "'" + script.id.replace("'", "") + "'";
+        return "(function() {" +
+            "  var registry = window.__majinScripts = window.__majinScripts || {};" +
+            "  if (registry[" + id + "] === " + script.version + ") return false;" +
+            "  registry[" + id + "] = " + script.version + ";" +
+            "  var run = function() {" +
+            "    var start = performance.now();" +
+            "    try {\n" + script.source + "\n} catch (e) { console.error('Injected script " + script.id + " failed', e); }" +
+            "    var stats = window.__majinScriptStats = window.__majinScriptStats || {};" +
+            "    stats[" + id + "] = performance.now() - start;" +
+            "  };" +
+            "  if (" + script.needsDom + " && document.readyState === 'loading') {" +
+            "    document.addEventListener('DOMContentLoaded', run, { once: true });" +
+            "  } else {" +
+            "    run();" +
+            "  }" +
+            "  return true;" +
+            "})();";
+    }
+}
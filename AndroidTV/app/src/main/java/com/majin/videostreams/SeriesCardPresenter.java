@@ -0,0 +1,90 @@
+package com.majin.videostreams;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.ViewGroup;
+import androidx.leanback.widget.ImageCardView;
+import androidx.leanback.widget.Presenter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Poster card for one series. Views are recycled by the rows; posters come from the
+// shared PosterPipeline tiers off the main thread and are dropped if the card was
+// rebound to another series while they loaded.
+public class SeriesCardPresenter extends Presenter {
+    private static final int POSTER_THREADS = 3;
+
+    private static class CardHolder extends Presenter.ViewHolder {
+        volatile CatalogPager.SeriesItem boundItem;
+
+        CardHolder(ImageCardView card) {
+            super(card);
+        }
+    }
+
+    private final PosterPipeline posterPipeline;
+    private final String siteUrl;
+    private final String userAgent;
+    private final int cardWidth;
+    private final int cardHeight;
+    private final ExecutorService posterExecutor = Executors.newFixedThreadPool(POSTER_THREADS);
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    public SeriesCardPresenter(PosterPipeline posterPipeline, String siteUrl, String userAgent,
+                               int cardWidth, int cardHeight) {
+        this.posterPipeline = posterPipeline;
+        this.siteUrl = siteUrl;
+        this.userAgent = userAgent;
+        this.cardWidth = cardWidth;
+        this.cardHeight = cardHeight;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent) {
+        ImageCardView card = new ImageCardView(parent.getContext());
+        card.setFocusable(true);
+        card.setFocusableInTouchMode(true);
+        card.setMainImageDimensions(cardWidth, cardHeight);
+        return new CardHolder(card);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder viewHolder, Object item) {
+        CardHolder holder = (CardHolder) viewHolder;
+        CatalogPager.SeriesItem series = (CatalogPager.SeriesItem) item;
+        ImageCardView card = (ImageCardView) holder.view;
+        holder.boundItem = series;
+        card.setTitleText(series.title);
+        card.setContentText(series.videoCount == 1 ? "1 video" : series.videoCount + " videos");
+        card.setMainImage(null);
+        if (series.thumbnail == null) return;
+
+        posterExecutor.execute(() -> {
+            // Scrolled past before its turn came
+            if (holder.boundItem != series) return;
+            byte[] data = posterPipeline.getThumbnail(siteUrl + series.thumbnail, userAgent);
+            if (data == null) return;
+            Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+            if (bitmap == null) return;
+            handler.post(() -> {
+                if (holder.boundItem == series) {
+                    card.setMainImage(new BitmapDrawable(card.getResources(), bitmap));
+                }
+            });
+        });
+    }
+
+    @Override
+    public void onUnbindViewHolder(ViewHolder viewHolder) {
+        CardHolder holder = (CardHolder) viewHolder;
+        holder.boundItem = null;
+        ((ImageCardView) holder.view).setMainImage(null);
+    }
+
+    public void shutdown() {
+        posterExecutor.shutdownNow();
+    }
+}
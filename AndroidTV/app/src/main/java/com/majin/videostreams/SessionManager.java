@@ -0,0 +1,241 @@
+package com.majin.videostreams;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.webkit.CookieManager;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Native owner of the auth token. On launch it checks the stored token with a cheap
+// /api/session call (skipped entirely if it was validated recently), or logs in with the
+// saved or device credentials, in parallel with the page load. The page then receives a
+// ready-made session before its own scripts run instead of re-validating it by
+// downloading the catalog.
+public class SessionManager {
+    private static final String KEY_TOKEN = "session_token";
+    private static final String KEY_USER = "session_user";
+    private static final String KEY_EXPIRES_AT = "session_expires_at";
+    private static final String KEY_VALIDATED_AT = "session_validated_at";
+    private static final long EXPIRY_MARGIN_MS = 5 * 60 * 1000;
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    public static class Session {
+        public final String token;
+        public final String username;
+        public final long expiresAt;
+        public final boolean validated;
+
+        Session(String token, String username, long expiresAt, boolean validated) {
+            this.token = token;
+            this.username = username;
+            this.expiresAt = expiresAt;
+            this.validated = validated;
+        }
+
+        String toJson() {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("token", token);
+                json.put("username", username);
+                json.put("expiresAt", expiresAt);
+                json.put("validated", validated);
+                return json.toString();
+            } catch (JSONException e) {
+                return "";
+            }
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final String siteUrl;
+    private final String deviceUsername;
+    private final String defaultPassword;
+    private final long validationTtlMs;
+    private final OkHttpClient validateClient;
+    private final OkHttpClient loginClient;
+    private final CountDownLatch prepared = new CountDownLatch(1);
+    private volatile Session session;
+
+    public SessionManager(SharedPreferences prefs, String siteUrl, HttpStack httpStack, String deviceUsername,
+                          String defaultPassword, long validationTtlMs) {
+        this.prefs = prefs;
+        this.siteUrl = siteUrl;
+        this.deviceUsername = deviceUsername;
+        this.defaultPassword = defaultPassword;
+        this.validationTtlMs = validationTtlMs;
+        this.validateClient = httpStack.client(5000, 5000);
+        this.loginClient = httpStack.client(10000, 10000);
+    }
+
+    // Same credentials and store the app uses, for work that runs without MainActivity
+    public static SessionManager create(Context context, String siteUrl) {
+        String deviceId = android.provider.Settings.Secure.getString(context.getContentResolver(), android.provider.Settings.Secure.ANDROID_ID);
+        String deviceUsername = "TV-" + deviceId.substring(Math.max(0, deviceId.length() - 8));
+        return new SessionManager(context.getSharedPreferences("VideoHostAuth", Context.MODE_PRIVATE),
+            siteUrl, HttpStack.getShared(context), deviceUsername, context.getString(R.string.default_tv_password),
+            context.getResources().getInteger(R.integer.session_validation_ttl));
+    }
+
+    // Runs on a background thread during startup
+    public void prepare() {
+        try {
+            Session stored = loadStored();
+            if (stored != null) {
+                long now = System.currentTimeMillis();
+                long validatedAt = prefs.getLong(KEY_VALIDATED_AT, 0);
+                if (now - validatedAt < validationTtlMs) {
+                    session = stored;
+                    return;
+                }
+
+                int status = validate(stored.token);
+                if (status == 200) {
+                    prefs.edit().putLong(KEY_VALIDATED_AT, now).apply();
+                    session = new Session(stored.token, stored.username, stored.expiresAt, true);
+                    return;
+                }
+                if (status != 401 && status != 403) {
+                    // Offline, or the tunnel is failing (502/530) - only the server rejecting
+                    // the token says it is bad, so keep it unvalidated and let the page try it
+                    session = new Session(stored.token, stored.username, stored.expiresAt, false);
+                    return;
+                }
+                clearStoredSession();
+            }
+
+            session = login();
+        } finally {
+            prepared.countDown();
+        }
+    }
+
+    // Blocks a JavaScript-bridge thread until prepare() finishes or the timeout passes
+    public Session awaitSession(long timeoutMs) {
+        try {
+            prepared.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return session;
+    }
+
+    public String getToken() {
+        Session current = session;
+        return current != null ? current.token : null;
+    }
+
+    // The page logged in by itself (manual or QR login); adopt its token
+    public void adopt(String token, String username) {
+        long expiresAt = expiryOf(token);
+        if (expiresAt <= System.currentTimeMillis()) return;
+        store(token, username, expiresAt);
+        session = new Session(token, username, expiresAt, true);
+    }
+
+    public void clear() {
+        session = null;
+        clearStoredSession();
+    }
+
+    private Session loadStored() {
+        String token = prefs.getString(KEY_TOKEN, null);
+        String username = prefs.getString(KEY_USER, null);
+        long expiresAt = prefs.getLong(KEY_EXPIRES_AT, 0);
+        if (token == null || username == null) return null;
+        if (expiresAt - EXPIRY_MARGIN_MS <= System.currentTimeMillis()) {
+            clearStoredSession();
+            return null;
+        }
+        return new Session(token, username, expiresAt, false);
+    }
+
+    // Returns the HTTP status, or -1 if the server could not be reached
+    private int validate(String token) {
+        Request request = new Request.Builder()
+            .url(siteUrl + "/api/session")
+            .header("Authorization", "Bearer " + token)
+            .build();
+        try (Response response = validateClient.newCall(request).execute()) {
+            return response.code();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private Session login() {
+        String savedUsername = prefs.getString("username", "");
+        String savedPassword = prefs.getString("password", "");
+        boolean hasSaved = !savedUsername.isEmpty() && !savedPassword.isEmpty();
+        String username = hasSaved ? savedUsername : deviceUsername;
+        String password = hasSaved ? savedPassword : defaultPassword;
+
+        try {
+            JSONObject body = new JSONObject();
+            body.put("username", username);
+            body.put("password", password);
+            Request request = new Request.Builder()
+                .url(siteUrl + "/api/login")
+                .post(RequestBody.create(body.toString().getBytes(StandardCharsets.UTF_8), JSON))
+                .build();
+
+            JSONObject response;
+            try (Response reply = loginClient.newCall(request).execute()) {
+                if (reply.code() != 200) return null;
+                response = new JSONObject(reply.body().string());
+            }
+            String token = response.getString("token");
+            String loggedInAs = response.optString("username", username);
+            long expiresAt = expiryOf(token);
+            store(token, loggedInAs, expiresAt);
+            return new Session(token, loggedInAs, expiresAt, true);
+        } catch (IOException | JSONException e) {
+            android.util.Log.w("SessionManager", "Native login failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void store(String token, String username, long expiresAt) {
+        prefs.edit()
+            .putString(KEY_TOKEN, token)
+            .putString(KEY_USER, username)
+            .putLong(KEY_EXPIRES_AT, expiresAt)
+            .putLong(KEY_VALIDATED_AT, System.currentTimeMillis())
+            .apply();
+
+        // Same cookie the server sets on login, for requests that do not send the header
+        long maxAgeSeconds = Math.max(0, (expiresAt - System.currentTimeMillis()) / 1000);
+        CookieManager.getInstance().setCookie(siteUrl,
+            "authToken=" + token + "; Path=/; Max-Age=" + maxAgeSeconds + "; SameSite=Lax");
+    }
+
+    private void clearStoredSession() {
+        prefs.edit()
+            .remove(KEY_TOKEN)
+            .remove(KEY_USER)
+            .remove(KEY_EXPIRES_AT)
+            .remove(KEY_VALIDATED_AT)
+            .apply();
+    }
+
+    // Reads exp from the JWT payload; the server issues 24 h tokens
+    static long expiryOf(String token) {
+        try {
+            String[] parts = token.split("\\.");
+            if (parts.length < 2) return 0;
+            byte[] payload = Base64.decode(parts[1], Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+            return new JSONObject(new String(payload, StandardCharsets.UTF_8)).getLong("exp") * 1000;
+        } catch (IllegalArgumentException | JSONException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.majin.videostreams;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Records where launch time goes: one-shot phase marks on the main timeline plus
+// spans for the work that runs in parallel with it. Dumped to logcat on demand.
+public final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+
+    // Class load is the best we can do for process start before API 24
+    private static final long FALLBACK_PROCESS_START = SystemClock.elapsedRealtime();
+
+    private static final Map<String, Long> marks = new LinkedHashMap<>();
+    private static final List<String[]> spans = new ArrayList<>();
+
+    private StartupTrace() {
+    }
+
+    public static long processStart() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Process.getStartElapsedRealtime();
+        }
+        return FALLBACK_PROCESS_START;
+    }
+
+    // Only the first occurrence of a phase counts; later navigations do not move it
+    public static synchronized void mark(String phase) {
+        if (!marks.containsKey(phase)) {
+            marks.put(phase, SystemClock.elapsedRealtime());
+        }
+    }
+
+    public static long begin() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    public static synchronized void endSpan(String name, long beginTime) {
+        long now = SystemClock.elapsedRealtime();
+        spans.add(new String[] { name, String.valueOf(beginTime - processStart()), String.valueOf(now - beginTime),
+            Thread.currentThread().getName() });
+    }
+
+    public static synchronized String toJson() {
+        long start = processStart();
+        StringBuilder sb = new StringBuilder("{\"phases\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : marks.entrySet()) {
+            if (!first) sb.append(',');
+            sb.append('"').append(entry.getKey()).append("\":").append(entry.getValue() - start);
+            first = false;
+        }
+        sb.append("},\"spans\":[");
+        for (int i = 0; i < spans.size(); i++) {
+            String[] span = spans.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"name\":\"").append(span[0])
+                .append("\",\"startMs\":").append(span[1])
+                .append(",\"durationMs\":").append(span[2])
+                .append(",\"thread\":\"").append(span[3]).append("\"}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    public static synchronized void dump() {
+        long start = processStart();
+        long previous = start;
+        android.util.Log.i(TAG, "process_start +0ms");
+        for (Map.Entry<String, Long> entry : marks.entrySet()) {
+            android.util.Log.i(TAG, entry.getKey() + " +" + (entry.getValue() - start) + "ms (phase " +
+                (entry.getValue() - previous) + "ms)");
+            previous = entry.getValue();
+        }
+        for (String[] span : spans) {
+            android.util.Log.i(TAG, "span " + span[0] + " at +" + span[1] + "ms took " + span[2] + "ms on " + span[3]);
+        }
+        android.util.Log.i(TAG, toJson());
+    }
+}
@@ -0,0 +1,119 @@
+package com.majin.videostreams;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Periodically posts PlaybackTelemetry events to /api/telemetry as gzip-compressed
+// batches tagged with the device model, so slow boxes and slow files can be found
+// from the server side.
+public class TelemetryUploader {
+    private static final String TAG = "TelemetryUploader";
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private final String siteUrl;
+    private final SessionManager sessionManager;
+    private final OkHttpClient client;
+    private final long intervalMs;
+    private final int batchSize;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Runnable periodicFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+            handler.postDelayed(this, intervalMs);
+        }
+    };
+
+    public TelemetryUploader(String siteUrl, SessionManager sessionManager, HttpStack httpStack,
+                             long intervalMs, int batchSize) {
+        this.siteUrl = siteUrl;
+        this.sessionManager = sessionManager;
+        this.client = httpStack.client(10000, 10000);
+        this.intervalMs = intervalMs;
+        this.batchSize = batchSize;
+    }
+
+    public void start() {
+        handler.removeCallbacks(periodicFlush);
+        handler.postDelayed(periodicFlush, intervalMs);
+    }
+
+    public void stop() {
+        handler.removeCallbacks(periodicFlush);
+        executor.shutdown();
+    }
+
+    public void flush() {
+        if (executor.isShutdown()) return;
+        executor.execute(this::upload);
+    }
+
+    private void upload() {
+        String token = sessionManager.getToken();
+        if (token == null) return;
+
+        List<String> batch = PlaybackTelemetry.drain(batchSize);
+        if (batch.isEmpty()) return;
+        int dropped = PlaybackTelemetry.takeDroppedCount();
+
+        int status = -1;
+        try {
+            Request request = new Request.Builder()
+                .url(siteUrl + "/api/telemetry")
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Encoding", "gzip")
+                .post(RequestBody.create(gzip(buildBody(batch, dropped)), JSON))
+                .build();
+            try (Response response = client.newCall(request).execute()) {
+                status = response.code();
+            }
+        } catch (IOException | JSONException e) {
+            android.util.Log.w(TAG, "Upload failed: " + e.getMessage());
+        }
+
+        // 4xx other than auth means the batch itself was rejected; retrying will not help
+        if (status == -1 || status >= 500 || status == 401 || status == 403) {
+            PlaybackTelemetry.requeue(batch, dropped);
+        }
+    }
+
+    private static String buildBody(List<String> batch, int dropped) throws JSONException {
+        JSONArray events = new JSONArray();
+        for (String event : batch) {
+            events.put(new JSONObject(event));
+        }
+        JSONObject body = new JSONObject();
+        body.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        body.put("sdk", Build.VERSION.SDK_INT);
+        body.put("appVersion", BuildConfig.VERSION_NAME);
+        body.put("droppedEvents", dropped);
+        body.put("events", events);
+        return body.toString();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return buffer.toByteArray();
+    }
+}
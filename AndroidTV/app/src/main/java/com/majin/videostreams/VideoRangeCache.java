@@ -0,0 +1,358 @@
+package com.majin.videostreams;
+
+import android.content.Context;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Size-limited on-disk cache of fetched video byte ranges, evicted least-recently-used first.
+// Each segment is one file named <url hash>_<start>_<end>_<total>.seg so the index can be
+// rebuilt from a directory listing after a restart; the upstream Content-Type of a URL is
+// kept beside its segments in <url hash>.type.
+public class VideoRangeCache {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TYPE_SUFFIX = ".type";
+
+    public static class Segment {
+        final String urlKey;
+        final long start;
+        final long end;
+        final long total;
+        final File file;
+
+        Segment(String urlKey, long start, long end, long total, File file) {
+            this.urlKey = urlKey;
+            this.start = start;
+            this.end = end;
+            this.total = total;
+            this.file = file;
+        }
+
+        long length() {
+            return end - start + 1;
+        }
+
+        boolean contains(long offset) {
+            return offset >= start && offset <= end;
+        }
+    }
+
+    // A cache hit, positioned at the requested offset and running to the end of the segment
+    public static class Hit {
+        public final long start;
+        public final long end;
+        public final long total;
+        public final InputStream data;
+        // Upstream Content-Type, or null if it was never seen
+        public final String contentType;
+
+        Hit(long start, long end, long total, InputStream data, String contentType) {
+            this.start = start;
+            this.end = end;
+            this.total = total;
+            this.data = data;
+            this.contentType = contentType;
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Segment> lru = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, List<Segment>> segmentsByUrl = new HashMap<>();
+    private final Map<String, String> contentTypes = new HashMap<>();
+    private long currentBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    private static VideoRangeCache shared;
+
+    // One cache per process so the WebView, the native player and the prefetcher share segments
+    public static synchronized VideoRangeCache getShared(Context context) {
+        if (shared == null) {
+            Context app = context.getApplicationContext();
+            shared = new VideoRangeCache(new File(app.getCacheDir(), "video-ranges"),
+                app.getResources().getInteger(R.integer.video_cache_max_mb) * 1024L * 1024L);
+        }
+        return shared;
+    }
+
+    public VideoRangeCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        loadIndex();
+    }
+
+    private void loadIndex() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        // Oldest access first so the rebuilt LRU order matches the one we had before the restart
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TYPE_SUFFIX)) {
+                String contentType = readType(file);
+                if (contentType != null) {
+                    contentTypes.put(name.substring(0, name.length() - TYPE_SUFFIX.length()), contentType);
+                }
+                continue;
+            }
+            if (!name.endsWith(SEGMENT_SUFFIX)) {
+                file.delete(); // Leftover temp file from an interrupted write
+                continue;
+            }
+            String[] parts = name.substring(0, name.length() - SEGMENT_SUFFIX.length()).split("_");
+            if (parts.length != 4) {
+                file.delete();
+                continue;
+            }
+            try {
+                Segment segment = new Segment(parts[0], Long.parseLong(parts[1]),
+                    Long.parseLong(parts[2]), Long.parseLong(parts[3]), file);
+                if (segment.length() != file.length()) {
+                    file.delete();
+                    continue;
+                }
+                index(segment);
+            } catch (NumberFormatException e) {
+                file.delete();
+            }
+        }
+        trimTo(maxBytes);
+        // Types whose segments are all gone
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TYPE_SUFFIX)) {
+                dropTypeIfUnused(name.substring(0, name.length() - TYPE_SUFFIX.length()));
+            }
+        }
+    }
+
+    private void index(Segment segment) {
+        lru.put(segment.file.getName(), segment);
+        List<Segment> list = segmentsByUrl.get(segment.urlKey);
+        if (list == null) {
+            list = new ArrayList<>();
+            segmentsByUrl.put(segment.urlKey, list);
+        }
+        list.add(segment);
+        currentBytes += segment.length();
+    }
+
+    private void unindex(Segment segment) {
+        lru.remove(segment.file.getName());
+        List<Segment> list = segmentsByUrl.get(segment.urlKey);
+        if (list != null) {
+            list.remove(segment);
+            if (list.isEmpty()) {
+                segmentsByUrl.remove(segment.urlKey);
+                dropTypeIfUnused(segment.urlKey);
+            }
+        }
+        currentBytes -= segment.length();
+    }
+
+    // Returns cached bytes starting at offset, or null on a miss
+    public Hit get(String url, long offset) {
+        Segment found = null;
+        String contentType;
+        synchronized (this) {
+            contentType = contentTypes.get(keyFor(url));
+            List<Segment> list = segmentsByUrl.get(keyFor(url));
+            if (list != null) {
+                for (Segment segment : list) {
+                    if (segment.contains(offset)) {
+                        found = segment;
+                        lru.get(segment.file.getName()); // Touch for LRU ordering
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (found == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            InputStream in = new FileInputStream(found.file);
+            long toSkip = offset - found.start;
+            while (toSkip > 0) {
+                long skipped = in.skip(toSkip);
+                if (skipped <= 0) throw new IOException("Short segment file");
+                toSkip -= skipped;
+            }
+            found.file.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            bytesServed.addAndGet(found.end - offset + 1);
+            return new Hit(offset, found.end, found.total, in, contentType);
+        } catch (IOException e) {
+            synchronized (this) {
+                unindex(found);
+            }
+            found.file.delete();
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    // Lookup without opening the segment or counting a hit or miss
+    public synchronized boolean contains(String url, long offset) {
+        List<Segment> list = segmentsByUrl.get(keyFor(url));
+        if (list == null) return false;
+        for (Segment segment : list) {
+            if (segment.contains(offset)) return true;
+        }
+        return false;
+    }
+
+    public void put(String url, long start, long total, byte[] data) {
+        put(url, start, total, data, null);
+    }
+
+    // contentType is the upstream Content-Type, handed back with every hit on this URL
+    public void put(String url, long start, long total, byte[] data, String contentType) {
+        if (data.length == 0 || data.length > maxBytes) return;
+
+        String urlKey = keyFor(url);
+        long end = start + data.length - 1;
+        File target = new File(directory, urlKey + "_" + start + "_" + end + "_" + total + SEGMENT_SUFFIX);
+        File temp = new File(directory, target.getName() + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+
+        synchronized (this) {
+            if (lru.containsKey(target.getName()) || !temp.renameTo(target)) {
+                temp.delete();
+                return;
+            }
+            index(new Segment(urlKey, start, end, total, target));
+            if (contentType != null && !contentType.equals(contentTypes.get(urlKey))) {
+                contentTypes.put(urlKey, contentType);
+                writeType(urlKey, contentType);
+            }
+            trimTo(maxBytes);
+        }
+    }
+
+    private void writeType(String urlKey, String contentType) {
+        File file = new File(directory, urlKey + TYPE_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contentType.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            file.delete();
+        }
+    }
+
+    private static String readType(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) Math.min(file.length(), 256)];
+            int length = 0;
+            int read;
+            while (length < data.length && (read = in.read(data, length, data.length - length)) > 0) {
+                length += read;
+            }
+            String contentType = new String(data, 0, length, StandardCharsets.UTF_8).trim();
+            return contentType.isEmpty() ? null : contentType;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void dropTypeIfUnused(String urlKey) {
+        if (segmentsByUrl.containsKey(urlKey)) return;
+        contentTypes.remove(urlKey);
+        new File(directory, urlKey + TYPE_SUFFIX).delete();
+    }
+
+    public synchronized void trimTo(long limitBytes) {
+        Iterator<Map.Entry<String, Segment>> it = lru.entrySet().iterator();
+        while (currentBytes > limitBytes && it.hasNext()) {
+            Segment segment = it.next().getValue();
+            it.remove();
+            List<Segment> list = segmentsByUrl.get(segment.urlKey);
+            if (list != null) {
+                list.remove(segment);
+                if (list.isEmpty()) {
+                    segmentsByUrl.remove(segment.urlKey);
+                    dropTypeIfUnused(segment.urlKey);
+                }
+            }
+            currentBytes -= segment.length();
+            segment.file.delete();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized long getSizeBytes() {
+        return currentBytes;
+    }
+
+    public String getStatsJson() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+        return "{\"hits\":" + hitCount +
+            ",\"misses\":" + missCount +
+            ",\"evictions\":" + evictions.get() +
+            ",\"hitRate\":" + (requests == 0 ? 0 : (double) hitCount / requests) +
+            ",\"bytesServed\":" + bytesServed.get() +
+            ",\"sizeBytes\":" + getSizeBytes() +
+            ",\"maxBytes\":" + maxBytes + "}";
+    }
+
+    static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
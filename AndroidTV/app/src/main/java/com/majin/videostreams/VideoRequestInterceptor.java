@@ -0,0 +1,247 @@
+package com.majin.videostreams;
+
+import android.net.Uri;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Serves ranged /videos requests from VideoRangeCache and fills it on a miss while the
+// WebView streams the response
+public class VideoRequestInterceptor {
+    private static final int MAX_TRACKED_URLS = 16;
+
+    static final Pattern RANGE_HEADER = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+    // Page request headers a native fetch passes on when it stands in for the WebView's own
+    static final String[] FORWARDED_HEADERS = { "Authorization", "User-Agent", "Accept", "Referer" };
+
+    private final VideoRangeCache cache;
+    private final Mp4SeekIndex seekIndex;
+    private final long maxSegmentBytes;
+    private final OkHttpClient client;
+    // Where the last response for each URL ended; a request anywhere else is a seek
+    private final Map<String, Long> nextOffsets = new HashMap<>();
+
+    public VideoRequestInterceptor(VideoRangeCache cache, Mp4SeekIndex seekIndex, HttpStack httpStack, long maxSegmentBytes) {
+        this.cache = cache;
+        this.seekIndex = seekIndex;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.client = httpStack.client(15000, 30000);
+    }
+
+    public static boolean isVideoUrl(Uri uri) {
+        String path = uri.getPath();
+        return path != null && path.startsWith("/videos/") && path.toLowerCase().matches(".*\\.(mp4|webm|ogg|mkv)$");
+    }
+
+    // Returns null to let the WebView load the request itself
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if (!"GET".equals(request.getMethod()) || !isVideoUrl(request.getUrl())) return null;
+
+        String range = header(request.getRequestHeaders(), "Range");
+        if (range == null) return null;
+        Matcher matcher = RANGE_HEADER.matcher(range.trim());
+        if (!matcher.matches()) return null;
+
+        String url = request.getUrl().toString();
+        long start = Long.parseLong(matcher.group(1));
+        long requestedEnd = matcher.group(2).isEmpty() ? -1 : Long.parseLong(matcher.group(2));
+
+        boolean seek = isSeek(url, start);
+        if (!cache.contains(url, start)) {
+            // moov may be on its way from the seek index already
+            seekIndex.awaitHeader(url, start);
+        }
+        // One lookup, so a miss that the wait turned into a hit counts once
+        VideoRangeCache.Hit hit = cache.get(url, start);
+        if (hit != null) {
+            PlaybackTelemetry.recordVideoBytes(url, true, hit.end - hit.start + 1);
+            servedUpTo(url, hit.end);
+            return partialResponse(hit.start, hit.end, hit.total, mimeTypeOf(hit.contentType, url), hit.data);
+        }
+
+        // Never ask for more than one segment; the media stack requests the rest as it needs it
+        long end = start + maxSegmentBytes - 1;
+        if (requestedEnd >= start && requestedEnd < end) {
+            end = requestedEnd;
+        }
+        if (seek) {
+            end = seekIndex.seekRangeEnd(url, start, end);
+        }
+        return fetchAndCache(url, request.getRequestHeaders(), start, end);
+    }
+
+    private synchronized boolean isSeek(String url, long start) {
+        Long next = nextOffsets.get(url);
+        return start != 0 && (next == null || next != start);
+    }
+
+    private synchronized void servedUpTo(String url, long end) {
+        if (nextOffsets.size() >= MAX_TRACKED_URLS && !nextOffsets.containsKey(url)) {
+            nextOffsets.clear();
+        }
+        nextOffsets.put(url, end + 1);
+    }
+
+    private WebResourceResponse fetchAndCache(String url, Map<String, String> requestHeaders, long start, long end) {
+        Request.Builder builder = new Request.Builder()
+            .url(url)
+            .header("Range", "bytes=" + start + "-" + end);
+        forwardHeaders(requestHeaders, builder);
+
+        Response response = null;
+        try {
+            response = client.newCall(builder.build()).execute();
+            // Errors surface again through the WebView's own request and are counted there
+            if (response.code() != 206) {
+                response.close();
+                return null;
+            }
+            Matcher contentRange = CONTENT_RANGE.matcher(String.valueOf(response.header("Content-Range")));
+            if (!contentRange.matches() || "*".equals(contentRange.group(3))) {
+                response.close();
+                return null;
+            }
+
+            long actualStart = Long.parseLong(contentRange.group(1));
+            long actualEnd = Long.parseLong(contentRange.group(2));
+            long total = Long.parseLong(contentRange.group(3));
+            if (actualEnd < actualStart || actualEnd - actualStart + 1 > maxSegmentBytes) {
+                response.close();
+                return null;
+            }
+            String contentType = response.header("Content-Type");
+            servedUpTo(url, actualEnd);
+            // The WebView reads straight from the network; the segment is cached as it passes
+            InputStream data = new CachingStream(response, url, actualStart, total, contentType,
+                (int) (actualEnd - actualStart + 1));
+            return partialResponse(actualStart, actualEnd, total, mimeTypeOf(contentType, url), data);
+        } catch (IOException | NumberFormatException e) {
+            if (response != null) {
+                response.close();
+            }
+            android.util.Log.w("VideoCache", "Range fetch failed, falling back to WebView: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Tees the response body into a segment, stored when the WebView reaches the end or
+    // closes the stream early (a seek), so whatever was read is kept
+    private class CachingStream extends FilterInputStream {
+        private final Response response;
+        private final String url;
+        private final long start;
+        private final long total;
+        private final String contentType;
+        private final ByteArrayOutputStream copy;
+        private boolean committed = false;
+
+        CachingStream(Response response, String url, long start, long total, String contentType, int length) {
+            super(response.body().byteStream());
+            this.response = response;
+            this.url = url;
+            this.start = start;
+            this.total = total;
+            this.contentType = contentType;
+            this.copy = new ByteArrayOutputStream(Math.min(length, 512 * 1024));
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value == -1) {
+                commit();
+            } else {
+                copy.write(value);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read == -1) {
+                commit();
+            } else {
+                copy.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped bytes would leave a hole in the segment
+            byte[] buffer = new byte[(int) Math.min(count, 64 * 1024)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            commit();
+            response.close();
+        }
+
+        private void commit() {
+            if (committed) return;
+            committed = true;
+            if (copy.size() == 0) return;
+            cache.put(url, start, total, copy.toByteArray(), contentType);
+            PlaybackTelemetry.recordVideoBytes(url, false, copy.size());
+        }
+    }
+
+    // The upstream type without parameters; the file extension if the server sent none
+    static String mimeTypeOf(String contentType, String url) {
+        if (contentType != null) {
+            String mime = contentType.split(";")[0].trim();
+            if (!mime.isEmpty()) return mime;
+        }
+        String path = url.toLowerCase();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.endsWith(".webm")) return "video/webm";
+        if (path.endsWith(".ogg")) return "video/ogg";
+        if (path.endsWith(".mkv")) return "video/x-matroska";
+        return "video/mp4";
+    }
+
+    private WebResourceResponse partialResponse(long start, long end, long total, String mimeType, InputStream data) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Range", "bytes " + start + "-" + end + "/" + total);
+        headers.put("Content-Length", String.valueOf(end - start + 1));
+        headers.put("Accept-Ranges", "bytes");
+        return new WebResourceResponse(mimeType, null, 206, "Partial Content", headers, data);
+    }
+
+    static void forwardHeaders(Map<String, String> requestHeaders, Request.Builder builder) {
+        for (String name : FORWARDED_HEADERS) {
+            String value = header(requestHeaders, name);
+            if (value != null) {
+                builder.header(name, value);
+            }
+        }
+    }
+
+    static String header(Map<String, String> headers, String name) {
+        if (headers == null) return null;
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,91 @@
+package com.majin.videostreams;
+
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.view.KeyEvent;
+import androidx.test.core.app.ApplicationProvider;
+import com.majin.videostreams.benchmark.BenchmarkReport;
+import com.majin.videostreams.benchmark.StandInServer;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+// Cost of our side of a remote key press: the activity's key handling and handing the
+// key to the page. Robolectric's WebView has no page behind it, so keys take the
+// evaluateJavascript fallback; on a device the message port is cheaper still.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class DpadScenarioTest {
+    private static final int WARMUP_PRESSES = 500;
+    private static final int PRESSES = 5000;
+    private static final int[] KEYS = {
+        KeyEvent.KEYCODE_DPAD_RIGHT, KeyEvent.KEYCODE_DPAD_RIGHT, KeyEvent.KEYCODE_DPAD_DOWN,
+        KeyEvent.KEYCODE_DPAD_LEFT, KeyEvent.KEYCODE_DPAD_UP, KeyEvent.KEYCODE_DPAD_CENTER
+    };
+
+    private StandInServer server;
+    private ActivityController<MainActivity> controller;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("Run with -Pbenchmarks", BenchmarkReport.enabled());
+        Context context = ApplicationProvider.getApplicationContext();
+        Settings.Secure.putString(context.getContentResolver(), Settings.Secure.ANDROID_ID, "benchmark0001");
+        server = new StandInServer();
+        server.start();
+        Intent intent = new Intent(context, MainActivity.class).putExtra(MainActivity.EXTRA_SITE_URL, server.siteUrl());
+        controller = Robolectric.buildActivity(MainActivity.class, intent).setup();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (controller != null) {
+            controller.pause().stop().destroy();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void dispatchThroughput() throws Exception {
+        MainActivity activity = controller.get();
+        press(activity, WARMUP_PRESSES);
+
+        long start = System.nanoTime();
+        press(activity, PRESSES);
+        long elapsed = System.nanoTime() - start;
+
+        BenchmarkReport.record("dpad", "throughput", PRESSES / (elapsed / 1e9), "presses/s");
+        BenchmarkReport.record("dpad", "perPress", elapsed / 1e3 / PRESSES, "us");
+
+        JSONObject stats = new JSONObject(activity.new WebAppInterface().getInputStats());
+        BenchmarkReport.record("dpad", "keysReceived", stats.optLong("keys"), "keys");
+        BenchmarkReport.record("dpad", "portMessages", stats.optLong("messages"), "keys");
+        BenchmarkReport.record("dpad", "fallbackEvaluations", stats.optLong("fallbackEvaluations"), "keys");
+    }
+
+    // Down and up for each key, as the remote sends them, with the main looper drained
+    // between presses like the real one would be
+    private static void press(MainActivity activity, int presses) {
+        for (int i = 0; i < presses; i++) {
+            int keyCode = KEYS[i % KEYS.length];
+            long now = SystemClock.uptimeMillis();
+            activity.dispatchKeyEvent(new KeyEvent(now, now, KeyEvent.ACTION_DOWN, keyCode, 0));
+            activity.dispatchKeyEvent(new KeyEvent(now, now, KeyEvent.ACTION_UP, keyCode, 0));
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.majin.videostreams;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+// The moov parser against small hand-built files: an audio track ahead of the video
+// track, two video chunks with an audio chunk between them, and keyframes on samples
+// 1 and 4 of six 500 ms samples. One file is faststart with stco, the other has moov
+// after mdat with co64.
+public class Mp4SeekIndexTest {
+    private static final long[] SAMPLE_SIZES = { 100, 50, 50, 120, 60, 60 };
+    private static final int FIRST_CHUNK_BYTES = 150;
+    private static final int AUDIO_CHUNK_BYTES = 40;
+    private static final int SECOND_CHUNK_BYTES = 290;
+
+    @Test
+    public void faststartFile() {
+        byte[] ftyp = ftyp();
+        int moovSize = moov(false, 0, 0, true, true).length;
+        long firstChunk = ftyp.length + moovSize + 8;
+        long secondChunk = firstChunk + FIRST_CHUNK_BYTES + AUDIO_CHUNK_BYTES;
+        byte[] moov = moov(false, firstChunk, secondChunk, true, true);
+        long total = ftyp.length + moov.length + mdat().length;
+
+        Mp4SeekIndex.Index index = Mp4SeekIndex.parse(moov, total, ftyp.length, true);
+
+        assertTrue(index.faststart);
+        assertArrayEquals(new long[] { 0, 1500 }, index.keyframeTimesMs);
+        assertArrayEquals(new long[] { firstChunk, secondChunk + 50 }, index.keyframeOffsets);
+        assertEquals("video/avc", index.codecs.videoMime);
+        assertEquals("audio/mp4a-latm", index.codecs.audioMime);
+        assertEquals(1280, index.codecs.width);
+        assertEquals(720, index.codecs.height);
+        assertFalse(index.codecs.tenBit);
+
+        assertEquals(0, index.keyframeTimeMs(1499));
+        assertEquals(1500, index.keyframeTimeMs(2500));
+        assertEquals(secondChunk + 50, index.byteOffsetFor(2500));
+        assertEquals(secondChunk + 50, index.nextKeyframeOffsetAfter(firstChunk));
+        assertEquals(-1, index.nextKeyframeOffsetAfter(secondChunk + 50));
+        assertTrue(index.inMoov(ftyp.length));
+        assertFalse(index.inMoov(ftyp.length + moov.length));
+    }
+
+    @Test
+    public void moovAtEndFile() {
+        byte[] ftyp = ftyp();
+        byte[] mdat = mdat();
+        long firstChunk = ftyp.length + 8;
+        long secondChunk = firstChunk + FIRST_CHUNK_BYTES + AUDIO_CHUNK_BYTES;
+        byte[] moov = moov(true, firstChunk, secondChunk, false, true);
+        long moovOffset = ftyp.length + mdat.length;
+
+        Mp4SeekIndex.Index index = Mp4SeekIndex.parse(moov, moovOffset + moov.length, moovOffset, false);
+
+        assertFalse(index.faststart);
+        assertArrayEquals(new long[] { 0, 1500 }, index.keyframeTimesMs);
+        assertArrayEquals(new long[] { firstChunk, secondChunk + 50 }, index.keyframeOffsets);
+        assertEquals("video/hevc", index.codecs.videoMime);
+        assertEquals("audio/mp4a-latm", index.codecs.audioMime);
+        assertTrue(index.codecs.tenBit);
+        assertTrue(index.inMoov(moovOffset));
+        assertFalse(index.inMoov(moovOffset - 1));
+    }
+
+    @Test
+    public void noSyncSampleTableMeansNoKeyframeTable() {
+        byte[] moov = moov(false, 1000, 1190, true, false);
+
+        Mp4SeekIndex.Index index = Mp4SeekIndex.parse(moov, 5000, 32, true);
+
+        assertEquals(0, index.keyframeTimesMs.length);
+        assertEquals(-1, index.keyframeTimeMs(2500));
+        assertEquals(-1, index.nextKeyframeOffsetAfter(1000));
+        assertEquals("video/avc", index.codecs.videoMime);
+    }
+
+    private static byte[] ftyp() {
+        return box("ftyp", concat(fourcc("isom"), uint32(512), fourcc("isom"), fourcc("avc1")));
+    }
+
+    // Video chunk 1, an audio chunk, video chunk 2; the parser never reads it
+    private static byte[] mdat() {
+        return box("mdat", new byte[FIRST_CHUNK_BYTES + AUDIO_CHUNK_BYTES + SECOND_CHUNK_BYTES]);
+    }
+
+    private static byte[] moov(boolean co64, long firstChunk, long secondChunk, boolean avc, boolean syncSamples) {
+        return box("moov", concat(
+            fullBox("mvhd", 0, new byte[96]),
+            trak("soun", box("mp4a", new byte[28]), new byte[0]),
+            trak("vide", videoSampleEntry(avc), videoTables(co64, firstChunk, secondChunk, syncSamples))));
+    }
+
+    private static byte[] trak(String handler, byte[] sampleEntry, byte[] tables) {
+        byte[] mdhd = fullBox("mdhd", 0, concat(uint32(0), uint32(0), uint32(1000), uint32(3000), new byte[4]));
+        byte[] hdlr = fullBox("hdlr", 0, concat(uint32(0), fourcc(handler), new byte[12], new byte[1]));
+        byte[] stsd = fullBox("stsd", 0, concat(uint32(1), sampleEntry));
+        byte[] stbl = box("stbl", concat(stsd, tables));
+        return box("trak", concat(
+            fullBox("tkhd", 0, new byte[80]),
+            box("mdia", concat(mdhd, hdlr, box("minf", stbl)))));
+    }
+
+    // 1280x720, with avcC High (8-bit) or hvcC Main 10
+    private static byte[] videoSampleEntry(boolean avc) {
+        byte[] visual = concat(new byte[24], uint16(1280), uint16(720), new byte[50]);
+        byte[] config = avc
+            ? box("avcC", new byte[] { 1, 100, 0, 40, (byte) 0xFF, (byte) 0xE0, 0 })
+            : box("hvcC", concat(new byte[] { 1, 2 }, new byte[21]));
+        return box(avc ? "avc1" : "hvc1", concat(visual, config));
+    }
+
+    private static byte[] videoTables(boolean co64, long firstChunk, long secondChunk, boolean syncSamples) {
+        byte[] stts = fullBox("stts", 0, concat(uint32(1), uint32(SAMPLE_SIZES.length), uint32(500)));
+        byte[] stss = syncSamples ? fullBox("stss", 0, concat(uint32(2), uint32(1), uint32(4))) : new byte[0];
+        // Two samples in chunk 1, four from chunk 2 on
+        byte[] stsc = fullBox("stsc", 0, concat(uint32(2),
+            uint32(1), uint32(2), uint32(1),
+            uint32(2), uint32(4), uint32(1)));
+        ByteArrayOutputStream sizes = new ByteArrayOutputStream();
+        for (long size : SAMPLE_SIZES) {
+            sizes.write(uint32(size), 0, 4);
+        }
+        byte[] stsz = fullBox("stsz", 0, concat(uint32(0), uint32(SAMPLE_SIZES.length), sizes.toByteArray()));
+        byte[] chunks = co64
+            ? fullBox("co64", 0, concat(uint32(2), uint64(firstChunk), uint64(secondChunk)))
+            : fullBox("stco", 0, concat(uint32(2), uint32(firstChunk), uint32(secondChunk)));
+        return concat(stts, stss, stsc, stsz, chunks);
+    }
+
+    private static byte[] box(String type, byte[] payload) {
+        return concat(uint32(8 + payload.length), fourcc(type), payload);
+    }
+
+    private static byte[] fullBox(String type, int version, byte[] payload) {
+        return box(type, concat(new byte[] { (byte) version, 0, 0, 0 }, payload));
+    }
+
+    private static byte[] fourcc(String type) {
+        return type.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] uint16(int value) {
+        return new byte[] { (byte) (value >> 8), (byte) value };
+    }
+
+    private static byte[] uint32(long value) {
+        return new byte[] { (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value };
+    }
+
+    private static byte[] uint64(long value) {
+        return concat(uint32(value >>> 32), uint32(value));
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
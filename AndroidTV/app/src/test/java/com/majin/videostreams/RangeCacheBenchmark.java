@@ -0,0 +1,114 @@
+package com.majin.videostreams;
+
+import com.majin.videostreams.benchmark.StandInServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The two ways a seek gets its bytes: a hit in the on-disk range cache, or a ranged
+// fetch through the shared HTTP stack from the stand-in server (optionally slowed to
+// a tunnel-like latency).
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RangeCacheBenchmark {
+    private static final String VIDEO_PATH = "/videos/series-1/ep1.mp4";
+    private static final int SEGMENT_BYTES = 256 * 1024;
+    private static final int SEGMENTS = 32;
+
+    @Param({ "0", "20" })
+    public long latencyMs;
+
+    private StandInServer server;
+    private OkHttpClient client;
+    private File directory;
+    private VideoRangeCache cache;
+    private String url;
+    private byte[] buffer;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new StandInServer(10, (long) SEGMENT_BYTES * SEGMENTS);
+        server.start();
+        server.setLatencyMs(latencyMs);
+        url = server.siteUrl() + VIDEO_PATH;
+        client = new HttpStack(8, 300, 600000, 50).client();
+        buffer = new byte[SEGMENT_BYTES];
+
+        directory = Files.createTempDirectory("range-bench").toFile();
+        cache = new VideoRangeCache(directory, 64L * 1024 * 1024);
+        for (int i = 0; i < SEGMENTS; i++) {
+            byte[] segment = new byte[SEGMENT_BYTES];
+            for (int b = 0; b < SEGMENT_BYTES; b++) {
+                segment[b] = StandInServer.byteAt((long) i * SEGMENT_BYTES + b);
+            }
+            cache.put(url, (long) i * SEGMENT_BYTES, (long) SEGMENT_BYTES * SEGMENTS, segment);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.clear();
+        directory.delete();
+        server.close();
+    }
+
+    @Benchmark
+    public int cachedSeek() throws IOException {
+        long offset = nextOffset();
+        VideoRangeCache.Hit hit = cache.get(url, offset);
+        if (hit == null) throw new IllegalStateException("Expected a cached segment at " + offset);
+        try (InputStream in = hit.data) {
+            return drain(in);
+        }
+    }
+
+    @Benchmark
+    public int networkSeek() throws IOException {
+        long offset = nextOffset();
+        Request request = new Request.Builder()
+            .url(url)
+            .header("Range", "bytes=" + offset + "-" + (offset + SEGMENT_BYTES - 1))
+            .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (response.code() != 206) throw new IOException("Unexpected " + response.code());
+            return drain(response.body().byteStream());
+        }
+    }
+
+    private long nextOffset() {
+        next = (next + 7) % SEGMENTS;
+        return (long) next * SEGMENT_BYTES;
+    }
+
+    private int drain(InputStream in) throws IOException {
+        int total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+}
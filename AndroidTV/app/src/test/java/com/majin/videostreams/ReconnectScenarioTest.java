@@ -0,0 +1,161 @@
+package com.majin.videostreams;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.test.core.app.ApplicationProvider;
+import com.majin.videostreams.benchmark.BenchmarkReport;
+import com.majin.videostreams.benchmark.StandInServer;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+// How long the TV takes to get the site back after the tunnel drops, with the backoff and
+// circuit breaker from config.xml. The outage is real (the stand-in answers 530), the
+// waiting is not: the main looper runs on Robolectric's clock, so a 30 s outage takes
+// well under a second and recovery is measured in the app's own milliseconds.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ReconnectScenarioTest {
+    private static final long[] OUTAGES_MS = { 2000, 10000, 30000 };
+    private static final int ITERATIONS = 10;
+    private static final long STEP_MS = 50;
+    private static final long GIVE_UP_MS = 5 * 60 * 1000;
+
+    private Context context;
+    private StandInServer server;
+    private ReconnectManager manager;
+    private boolean loaded;
+    private int reloads;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("Run with -Pbenchmarks", BenchmarkReport.enabled());
+        context = ApplicationProvider.getApplicationContext();
+        server = new StandInServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (manager != null) {
+            manager.stop();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void recoveryAfterOutage() {
+        for (long outageMs : OUTAGES_MS) {
+            String scenario = "reconnect[" + outageMs / 1000 + "s]";
+            List<Double> recovery = new ArrayList<>();
+            List<Double> reloadCounts = new ArrayList<>();
+            List<Double> siteRequests = new ArrayList<>();
+            for (int i = 0; i < ITERATIONS; i++) {
+                server.resetCounts();
+                long recoveredAfter = runOutage(outageMs);
+                assertTrue(scenario + " never recovered", recoveredAfter >= 0);
+                recovery.add((double) recoveredAfter);
+                reloadCounts.add((double) reloads);
+                // Page reloads plus the breaker's HEAD probes
+                siteRequests.add((double) server.requestCount("/"));
+            }
+            BenchmarkReport.recordSamples(scenario, "recoveryAfterOutage", recovery, "ms");
+            BenchmarkReport.recordSamples(scenario, "reloads", reloadCounts, "reloads");
+            BenchmarkReport.recordSamples(scenario, "siteRequests", siteRequests, "requests");
+        }
+    }
+
+    // Virtual ms from the site answering again until the page loaded, or -1
+    private long runOutage(long outageMs) {
+        Handler main = new Handler(Looper.getMainLooper());
+        loaded = false;
+        reloads = 0;
+        manager = new ReconnectManager(context, server.siteUrl(), new ReconnectManager.Callbacks() {
+            @Override
+            public void reloadSite() {
+                reloads++;
+                // The WebView reports the outcome later, from its own callbacks
+                boolean ok = fetchSite();
+                main.post(() -> {
+                    if (ok) {
+                        loaded = true;
+                        manager.onPageLoaded();
+                    } else {
+                        manager.onMainFrameFailed();
+                    }
+                });
+            }
+
+            @Override
+            public void onReconnected() {
+            }
+        },
+            context.getResources().getInteger(R.integer.reconnect_base_delay),
+            context.getResources().getInteger(R.integer.reconnect_max_delay),
+            context.getResources().getInteger(R.integer.reconnect_breaker_threshold),
+            context.getResources().getInteger(R.integer.reconnect_probe_interval));
+
+        server.setDown(true);
+        long outageStart = SystemClock.uptimeMillis();
+        manager.onMainFrameFailed();
+        boolean down = true;
+        long upAt = 0;
+        try {
+            while (SystemClock.uptimeMillis() - outageStart < GIVE_UP_MS) {
+                if (down && SystemClock.uptimeMillis() - outageStart >= outageMs) {
+                    server.setDown(false);
+                    down = false;
+                    upAt = SystemClock.uptimeMillis();
+                }
+                shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(STEP_MS));
+                // Probes run on the manager's own thread; give them real time to answer
+                while ("PROBING".equals(manager.getStateName())) {
+                    sleepRealMs(2);
+                    shadowOf(Looper.getMainLooper()).idle();
+                }
+                shadowOf(Looper.getMainLooper()).idle();
+                if (loaded) {
+                    return SystemClock.uptimeMillis() - upAt;
+                }
+            }
+            return -1;
+        } finally {
+            manager.stop();
+            manager = null;
+        }
+    }
+
+    private boolean fetchSite() {
+        Request request = new Request.Builder().url(server.siteUrl() + "/").build();
+        try (Response response = HttpStack.getShared(context).client(5000, 5000).newCall(request).execute()) {
+            return response.isSuccessful();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void sleepRealMs(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.majin.videostreams;
+
+import com.majin.videostreams.benchmark.StandInServer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// On-device search over a catalog the size of the real one and larger: typing a prefix,
+// a word from the middle of a title, and rebuilding the index when the catalog arrives.
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchIndexBenchmark {
+    @Param({ "500", "5000" })
+    public int seriesCount;
+
+    private File directory;
+    private CatalogCache catalogCache;
+    private CatalogSearchIndex index;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("search-bench").toFile();
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < seriesCount; i++) {
+            if (i > 0) body.append(',');
+            StandInServer.appendSeries(body, i, StandInServer.title(i));
+        }
+        body.append(']');
+        // Laid out as CatalogCache stores /api/series, so no network is involved
+        write(new File(directory, "_api_series.body"), body.toString());
+        write(new File(directory, "_api_series.meta"), "{\"etag\":\"bench\",\"contentType\":\"application/json\",\"storedAt\":0}");
+
+        catalogCache = new CatalogCache(directory, new HttpStack(1, 1, 0, 1), Long.MAX_VALUE, null);
+        index = new CatalogSearchIndex(catalogCache);
+        index.refresh();
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public String prefixQuery() {
+        return index.query("chron", 5);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public String twoWordQuery() {
+        return index.query("fantasy 12", 50);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public String infixQuery() {
+        return index.query("ronic", 50);
+    }
+
+    // Full build from the cached body, as on the first start after a catalog change
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 10, batchSize = 1)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public CatalogSearchIndex build() {
+        CatalogSearchIndex fresh = new CatalogSearchIndex(catalogCache);
+        fresh.refresh();
+        return fresh;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
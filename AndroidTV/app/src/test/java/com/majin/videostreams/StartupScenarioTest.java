@@ -0,0 +1,168 @@
+package com.majin.videostreams;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.content.Intent;
+import android.provider.Settings;
+import androidx.test.core.app.ApplicationProvider;
+import com.majin.videostreams.benchmark.BenchmarkReport;
+import com.majin.videostreams.benchmark.StandInServer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+// Cold start of MainActivity and the native auto-login against the stand-in server.
+// Robolectric does not render the page, so these time our side of startup: creating the
+// activity, the background stages it waits on and the session the page is seeded with.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class StartupScenarioTest {
+    private static final int ITERATIONS = 15;
+    private static final long SESSION_WAIT_MS = 10000;
+
+    private Context context;
+    private StandInServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("Run with -Pbenchmarks", BenchmarkReport.enabled());
+        context = ApplicationProvider.getApplicationContext();
+        Settings.Secure.putString(context.getContentResolver(), Settings.Secure.ANDROID_ID, "benchmark0001");
+        server = new StandInServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void coldStart() {
+        List<Double> create = new ArrayList<>();
+        List<Double> assetsReady = new ArrayList<>();
+        List<Double> sessionReady = new ArrayList<>();
+        for (int i = 0; i < ITERATIONS; i++) {
+            clearSession();
+            Intent intent = new Intent(context, MainActivity.class).putExtra(MainActivity.EXTRA_SITE_URL, server.siteUrl());
+
+            long start = System.nanoTime();
+            ActivityController<MainActivity> controller = Robolectric.buildActivity(MainActivity.class, intent).setup();
+            long created = System.nanoTime();
+            MainActivity.WebAppInterface bridge = controller.get().new WebAppInterface();
+            bridge.getNetworkStats();
+            long assets = System.nanoTime();
+            // takeSession() answers at once; the page gets the session when it first has one
+            String session = awaitSession(bridge);
+            long seeded = System.nanoTime();
+            controller.pause().stop().destroy();
+
+            // The first pass pays for class loading and resource parsing, like a process start
+            if (i == 0) {
+                BenchmarkReport.record("coldStart", "firstActivityCreate", millis(start, created), "ms");
+                BenchmarkReport.record("coldStart", "firstStartupAssets", millis(start, assets), "ms");
+                continue;
+            }
+            assertFalse(session.isEmpty());
+            create.add(millis(start, created));
+            assetsReady.add(millis(start, assets));
+            sessionReady.add(millis(start, seeded));
+        }
+        BenchmarkReport.recordSamples("coldStart", "activityCreate", create, "ms");
+        BenchmarkReport.recordSamples("coldStart", "startupAssets", assetsReady, "ms");
+        BenchmarkReport.recordSamples("coldStart", "sessionSeeded", sessionReady, "ms");
+    }
+
+    @Test
+    public void autoLogin() {
+        for (long latency : new long[] { 0, 150 }) {
+            server.setLatencyMs(latency);
+            String scenario = "autoLogin[" + latency + "ms]";
+
+            List<Double> fresh = new ArrayList<>();
+            List<Double> stored = new ArrayList<>();
+            List<Double> revalidated = new ArrayList<>();
+            server.resetCounts();
+            for (int i = 0; i < ITERATIONS; i++) {
+                clearSession();
+                fresh.add(timePrepare());
+
+                // Inside the validation TTL the stored token is used without asking the server
+                stored.add(timePrepare());
+
+                context.getSharedPreferences("VideoHostAuth", Context.MODE_PRIVATE).edit()
+                    .remove("session_validated_at").commit();
+                revalidated.add(timePrepare());
+            }
+            BenchmarkReport.recordSamples(scenario, "freshDevice", fresh, "ms");
+            BenchmarkReport.recordSamples(scenario, "storedToken", stored, "ms");
+            BenchmarkReport.recordSamples(scenario, "revalidated", revalidated, "ms");
+            BenchmarkReport.record(scenario, "loginRequests", server.requestCount("/api/login"), "requests");
+            BenchmarkReport.record(scenario, "sessionRequests", server.requestCount("/api/session"), "requests");
+        }
+
+        // A failing login leaves the page to log in by itself; the wait must stay short
+        server.setLatencyMs(0);
+        clearSession();
+        server.failNext(1, 503);
+        long start = System.nanoTime();
+        SessionManager manager = SessionManager.create(context, server.siteUrl());
+        manager.prepare();
+        assertNull(manager.awaitSession(0));
+        BenchmarkReport.record("autoLogin", "failedLogin", millis(start, System.nanoTime()), "ms");
+    }
+
+    // prepare() runs on the startup executor; this is how long until it has a session
+    private double timePrepare() {
+        SessionManager manager = SessionManager.create(context, server.siteUrl());
+        long start = System.nanoTime();
+        Thread worker = new Thread(manager::prepare);
+        worker.start();
+        SessionManager.Session session = manager.awaitSession(SESSION_WAIT_MS);
+        long end = System.nanoTime();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        assertNotNull(session);
+        assertFalse(session.token.isEmpty());
+        return millis(start, end);
+    }
+
+    private static String awaitSession(MainActivity.WebAppInterface bridge) {
+        long deadline = System.nanoTime() + SESSION_WAIT_MS * 1000000;
+        String session = bridge.takeSession();
+        while (session.isEmpty() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            session = bridge.takeSession();
+        }
+        return session;
+    }
+
+    private void clearSession() {
+        context.getSharedPreferences("VideoHostAuth", Context.MODE_PRIVATE).edit().clear().commit();
+    }
+
+    private static double millis(long startNanos, long endNanos) {
+        return (endNanos - startNanos) / 1e6;
+    }
+}
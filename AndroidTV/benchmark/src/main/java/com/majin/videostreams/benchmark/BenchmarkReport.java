@@ -0,0 +1,68 @@
+package com.majin.videostreams.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Scenario results as CSV rows, appended to <benchmark.output>/scenarios.csv. The columns
+// follow JMH's -rf csv output so CompareResults reads both the same way.
+public final class BenchmarkReport {
+    public static final String OUTPUT_PROPERTY = "benchmark.output";
+    public static final String FILE_NAME = "scenarios.csv";
+    private static final String HEADER = "\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error (99.9%)\",\"Unit\"";
+
+    private BenchmarkReport() {
+    }
+
+    // Scenarios only run when the build asked for them (-Pbenchmarks)
+    public static boolean enabled() {
+        return System.getProperty(OUTPUT_PROPERTY) != null;
+    }
+
+    public static void record(String scenario, String metric, double value, String unit) {
+        record(scenario + "." + metric, 1, value, unit);
+    }
+
+    // Median as the score, with p90/min/max alongside for a closer look
+    public static void recordSamples(String scenario, String metric, List<Double> samples, String unit) {
+        if (samples.isEmpty()) return;
+        List<Double> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        String name = scenario + "." + metric;
+        record(name, sorted.size(), percentile(sorted, 50), unit);
+        record(name + ":p90", sorted.size(), percentile(sorted, 90), unit);
+        record(name + ":min", sorted.size(), sorted.get(0), unit);
+        record(name + ":max", sorted.size(), sorted.get(sorted.size() - 1), unit);
+    }
+
+    static double percentile(List<Double> sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private static synchronized void record(String name, int samples, double value, String unit) {
+        String output = System.getProperty(OUTPUT_PROPERTY);
+        String line = String.format(Locale.US, "\"%s\",\"ss\",1,%d,%.3f,NaN,\"%s\"", name, samples, value, unit);
+        System.out.println("benchmark " + line);
+        if (output == null) return;
+        File dir = new File(output);
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+        File file = new File(dir, FILE_NAME);
+        boolean fresh = !file.exists() || file.length() == 0;
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            if (fresh) {
+                writer.write(HEADER + "\n");
+            }
+            writer.write(line + "\n");
+        } catch (IOException e) {
+            System.err.println("Could not write " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.majin.videostreams.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Compares two benchmark CSVs (scenarios.csv or JMH -rf csv) row by row and prints the
+// change per benchmark. Exits with 1 when anything regressed past the threshold, so it
+// can gate a build.
+public final class CompareResults {
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+    private static final Set<String> TIME_UNITS = new HashSet<>(Arrays.asList("ns", "us", "ms", "s", "min"));
+
+    static final class Row {
+        final double score;
+        final String unit;
+
+        Row(double score, String unit) {
+            this.score = score;
+            this.unit = unit;
+        }
+
+        // Throughput units go up when things get better, times go down
+        boolean higherIsBetter() {
+            return unit.contains("/s") || unit.contains("ops/") || unit.endsWith("/min");
+        }
+
+        // Plain counts (keys, requests, reloads) have no better direction; shown, never gated
+        boolean isCount() {
+            return !unit.contains("/") && !TIME_UNITS.contains(unit);
+        }
+    }
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: CompareResults <baseline.csv> <current.csv> [threshold%]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        Map<String, Row> baseline = read(new File(args[0]));
+        Map<String, Row> current = read(new File(args[1]));
+
+        int regressions = 0;
+        System.out.println(String.format(Locale.US, "%-60s %14s %14s %9s", "Benchmark", "Baseline", "Current", "Change"));
+        for (Map.Entry<String, Row> entry : current.entrySet()) {
+            Row now = entry.getValue();
+            Row before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println(String.format(Locale.US, "%-60s %14s %14.3f %9s  %s", entry.getKey(), "-", now.score, "new", now.unit));
+                continue;
+            }
+            double change = before.score != 0 ? (now.score - before.score) / Math.abs(before.score) * 100 : 0;
+            double worse = now.higherIsBetter() ? -change : change;
+            boolean regressed = !now.isCount() && worse > threshold;
+            if (regressed) regressions++;
+            System.out.println(String.format(Locale.US, "%-60s %14.3f %14.3f %+8.1f%%  %s%s",
+                entry.getKey(), before.score, now.score, change, now.unit,
+                regressed ? "  REGRESSION" : now.isCount() ? "  (count)" : ""));
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.println(String.format(Locale.US, "%-60s %14.3f %14s %9s", name, baseline.get(name).score, "-", "gone"));
+            }
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " regression(s) over " + threshold + "%");
+            System.exit(1);
+        }
+    }
+
+    static Map<String, Row> read(File file) throws IOException {
+        Map<String, Row> rows = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            List<String> header = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                List<String> cells = split(line);
+                if (header == null || cells.contains("Benchmark")) {
+                    header = cells;
+                    continue;
+                }
+                int nameAt = header.indexOf("Benchmark");
+                int scoreAt = header.indexOf("Score");
+                int unitAt = header.indexOf("Unit");
+                if (nameAt < 0 || scoreAt < 0 || unitAt < 0 || cells.size() <= Math.max(scoreAt, unitAt)) continue;
+                String name = cells.get(nameAt);
+                // JMH appends @Param values as extra columns
+                for (int i = unitAt + 1; i < cells.size() && i < header.size(); i++) {
+                    name += " " + header.get(i) + "=" + cells.get(i);
+                }
+                try {
+                    rows.put(name, new Row(Double.parseDouble(cells.get(scoreAt)), cells.get(unitAt)));
+                } catch (NumberFormatException e) {
+                    // Skip rows without a numeric score
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static List<String> split(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+}
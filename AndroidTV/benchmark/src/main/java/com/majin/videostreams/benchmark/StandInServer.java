@@ -0,0 +1,337 @@
+package com.majin.videostreams.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+// Local stand-in for the site, enough of it for the TV client to start, log in, list the
+// catalog and stream ranges: /api/login, /api/session, /api/series, /api/genres and
+// /videos/*.mp4. Latency, a run of failures or a whole outage can be injected between
+// requests so scenarios see the same server every run.
+public class StandInServer implements AutoCloseable {
+    public static final String DEVICE_TOKEN_USER = "tv-device";
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final String[] GENRES = { "Action", "Comedy", "Drama", "Fantasy", "Horror", "Romance", "Sci-Fi", "Slice of Life" };
+
+    private final MockWebServer server = new MockWebServer();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final int seriesCount;
+    private final long videoBytes;
+    private volatile long latencyMs;
+    private volatile boolean down;
+    private volatile int failStatus = 503;
+    private final AtomicInteger failRemaining = new AtomicInteger();
+
+    public StandInServer() {
+        this(500, 16L * 1024 * 1024);
+    }
+
+    public StandInServer(int seriesCount, long videoBytes) {
+        this.seriesCount = seriesCount;
+        this.videoBytes = videoBytes;
+        server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return respond(request);
+            }
+        });
+    }
+
+    public void start() throws IOException {
+        server.start();
+    }
+
+    public void start(int port) throws IOException {
+        server.start(port);
+    }
+
+    // Base URL in the form the app's SITE_URL uses, without a trailing slash
+    public String siteUrl() {
+        String url = server.url("/").toString();
+        return url.substring(0, url.length() - 1);
+    }
+
+    public void setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    // The next count requests answer with status, whatever they ask for
+    public void failNext(int count, int status) {
+        failStatus = status;
+        failRemaining.set(count);
+    }
+
+    // While down every request gets 530, as the tunnel in front of the site returns
+    public void setDown(boolean down) {
+        this.down = down;
+    }
+
+    public int requestCount(String path) {
+        AtomicInteger count = requestCounts.get(path);
+        return count != null ? count.get() : 0;
+    }
+
+    public int totalRequestCount() {
+        return server.getRequestCount();
+    }
+
+    public void resetCounts() {
+        requestCounts.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    private MockResponse respond(RecordedRequest request) {
+        String target = request.getPath() != null ? request.getPath() : "/";
+        int query = target.indexOf('?');
+        String path = query >= 0 ? target.substring(0, query) : target;
+        String params = query >= 0 ? target.substring(query + 1) : "";
+        requestCounts.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+
+        MockResponse response;
+        if (down) {
+            response = new MockResponse().setResponseCode(530).setBody("origin unreachable");
+        } else if (failRemaining.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0) {
+            response = new MockResponse().setResponseCode(failStatus).setBody("injected failure");
+        } else {
+            response = route(request, path, params);
+        }
+        if (latencyMs > 0) {
+            response.setHeadersDelay(latencyMs, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    private MockResponse route(RecordedRequest request, String path, String params) {
+        String method = request.getMethod();
+        if (path.equals("/") || path.equals("/index.html")) {
+            MockResponse response = html("<!DOCTYPE html><html><head><title>Majin Streams</title></head><body></body></html>");
+            return "HEAD".equals(method) ? response.setBody("") : response;
+        }
+        if (path.equals("/api/login") && "POST".equals(method)) {
+            String body = request.getBody().readUtf8();
+            String username = field(body, "username");
+            return json("{\"token\":" + quote(token(username != null ? username : DEVICE_TOKEN_USER)) +
+                ",\"username\":" + quote(username != null ? username : DEVICE_TOKEN_USER) + "}");
+        }
+        if (path.equals("/api/session")) {
+            String auth = request.getHeader("Authorization");
+            if (auth == null || !auth.startsWith("Bearer ")) {
+                return json("{\"error\":\"Not signed in\"}").setResponseCode(401);
+            }
+            return json("{\"username\":" + quote(DEVICE_TOKEN_USER) + "}");
+        }
+        if (path.equals("/api/series")) {
+            return series(params);
+        }
+        if (path.equals("/api/genres")) {
+            return genres(params);
+        }
+        if (path.equals("/api/telemetry") || path.equals("/api/progress/batch") || path.startsWith("/api/progress")) {
+            return json("{\"ok\":true}");
+        }
+        if (path.startsWith("/videos/")) {
+            return video(request);
+        }
+        return new MockResponse().setResponseCode(404).setBody("not found");
+    }
+
+    private MockResponse series(String params) {
+        String search = param(params, "search");
+        int offset = intParam(params, "offset", 0);
+        int limit = intParam(params, "limit", seriesCount);
+        String needle = search != null ? search.toLowerCase() : null;
+
+        StringBuilder out = new StringBuilder("[");
+        int matched = 0;
+        int written = 0;
+        for (int i = 0; i < seriesCount; i++) {
+            String title = title(i);
+            if (needle != null && !title.toLowerCase().contains(needle)) continue;
+            if (matched++ < offset || written >= limit) continue;
+            if (written++ > 0) out.append(',');
+            appendSeries(out, i, title);
+        }
+        out.append(']');
+        return json(out.toString()).setHeader("X-Total-Count", matched);
+    }
+
+    private MockResponse genres(String params) {
+        boolean summary = param(params, "summary") != null;
+        StringBuilder out = new StringBuilder("[");
+        for (int g = 0; g < GENRES.length; g++) {
+            if (g > 0) out.append(',');
+            if (summary) {
+                out.append("{\"name\":").append(quote(GENRES[g]))
+                    .append(",\"count\":").append((seriesCount + GENRES.length - 1 - g) / GENRES.length).append('}');
+            } else {
+                out.append(quote(GENRES[g]));
+            }
+        }
+        out.append(']');
+        return json(out.toString());
+    }
+
+    // Deterministic bytes so range fetches can be checked against each other
+    private MockResponse video(RecordedRequest request) {
+        long start = 0;
+        long end = videoBytes - 1;
+        boolean ranged = false;
+        String range = request.getHeader("Range");
+        if (range != null) {
+            Matcher matcher = RANGE.matcher(range);
+            if (matcher.matches()) {
+                ranged = true;
+                start = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) {
+                    end = Math.min(end, Long.parseLong(matcher.group(2)));
+                }
+            }
+        }
+        if (start >= videoBytes || start > end) {
+            return new MockResponse().setResponseCode(416).setHeader("Content-Range", "bytes */" + videoBytes);
+        }
+        MockResponse response = new MockResponse()
+            .setResponseCode(ranged ? 206 : 200)
+            .setHeader("Content-Type", "video/mp4")
+            .setHeader("Accept-Ranges", "bytes")
+            .setHeader("ETag", "\"standin-" + videoBytes + "\"");
+        if (ranged) {
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + videoBytes);
+        }
+        if ("HEAD".equals(request.getMethod())) {
+            return response.setHeader("Content-Length", end - start + 1);
+        }
+        return response.setBody(videoBytes(start, end));
+    }
+
+    public static byte byteAt(long position) {
+        return (byte) (position * 31 + (position >>> 8));
+    }
+
+    private static Buffer videoBytes(long start, long end) {
+        Buffer buffer = new Buffer();
+        byte[] chunk = new byte[8192];
+        for (long position = start; position <= end; ) {
+            int length = (int) Math.min(chunk.length, end - position + 1);
+            for (int i = 0; i < length; i++) {
+                chunk[i] = byteAt(position + i);
+            }
+            buffer.write(chunk, 0, length);
+            position += length;
+        }
+        return buffer;
+    }
+
+    public static String title(int index) {
+        return "Series " + index + " " + GENRES[index % GENRES.length] + " Chronicles";
+    }
+
+    // Same shape as the site's /api/series entries
+    public static void appendSeries(StringBuilder out, int index, String title) {
+        String genre = GENRES[index % GENRES.length];
+        out.append("{\"id\":").append(quote("series-" + index))
+            .append(",\"title\":").append(quote(title))
+            .append(",\"genre\":").append(quote(genre))
+            .append(",\"description\":").append(quote("A " + genre.toLowerCase() + " story, volume " + index))
+            .append(",\"thumbnail\":").append(quote("/thumbnails/series-" + index + ".jpg"))
+            .append(",\"episodes\":[");
+        int episodes = 1 + index % 12;
+        for (int e = 1; e <= episodes; e++) {
+            if (e > 1) out.append(',');
+            out.append("{\"title\":").append(quote("Episode " + e))
+                .append(",\"videoId\":").append(quote("/videos/series-" + index + "/ep" + e + ".mp4")).append('}');
+        }
+        out.append("]}");
+    }
+
+    // Unsigned JWT whose exp the app's SessionManager reads; valid for a week
+    public static String token(String username) {
+        long exp = System.currentTimeMillis() / 1000 + TimeUnit.DAYS.toSeconds(7);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"none\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = encoder.encodeToString(("{\"username\":" + quote(username) + ",\"exp\":" + exp + "}")
+            .getBytes(StandardCharsets.UTF_8));
+        return header + "." + payload + ".standin";
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    private static MockResponse html(String body) {
+        return new MockResponse().setHeader("Content-Type", "text/html; charset=utf-8").setBody(body);
+    }
+
+    static String quote(String value) {
+        StringBuilder out = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    // Good enough for the flat login body the app sends
+    private static String field(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\"\\s*:\\s*\"([^\"]*)\"").matcher(json);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static String param(String params, String name) {
+        for (String pair : params.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            if (key.equals(name)) {
+                try {
+                    return java.net.URLDecoder.decode(eq >= 0 ? pair.substring(eq + 1) : "", "UTF-8");
+                } catch (java.io.UnsupportedEncodingException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int intParam(String params, String name, int fallback) {
+        String value = param(params, name);
+        try {
+            return value != null ? Integer.parseInt(value) : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    // Standalone: point a debug build at it through adb reverse, since the app only allows
+    // cleartext to localhost
+    //   adb reverse tcp:<port> tcp:<port>
+    //   adb shell am start -n com.majin.videostreams/.MainActivity --es site_url http://127.0.0.1:<port>
+    public static void main(String[] args) throws IOException, InterruptedException {
+        StandInServer server = new StandInServer();
+        server.start(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        if (args.length > 1) {
+            server.setLatencyMs(Long.parseLong(args[1]));
+        }
+        System.out.println("Stand-in site at " + server.siteUrl());
+        Thread.currentThread().join();
+    }
+}
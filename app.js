@@ -144,6 +144,8 @@ const dataDir = path.join(__dirname, 'data');
 const usersFile = path.join(dataDir, 'users.json');
 const progressFile = path.join(dataDir, 'progress.json');
 const pendingFile = path.join(dataDir, 'pending.json');
+const telemetryFile = path.join(dataDir, 'telemetry.jsonl');
+const TELEMETRY_MAX_BYTES = 20 * 1024 * 1024;
 
 // Ensure data directory exists
 if (!fs.existsSync(dataDir)) {
@@ -451,7 +453,12 @@ app.use('/videos', (req, res, next) => {
     
     // Handle video streaming with range requests
     if (req.path.match(/\.(mp4|webm|ogg|avi|mkv)$/i)) {
-        return streamVideo(req, res, resolvedPath);
+        res.setHeader('Vary', 'X-Device-Codecs, Cookie');
+        const fixed = fixedRendition(resolvedPath);
+        // Cloudflare caches .mp4 at the edge and ignores Vary, so a URL whose bytes depend
+        // on the device must never be stored there, whichever copy this device gets
+        const cacheControl = fixed ? 'private, no-store' : 'public, max-age=3600';
+        return streamVideo(req, res, chooseRendition(resolvedPath, fixed, deviceCodecs(req)), cacheControl);
     }
     
     // Handle other files (thumbnails, etc.)
@@ -467,8 +474,41 @@ app.use('/videos', (req, res, next) => {
     }
 });
 
+// Decoders reported by the Android TV app, e.g. "avc:hw:3840x2160,aac,ac3"; our own
+// requests send a header, the WebView's carry the same list as a cookie
+function deviceCodecs(req) {
+    let value = req.headers['x-device-codecs'];
+    if (!value) {
+        const cookie = (req.headers.cookie || '').split(';').map(c => c.trim()).find(c => c.startsWith('deviceCodecs='));
+        if (cookie) {
+            try {
+                value = decodeURIComponent(cookie.substring('deviceCodecs='.length));
+            } catch (e) {
+                return null;
+            }
+        }
+    }
+    if (!value) return null;
+    return new Set(value.split(',').map(entry => entry.split(':')[0].trim().toLowerCase()));
+}
+
+// fix-audio-codec.bat writes an AAC copy next to files with other audio as <name>_fixed.mp4.
+// Devices that cannot decode Dolby audio get that copy under the original URL, so every
+// request for the URL from one device sees the same bytes.
+function fixedRendition(resolvedPath) {
+    const parsed = path.parse(resolvedPath);
+    if (parsed.name.endsWith('_fixed')) return null;
+    const fixed = path.join(parsed.dir, `${parsed.name}_fixed${parsed.ext}`);
+    return fs.existsSync(fixed) ? fixed : null;
+}
+
+function chooseRendition(resolvedPath, fixed, codecs) {
+    if (!fixed || !codecs || (codecs.has('ac3') && codecs.has('eac3'))) return resolvedPath;
+    return fixed;
+}
+
 // Unified progressive streaming function for all devices
-function streamVideo(req, res, videoPath) {
+function streamVideo(req, res, videoPath, cacheControl = 'public, max-age=3600') {
     if (!fs.existsSync(videoPath)) {
         return res.status(404).json({ error: 'Video not found' });
     }
@@ -487,9 +527,12 @@ function streamVideo(req, res, videoPath) {
     const headers = {
         'Accept-Ranges': 'bytes',
         'Content-Type': 'video/mp4',
-        'Cache-Control': 'public, max-age=3600',
+        'Cache-Control': cacheControl,
         'Connection': 'keep-alive',
-        'X-Content-Type-Options': 'nosniff'
+        'X-Content-Type-Options': 'nosniff',
+        // Lets resumed downloads detect a replaced file between range requests
+        'ETag': `"${fileSize}-${Math.floor(stat.mtimeMs)}"`,
+        'Last-Modified': stat.mtime.toUTCString()
     };
     
     res.set(headers);
@@ -500,7 +543,7 @@ function streamVideo(req, res, videoPath) {
         // Use larger initial chunk for faster startup, then smaller chunks
         const isFirstChunk = start === 0;
         const chunkSize = isFirstChunk ? (2 * 1024 * 1024) : (512 * 1024); // 2MB first, then 512KB
-        const end = parts[1] ? parseInt(parts[1], 10) : Math.min(start + chunkSize - 1, fileSize - 1);
+        const end = parts[1] ? Math.min(parseInt(parts[1], 10), fileSize - 1) : Math.min(start + chunkSize - 1, fileSize - 1);
         const chunksize = (end - start) + 1;
         
         console.log(`📦 Progressive chunk: ${(chunksize / (1024 * 1024)).toFixed(1)}MB`);
@@ -887,6 +930,22 @@ app.get('/api/series', auth, (req, res) => {
             return res.json(filtered);
         }
         
+        // Paged listing for the Android TV browse rows - summaries only, no episode lists
+        const { genre, offset, limit } = req.query;
+        if (offset !== undefined || limit !== undefined) {
+            const source = genre ? (videoCache.genres[genre] || []) : videoCache.series;
+            const start = Math.max(0, parseInt(offset, 10) || 0);
+            const count = Math.min(200, Math.max(1, parseInt(limit, 10) || 50));
+            res.set('X-Total-Count', String(source.length));
+            return res.json(source.slice(start, start + count).map(s => ({
+                id: s.id,
+                title: s.title,
+                genre: s.genre,
+                thumbnail: s.thumbnail,
+                videoCount: s.videoCount
+            })));
+        }
+        
         res.json(videoCache.series);
     } catch (error) {
         console.error('Series loading error:', error);
@@ -906,6 +965,13 @@ app.get('/api/genres', auth, (req, res) => {
             loadVideoCache();
         }
         
+        // Row headers only; the rows themselves are paged through /api/series
+        if (req.query.summary) {
+            return res.json(Object.entries(videoCache.genres)
+                .filter(([, seriesList]) => seriesList.length > 0)
+                .map(([name, seriesList]) => ({ name, count: seriesList.length })));
+        }
+        
         res.json(videoCache.genres);
     } catch (error) {
         console.error('Genres loading error:', error);
@@ -1016,12 +1082,88 @@ app.post('/api/progress', auth, (req, res) => {
     res.json({ message: 'Progress saved' });
 });
 
+// Save several progress updates at once - used by the Android TV app's offline queue.
+// Updates may arrive late, so one never replaces a newer position from another device.
+app.post('/api/progress/batch', auth, (req, res) => {
+    const { updates } = req.body || {};
+    if (!Array.isArray(updates) || updates.length > 200) {
+        return res.status(400).json({ error: 'Invalid progress batch' });
+    }
+    
+    const userId = req.user.id;
+    if (!watchProgress[userId]) watchProgress[userId] = {};
+    const now = Date.now();
+    let applied = 0;
+    
+    updates.forEach(update => {
+        const { seriesId, videoFile, currentTime, duration, completed, updatedAt } = update || {};
+        if (typeof seriesId !== 'string' || typeof videoFile !== 'string') return;
+        
+        // Client clocks can be off; never date an update in the future
+        const watchedAt = new Date(Math.min(Number(updatedAt) || now, now));
+        if (!watchProgress[userId][seriesId]) watchProgress[userId][seriesId] = {};
+        const existing = watchProgress[userId][seriesId][videoFile];
+        if (existing && new Date(existing.lastWatched) > watchedAt) return;
+        
+        watchProgress[userId][seriesId][videoFile] = {
+            currentTime,
+            duration,
+            completed: completed || false,
+            lastWatched: watchedAt
+        };
+        applied++;
+    });
+    
+    if (applied > 0) saveProgress();
+    res.json({ message: 'Progress saved', applied });
+});
+
 // Get watch progress
 app.get('/api/progress', auth, (req, res) => {
     const userId = req.user.id;
     res.json(watchProgress[userId] || {});
 });
 
+// Playback QoE batches from the Android TV app (gzip bodies are inflated by express.json)
+app.post('/api/telemetry', auth, (req, res) => {
+    const { device, sdk, appVersion, droppedEvents, events } = req.body || {};
+    if (!Array.isArray(events) || events.length > 500) {
+        return res.status(400).json({ error: 'Invalid telemetry batch' });
+    }
+    
+    const context = {
+        device: String(device || 'unknown').substring(0, 100),
+        sdk: Number(sdk) || null,
+        appVersion: String(appVersion || '').substring(0, 20),
+        user: req.user.username,
+        receivedAt: new Date().toISOString()
+    };
+    const lines = events
+        .filter(event => event && typeof event === 'object' && !Array.isArray(event))
+        .map(event => JSON.stringify({ ...event, ...context }));
+    if (droppedEvents > 0) {
+        lines.push(JSON.stringify({ type: 'dropped', count: Number(droppedEvents), ...context }));
+    }
+    if (lines.length === 0) return res.status(204).end();
+    
+    try {
+        // Keep one previous generation so the file cannot grow without bound
+        if (fs.existsSync(telemetryFile) && fs.statSync(telemetryFile).size > TELEMETRY_MAX_BYTES) {
+            fs.renameSync(telemetryFile, telemetryFile + '.1');
+        }
+        fs.appendFileSync(telemetryFile, lines.join('\n') + '\n');
+        res.status(204).end();
+    } catch (error) {
+        console.error('Telemetry write error:', error);
+        res.status(500).json({ error: 'Failed to store telemetry' });
+    }
+});
+
+// Lightweight token check for clients that only need to know the session is still valid
+app.get('/api/session', auth, (req, res) => {
+    res.json({ username: req.user.username, expiresAt: req.user.exp * 1000 });
+});
+
 // Logout endpoint - blacklist token and remove session
 app.post('/api/logout', auth, async (req, res) => {
     await redisClient.blacklistToken(req.token);
@@ -1048,6 +1190,53 @@ const adminAuth = (req, res, next) => {
     next();
 };
 
+// Slowest devices and files from the TV playback telemetry
+app.get('/api/admin/telemetry', auth, adminAuth, (req, res) => {
+    if (!fs.existsSync(telemetryFile)) return res.json({ devices: [], files: [], needsFaststart: [] });
+    
+    const byDevice = {};
+    const byFile = {};
+    // Files the TV app found with moov after mdat; run them through video-optimizer.bat
+    const needsFaststart = {};
+    const add = (groups, key, event) => {
+        const group = groups[key] || (groups[key] = { key, sessions: 0, startupMs: [], rebuffers: 0, rebufferMs: 0, droppedFrames: 0, errors: 0, networkBytes: 0, cacheBytes: 0 });
+        group.sessions++;
+        if (event.startupMs >= 0) group.startupMs.push(event.startupMs);
+        group.rebuffers += event.rebufferCount || 0;
+        group.rebufferMs += event.rebufferMs || 0;
+        group.droppedFrames += event.droppedFrames || 0;
+        group.errors += (event.outcome === 'error' ? 1 : 0) + Object.values(event.httpErrors || {}).reduce((a, b) => a + b, 0);
+        group.networkBytes += event.networkBytes || 0;
+        group.cacheBytes += event.cacheBytes || 0;
+    };
+    fs.readFileSync(telemetryFile, 'utf8').split('\n').forEach(line => {
+        if (!line) return;
+        try {
+            const event = JSON.parse(line);
+            if (event.type === 'file' && event.issue === 'moov_at_end') {
+                needsFaststart[event.path] = event.sizeBytes || 0;
+                return;
+            }
+            if (event.type !== 'playback') return;
+            add(byDevice, event.device, event);
+            add(byFile, event.path, event);
+        } catch (e) {
+            // Skip partial lines
+        }
+    });
+    const summarize = groups => Object.values(groups).map(group => {
+        const sorted = group.startupMs.sort((a, b) => a - b);
+        const { startupMs, ...rest } = group;
+        return { ...rest, medianStartupMs: sorted.length ? sorted[Math.floor(sorted.length / 2)] : null };
+    }).sort((a, b) => (b.rebufferMs / b.sessions) - (a.rebufferMs / a.sessions));
+    
+    res.json({
+        devices: summarize(byDevice),
+        files: summarize(byFile).slice(0, 100),
+        needsFaststart: Object.entries(needsFaststart).map(([path, sizeBytes]) => ({ path, sizeBytes }))
+    });
+});
+
 app.get('/api/admin/pending', auth, adminAuth, (req, res) => {
     res.json(pendingUsers);
 });
@@ -71,10 +71,31 @@ document.addEventListener('DOMContentLoaded', () => {
     }
 });
 
+// The TV app's native login can finish after the page has started its own; take its
+// session if the page is still signed out (session_seed.js stores it first)
+window.addEventListener('majin-session', () => {
+    if (authToken && currentUser) return;
+    authToken = localStorage.getItem('authToken');
+    currentUser = JSON.parse(localStorage.getItem('currentUser'));
+    if (!authToken || !currentUser) return;
+    document.getElementById('authModal').style.display = 'none';
+    updateUI();
+    document.querySelector('main').style.display = 'block';
+    loadSeries();
+});
+
 // Validate existing token before using it
 async function validateTokenAndProceed() {
+    // The Android TV app already checked this token natively before the page loaded
+    if (window.__majinSessionValidated) {
+        updateUI();
+        document.querySelector('main').style.display = 'block';
+        loadSeries();
+        return;
+    }
+    
     try {
-        const response = await fetch('/api/series', { 
+        const response = await fetch('/api/session', { 
             headers: { 'Authorization': `Bearer ${authToken}` } 
         });
         
@@ -116,8 +137,22 @@ function showLoginModal() {
 
 async function autoLoginTV() {
     try {
-        // Check if Android app is handling login
-        if (typeof Android !== 'undefined' && Android.getDeviceId) {
+        // Android app logs in natively while the page loads - adopt its session
+        if (typeof Android !== 'undefined' && Android.takeSession) {
+            const nativeSession = Android.takeSession();
+            if (nativeSession) {
+                const session = JSON.parse(nativeSession);
+                authToken = session.token;
+                currentUser = { username: session.username };
+                localStorage.setItem('authToken', authToken);
+                localStorage.setItem('currentUser', JSON.stringify(currentUser));
+                updateUI();
+                document.querySelector('main').style.display = 'block';
+                loadSeries();
+                return;
+            }
+        } else if (typeof Android !== 'undefined' && Android.getDeviceId) {
+            // Check if Android app is handling login
             // Wait for Android app to complete its login attempt
             await new Promise(resolve => setTimeout(resolve, 3000));
             
@@ -159,6 +194,7 @@ async function autoLoginTV() {
             currentUser = { username: data.username };
             localStorage.setItem('authToken', authToken);
             localStorage.setItem('currentUser', JSON.stringify(currentUser));
+            shareSessionWithApp();
             updateUI();
             document.querySelector('main').style.display = 'block';
             loadSeries();
@@ -302,8 +338,8 @@ async function checkQRLogin(token) {
             localStorage.setItem('authToken', authToken);
             localStorage.setItem('currentUser', JSON.stringify(currentUser));
             
-            // For QR login, we don't have the password to save for auto-login
-            // The TV app will show the first-time setup prompt next time
+            // For QR login we don't have the password, but the TV app can reuse the token
+            shareSessionWithApp();
             
             updateUI();
             closeAuth();
@@ -325,6 +361,13 @@ async function checkQRLogin(token) {
     }
 }
 
+// Hand a page-side login to the Android TV app so its next launch skips logging in
+function shareSessionWithApp() {
+    if (typeof Android !== 'undefined' && Android.storeSession && authToken && currentUser) {
+        Android.storeSession(authToken, currentUser.username);
+    }
+}
+
 async function login() {
     const username = document.getElementById('loginUsername').value;
     const password = document.getElementById('loginPassword').value;
@@ -347,6 +390,7 @@ async function login() {
             if (navigator.userAgent.includes('wv') && typeof Android !== 'undefined') {
                 Android.saveCredentials(username, password);
             }
+            shareSessionWithApp();
             
             updateUI();
             closeAuth();
@@ -442,9 +486,49 @@ function goToAdmin() {
 }
 
 // Series functionality
+// Android TV app renders the catalog as native rows; the page keeps details and playback
+let nativeBrowseMode = false;
+let nativeBrowseUnavailable = false;
+
+function showNativeBrowse() {
+    if (nativeBrowseUnavailable || !authToken ||
+        typeof Android === 'undefined' || !Android.openNativeBrowse) return false;
+    nativeBrowseMode = Android.openNativeBrowse(authToken);
+    return nativeBrowseMode;
+}
+
+// Called by the Android TV app when the browse screen closes without picking a series
+function onNativeBrowseClosed(reason) {
+    if (reason === 'expired') {
+        handleSessionExpired();
+    } else if (reason === 'search') {
+        const searchInput = document.getElementById('searchInput');
+        if (searchInput) searchInput.focus();
+    } else {
+        // Rows could not load - fall back to the web grid for this session
+        nativeBrowseUnavailable = true;
+        nativeBrowseMode = false;
+        loadSeries();
+    }
+}
+
 async function loadSeries() {
     if (!authToken) return;
     
+    if (await resumeAfterRendererLoss()) {
+        // Rows open again once the viewer leaves the restored episode
+        nativeBrowseMode = !nativeBrowseUnavailable && typeof Android !== 'undefined' && !!Android.openNativeBrowse;
+        if (nativeBrowseMode) return;
+    }
+    
+    if (nativeBrowseMode || showNativeBrowse()) {
+        // Progress is still needed for the series details the page shows
+        if (currentUser) {
+            await loadWatchProgress();
+        }
+        return;
+    }
+    
     try {
         const [seriesResponse, genresResponse] = await Promise.all([
             fetch('/api/series', { headers: { 'Authorization': `Bearer ${authToken}` } }),
@@ -465,26 +549,69 @@ async function loadSeries() {
         
         renderGenres(genres);
         renderSeries(series);
+        
+        // Let the Android TV app record launch-to-grid time
+        if (typeof Android !== 'undefined' && Android.markStartupPhase) {
+            requestAnimationFrame(() => Android.markStartupPhase('first_grid_paint'));
+        }
     } catch (error) {
         // Silent fail
     }
 }
 
+// Android TV app serves the catalog from its cache and tells us when the server copy changed
+let catalogRefreshTimer = null;
+window.addEventListener('catalogupdated', (event) => {
+    const path = event.detail && event.detail.path;
+    if ((path === '/api/series' || path === '/api/genres') && authToken) {
+        // Series and genres usually change together - re-render once
+        clearTimeout(catalogRefreshTimer);
+        catalogRefreshTimer = setTimeout(loadSeries, 500);
+    }
+});
+
+// Android TV app: the network came back without a page reload - restart whatever stalled
+window.addEventListener('majin-reconnected', () => {
+    const player = document.getElementById('videoPlayer');
+    if (player && player.src && (player.error || (!player.paused && player.readyState < 3))) {
+        const resumeAt = player.currentTime;
+        player.load();
+        player.addEventListener('loadedmetadata', () => {
+            player.currentTime = resumeAt;
+            player.play().catch(() => {});
+        }, { once: true });
+    }
+    
+    if (authToken && !document.querySelector('.content-card')) {
+        loadSeries();
+    }
+});
+
 function activateSearch() {
     const searchInput = document.getElementById('searchInput');
     searchInput.removeAttribute('readonly');
     searchInput.focus();
 }
 
+// Android TV app: ranked matches from the on-device index, or null to ask the server
+function nativeCatalogSearch(query, limit) {
+    if (typeof Android === 'undefined' || !Android.searchCatalog) return null;
+    const results = Android.searchCatalog(query, limit);
+    return results ? JSON.parse(results) : null;
+}
+
 async function searchVideos() {
     if (!authToken) return;
     
     const query = document.getElementById('searchInput').value;
     try {
-        const response = await fetch(`/api/series?search=${encodeURIComponent(query)}`, {
-            headers: { 'Authorization': `Bearer ${authToken}` }
-        });
-        const series = await response.json();
+        let series = nativeCatalogSearch(query, 50);
+        if (!series) {
+            const response = await fetch(`/api/series?search=${encodeURIComponent(query)}`, {
+                headers: { 'Authorization': `Bearer ${authToken}` }
+            });
+            series = await response.json();
+        }
         renderSeries(series);
         hideSearchResults();
     } catch (error) {
@@ -504,17 +631,20 @@ async function showSearchResults() {
     }
     
     try {
-        const response = await fetch(`/api/series?search=${encodeURIComponent(query)}`, {
-            headers: { 'Authorization': `Bearer ${authToken}` }
-        });
-        
-        if (response.status === 401) {
-            handleSessionExpired();
-            return;
+        let series = nativeCatalogSearch(query, 5);
+        if (!series) {
+            const response = await fetch(`/api/series?search=${encodeURIComponent(query)}`, {
+                headers: { 'Authorization': `Bearer ${authToken}` }
+            });
+            
+            if (response.status === 401) {
+                handleSessionExpired();
+                return;
+            }
+            
+            series = await response.json();
         }
         
-        const series = await response.json();
-        
         if (series.length === 0) {
             resultsDiv.innerHTML = '<div class="search-item">No results found</div>';
         } else {
@@ -769,6 +899,18 @@ async function openSeries(series) {
     }
 }
 
+// Download state by absolute URL, or null outside the Android TV app
+function offlineDownloadStatus() {
+    if (!window.Android || !Android.queueDownload) return null;
+    const byUrl = {};
+    try {
+        (JSON.parse(Android.getDownloads()).downloads || []).forEach(d => { byUrl[d.url] = d; });
+    } catch (e) {
+        // Startup not finished; every episode shows as downloadable
+    }
+    return byUrl;
+}
+
 function showSeriesModal(series) {
     const modal = document.getElementById('seriesModal');
     const title = document.getElementById('seriesTitle');
@@ -805,6 +947,21 @@ function showSeriesModal(series) {
     homeButtonDiv.appendChild(homeButton);
     videoList.appendChild(homeButtonDiv);
     
+    // Offline downloads are only available inside the Android TV app
+    const offline = offlineDownloadStatus();
+    if (offline) {
+        const downloadButton = document.createElement('button');
+        downloadButton.textContent = '⬇ Download series';
+        downloadButton.className = 'home-button';
+        downloadButton.tabIndex = 0;
+        downloadButton.style.marginLeft = '10px';
+        downloadButton.onclick = () => {
+            series.videos.forEach(video => Android.queueDownload(video.url, series.id, video.title));
+            showSeriesModal(series);
+        };
+        homeButtonDiv.appendChild(downloadButton);
+    }
+    
     // Add episodes after home button
     series.videos.forEach((video, index) => {
         const item = document.createElement('div');
@@ -827,6 +984,26 @@ function showSeriesModal(series) {
             <button onclick="playVideo('${video.url}', '${video.filename}', '${video.title}', ${index})">▶ Play</button>
         `;
         
+        if (offline) {
+            const state = offline[location.origin + video.url];
+            const downloadButton = document.createElement('button');
+            downloadButton.textContent = !state || state.status === 'failed' ? '⬇' :
+                state.status === 'done' ? '✓ Offline' : `Queued ${Math.round(state.progress * 100)}%`;
+            downloadButton.disabled = !!state && state.status !== 'failed';
+            downloadButton.onclick = (e) => {
+                e.stopPropagation();
+                if (Android.queueDownload(video.url, series.id, video.title)) {
+                    downloadButton.textContent = 'Queued 0%';
+                    downloadButton.disabled = true;
+                }
+            };
+            // Enter on the item plays; keep it from reaching the item's handler
+            downloadButton.addEventListener('keydown', (e) => {
+                if (e.key === 'Enter' || e.key === ' ') e.stopPropagation();
+            });
+            item.appendChild(downloadButton);
+        }
+        
         // Add keyboard support for each video item
         item.addEventListener('keydown', (e) => {
             if (e.key === 'Enter' || e.key === ' ') {
@@ -932,6 +1109,14 @@ function playVideo(url, filename, title, videoIndex = null) {
     tvPlaybackStarted = false;
     tvPlaybackCancelled = false;
     
+    announceNextEpisode(url, videoIndex);
+    rememberPlaybackForRestore(videoIndex);
+    
+    // Android TV app: hand off to the native hardware-decoded player when available
+    if (playVideoNatively(url, filename, videoIndex)) {
+        return;
+    }
+    
     // FIRST: Force exit fullscreen completely before doing anything else
     const isFullscreen = document.fullscreenElement || document.webkitFullscreenElement || document.mozFullScreenElement || document.msFullscreenElement;
     if (isFullscreen) {
@@ -978,6 +1163,7 @@ function playVideo(url, filename, title, videoIndex = null) {
     const isBrowser = !isTV && !isMobile;
     
     // Reset player and show loading - remove any poster to prevent broken icon
+    endPlaybackTelemetry('exited');
     player.pause();
     player.src = '';
     player.removeAttribute('poster');
@@ -1045,6 +1231,7 @@ function playVideo(url, filename, title, videoIndex = null) {
     // Set video source with proper error handling
     player.onerror = null; // Clear any existing error handlers
     player.src = videoUrl;
+    beginPlaybackTelemetry(player, url);
     
     // Add a small delay before loading to ensure clean state
     setTimeout(() => {
@@ -1297,7 +1484,10 @@ function playVideo(url, filename, title, videoIndex = null) {
     
     // Set up progress tracking
     if (currentUser && currentSeries) {
-        player.ontimeupdate = () => saveProgress(filename, player.currentTime, player.duration);
+        player.ontimeupdate = () => {
+            saveProgress(filename, player.currentTime, player.duration);
+            reportPlaybackPosition(player);
+        };
         player.onended = () => {
             saveProgress(filename, player.duration, player.duration, true);
             consecutiveVideosPlayed++;
@@ -1375,6 +1565,199 @@ function playVideo(url, filename, title, videoIndex = null) {
     }
 }
 
+// Native player handoff (Android TV app)
+let nativePlayback = null;
+let skipNativePlayback = false;
+
+// Lets the Android TV app prefetch the start of the next episode near the end of this one
+let lastPositionReport = 0;
+
+function announceNextEpisode(url, videoIndex) {
+    if (typeof Android === 'undefined' || !Android.setNextEpisode) return;
+    const index = videoIndex !== null ? videoIndex : currentVideoIndex;
+    const next = currentSeries && currentSeries.videos ? currentSeries.videos[index + 1] : null;
+    Android.setNextEpisode(url, next ? next.url : '');
+}
+
+// Android TV app: lets a page recreated after a WebView renderer crash reopen this episode
+function rememberPlaybackForRestore(videoIndex) {
+    if (typeof Android === 'undefined' || !Android.setPlaybackRestore) return;
+    const index = videoIndex !== null ? videoIndex : currentVideoIndex;
+    Android.setPlaybackRestore(currentSeries ? currentSeries.id : '', currentSeries ? index : 0);
+}
+
+function forgetPlaybackForRestore() {
+    if (typeof Android !== 'undefined' && Android.setPlaybackRestore) {
+        Android.setPlaybackRestore('', 0);
+    }
+}
+
+async function resumeAfterRendererLoss() {
+    if (typeof Android === 'undefined' || !Android.takeRestoreState) return false;
+    const saved = Android.takeRestoreState();
+    if (!saved) return false;
+    
+    try {
+        const state = JSON.parse(saved);
+        const response = await fetch(`/api/series/${state.seriesId}`, {
+            headers: { 'Authorization': `Bearer ${authToken}` }
+        });
+        if (!response.ok) return false;
+        currentSeries = await response.json();
+        const video = currentSeries.videos ? currentSeries.videos[state.videoIndex] : null;
+        if (!video) return false;
+        if (currentUser) {
+            await loadWatchProgress();
+        }
+        
+        currentVideoIndex = state.videoIndex;
+        if (state.native) {
+            // The native player is still up; only its result needs somewhere to go
+            nativePlayback = { url: video.url, filename: video.filename, videoIndex: state.videoIndex };
+            rememberPlaybackForRestore(state.videoIndex);
+            return true;
+        }
+        
+        // The last reported position is newer than the last saved progress
+        if (state.position > 10) {
+            const seriesProgress = watchProgress[currentSeries.id] || (watchProgress[currentSeries.id] = {});
+            seriesProgress[video.filename] = Object.assign({}, seriesProgress[video.filename],
+                { currentTime: state.position, completed: false });
+        }
+        playVideo(video.url, video.filename, video.title, state.videoIndex);
+        return true;
+    } catch (error) {
+        return false;
+    }
+}
+
+function reportPlaybackPosition(player) {
+    if (typeof Android === 'undefined' || !Android.onPlaybackPosition) return;
+    const now = Date.now();
+    if (now - lastPositionReport < 5000) return;
+    lastPositionReport = now;
+    Android.onPlaybackPosition(player.currentTime, player.duration);
+}
+
+// In the Android TV app seeks land on a keyframe, so playback resumes after one short
+// range request instead of decoding up to the exact target
+function seekPlayerBy(player, delta) {
+    let target = player.currentTime + delta;
+    if (typeof Android !== 'undefined' && Android.getKeyframeTime) {
+        const keyframe = Android.getKeyframeTime(player.currentSrc, target);
+        // Only when snapping still moves in the requested direction
+        if (keyframe >= 0 && (delta > 0 ? keyframe > player.currentTime : keyframe < player.currentTime)) {
+            target = keyframe;
+        }
+    }
+    player.currentTime = target;
+}
+
+// Playback QoE for the Android TV app: time to first frame, rebuffers and dropped frames
+let playbackTelemetry = null;
+
+function beginPlaybackTelemetry(player, url) {
+    endPlaybackTelemetry('exited');
+    if (typeof Android === 'undefined' || !Android.beginPlayback) return;
+    
+    Android.beginPlayback(url);
+    const state = { player, playRequestedAt: 0, firstFrame: false, stalled: false };
+    state.handlers = {
+        // TV playback waits for the user, so startup is measured from the play request
+        play: () => {
+            if (!state.playRequestedAt) state.playRequestedAt = performance.now();
+        },
+        playing: () => {
+            if (!state.firstFrame) {
+                state.firstFrame = true;
+                Android.reportPlayback('first_frame', performance.now() - (state.playRequestedAt || performance.now()));
+            } else if (state.stalled) {
+                state.stalled = false;
+                Android.reportPlayback('rebuffer_end', 0);
+            }
+        },
+        waiting: () => {
+            if (state.firstFrame && !state.stalled) {
+                state.stalled = true;
+                Android.reportPlayback('rebuffer_start', 0);
+            }
+        },
+        seeking: () => Android.reportPlayback('seek', 0),
+        error: () => Android.reportPlayback('error', player.error ? player.error.code : 0),
+        ended: () => endPlaybackTelemetry('ended')
+    };
+    Object.entries(state.handlers).forEach(([type, handler]) => player.addEventListener(type, handler));
+    playbackTelemetry = state;
+}
+
+function endPlaybackTelemetry(outcome) {
+    const state = playbackTelemetry;
+    if (!state) return;
+    playbackTelemetry = null;
+    
+    Object.entries(state.handlers).forEach(([type, handler]) => state.player.removeEventListener(type, handler));
+    const quality = state.player.getVideoPlaybackQuality ? state.player.getVideoPlaybackQuality() : null;
+    Android.endPlayback(outcome, quality ? quality.droppedVideoFrames : 0);
+}
+
+function playVideoNatively(url, filename, videoIndex) {
+    if (skipNativePlayback) {
+        skipNativePlayback = false;
+        return false;
+    }
+    if (typeof Android === 'undefined' || !Android.isNativePlayerAvailable || !Android.isNativePlayerAvailable()) {
+        return false;
+    }
+    
+    let resumeTime = 0;
+    const seriesProgress = currentSeries ? watchProgress[currentSeries.id] : null;
+    if (seriesProgress && seriesProgress[filename]) {
+        const progress = seriesProgress[filename];
+        if (progress.currentTime > 10 && !progress.completed) {
+            resumeTime = progress.currentTime;
+        }
+    }
+    
+    if (!Android.playNative(url, authToken || '', resumeTime)) {
+        return false;
+    }
+    
+    if (videoIndex !== null) {
+        currentVideoIndex = videoIndex;
+    }
+    nativePlayback = { url, filename, videoIndex };
+    return true;
+}
+
+// Called by the Android app when the native player closes
+function onNativePlaybackClosed(position, duration, ended, failed) {
+    const playback = nativePlayback;
+    nativePlayback = null;
+    if (!playback) return;
+    forgetPlaybackForRestore();
+    
+    if (failed) {
+        // Device could not play it natively - retry in the WebView player
+        skipNativePlayback = true;
+        const video = currentSeries ? currentSeries.videos[currentVideoIndex] : null;
+        playVideo(playback.url, playback.filename, video ? video.title : playback.filename, playback.videoIndex);
+        return;
+    }
+    
+    if (currentUser && currentSeries && position > 0) {
+        saveProgress(playback.filename, position, duration, ended);
+    }
+    
+    if (ended && currentSeries && currentVideoIndex < currentSeries.videos.length - 1) {
+        consecutiveVideosPlayed++;
+        if (consecutiveVideosPlayed >= 10) {
+            showKeepWatchingPrompt(false);
+        } else {
+            playNextVideo();
+        }
+    }
+}
+
 // TV-specific fullscreen support
 function enableFullscreenSupport(player) {
     // Add fullscreen button to audio controls area
@@ -1475,11 +1858,21 @@ async function saveProgress(filename, currentTime, duration, completed = false)
         return;
     }
     
+    // The Android TV app queues progress on disk and syncs it in batches, so it can
+    // take updates more often without adding requests
+    const nativeQueue = typeof Android !== 'undefined' && Android.queueProgress;
+    
     // Throttle progress saves to every 10 seconds (except for completion)
     const now = Date.now();
-    if (!completed && now - lastProgressSave < 10000) return;
+    if (!completed && now - lastProgressSave < (nativeQueue ? 2000 : 10000)) return;
     lastProgressSave = now;
     
+    if (nativeQueue && Android.queueProgress(currentSeries.id, filename, currentTime, duration, completed)) {
+        if (!watchProgress[currentSeries.id]) watchProgress[currentSeries.id] = {};
+        watchProgress[currentSeries.id][filename] = { currentTime, duration, completed };
+        return;
+    }
+    
     try {
         await fetch('/api/progress', {
             method: 'POST',
@@ -1528,6 +1921,8 @@ function closeVideo() {
     }
     
     // Clean video player completely
+    endPlaybackTelemetry('exited');
+    forgetPlaybackForRestore();
     player.pause();
     player.currentTime = 0;
     player.src = '';
@@ -1568,6 +1963,8 @@ async function backToSeries() {
             }
         }
         
+        endPlaybackTelemetry('exited');
+        forgetPlaybackForRestore();
         player.pause();
         player.src = '';
         
@@ -1666,6 +2063,7 @@ function closeSeries() {
     seriesModal.style.display = 'none';
     seriesModal.style.visibility = 'hidden';
     seriesModal.style.zIndex = '-1';
+    if (nativeBrowseMode && !showNativeBrowse()) loadSeries();
 }
 
 function goHome() {
@@ -1678,6 +2076,9 @@ function goHome() {
     tvPlaybackCancelled = false;
     consecutiveVideosPlayed = 0; // Reset counter
     
+    endPlaybackTelemetry('exited');
+    forgetPlaybackForRestore();
+    
     // Stop video to prevent background playback
     if (player) {
         player.pause();
@@ -1711,6 +2112,9 @@ function goHome() {
     
     // Reset current series only
     currentSeries = null;
+    
+    // Native rows may be switched off in the app config
+    if (nativeBrowseMode && !showNativeBrowse()) loadSeries();
 }
 
 // TV navigation state
@@ -1898,7 +2302,7 @@ document.addEventListener('keydown', (event) => {
                 } else {
                     event.preventDefault();
                     if (player.currentTime > 10) {
-                        player.currentTime -= 10;
+                        seekPlayerBy(player, -10);
                     }
                 }
                 break;
@@ -1909,7 +2313,7 @@ document.addEventListener('keydown', (event) => {
                 } else {
                     event.preventDefault();
                     if (player.currentTime < player.duration - 10) {
-                        player.currentTime += 10;
+                        seekPlayerBy(player, 10);
                     }
                 }
                 break;